@@ -0,0 +1,75 @@
+package ru.ancap.gst;
+
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.compact.CompactTemplate;
+import ru.ancap.gst.parser.compact.SymbolTable;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+import ru.ancap.gst.parser.store.DedupStats;
+import ru.ancap.gst.parser.store.TemplateStore;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Prints retained heap per parsed template for every parse result form. Templates look like localization messages:
+ * short text with a few placeholders, keys are repeated across templates. Retained heap is measured as difference
+ * of used heap after full GC, so run it with small young generation noise, for example
+ * {@code java -cp bench-jmh.jar -XX:+UseSerialGC ru.ancap.gst.FootprintReport 200000}.
+ */
+public class FootprintReport {
+    
+    private static final GSTParser PARSER = SimpleGSTParser.inst();
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+    
+    public static void main(String[] args) {
+        int templates = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        System.out.println("templates = "+templates);
+        FootprintReport.report("source strings only", templates, source -> source);
+        FootprintReport.report("LinkedObjects", templates, PARSER::parse);
+        FootprintReport.report("Template", templates, PARSER::parseTemplate);
+        SymbolTable symbols = new SymbolTable();
+        FootprintReport.report("CompactTemplate", templates, source -> CompactTemplate.compile(PARSER, source, symbols));
+        TemplateStore store = TemplateStore.of(PARSER);
+        FootprintReport.report("StoredTemplate", templates, store::store);
+        DedupStats stats = store.stats();
+        System.out.printf("store: %d segments for %d parts, dedup ratio %.2f, estimated %d bytes saved%n", stats.distinctSegments(), stats.segmentReferences(), stats.dedupRatio(), stats.bytesSaved());
+    }
+    
+    private static void report(String name, int templates, Function<String, Object> form) {
+        List<Object> retained = new ArrayList<>(templates);
+        long before = FootprintReport.usedHeap();
+        Random random = new Random(templates);
+        for (int i = 0; i < templates; i++) retained.add(form.apply(FootprintReport.generate(random)));
+        long after = FootprintReport.usedHeap();
+        System.out.printf("%-20s %8.1f bytes/template%n", name, (double) (after - before) / templates);
+        if (retained.size() != templates) throw new IllegalStateException();
+    }
+    
+    /**
+     * For example "Player \{player} has \{amount:number} coins, \{!debug}".
+     */
+    static String generate(Random random) {
+        StringBuilder template = new StringBuilder();
+        int placeholders = 1 + random.nextInt(3);
+        for (int i = 0; i < placeholders; i++) {
+            for (int word = 0; word < 2 + random.nextInt(5); word++) {
+                for (int letter = 0; letter < 2 + random.nextInt(6); letter++) template.append((char) ('a' + random.nextInt(26)));
+                template.append(' ');
+            }
+            template.append("\\{").append("key").append(random.nextInt(500));
+            if (random.nextInt(4) == 0) template.append(':').append("arg").append(random.nextInt(10));
+            template.append("} ");
+        }
+        return template.toString();
+    }
+    
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,110 @@
+package ru.ancap.gst;
+
+import ru.ancap.gst.buffer.conf.ConfGSTTerminator;
+import ru.ancap.gst.parser.gst_structure.Template;
+import ru.ancap.gst.parser.mapped.MappedTemplate;
+import ru.ancap.gst.parser.mapped.MappedTemplateStore;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+/**
+ * Keeps a lot of templates resident, either on heap as {@link Template}s or off heap in
+ * {@link MappedTemplateStore#allocate(SimpleGSTParser, Map)}, renders random ones and prints old generation size and
+ * GC pauses. Every form should be ran in separate JVM with GC log, for example
+ * {@code java -cp bench-jmh.jar -Xmx2g -XX:+UseG1GC -Xlog:gc:file=heap.log ru.ancap.gst.GCPressureReport heap 1000000}
+ * and the same with {@code off-heap}, then pauses from logs can be compared. Full collections at the end show cost of
+ * marking resident templates, they are timed by the report itself too.
+ */
+public class GCPressureReport {
+    
+    private static final SimpleGSTParser PARSER = SimpleGSTParser.inst();
+    private static final int KEYS = 500;
+    private static final int FULL_COLLECTIONS = 5;
+    
+    public static void main(String[] args) throws IOException {
+        String form = args.length > 0 ? args[0] : "heap";
+        int templates = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int renders = args.length > 2 ? Integer.parseInt(args[2]) : 5_000_000;
+        
+        Random random = new Random(templates);
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (int i = 0; i < templates; i++) sources.put("template"+i, FootprintReport.generate(random));
+        IntFunction<Object> template = switch (form) {
+            case "heap" -> {
+                List<Template> parsed = new ArrayList<>(templates);
+                for (String source : sources.values()) parsed.add(PARSER.parseTemplate(source));
+                yield parsed::get;
+            }
+            case "off-heap" -> {
+                MappedTemplateStore store = MappedTemplateStore.allocate(PARSER, sources);
+                List<MappedTemplate> mapped = new ArrayList<>(templates);
+                for (String name : sources.keySet()) mapped.add(store.find(name));
+                yield mapped::get;
+            }
+            default -> throw new IllegalArgumentException("Unknown form "+form+", expected heap or off-heap");
+        };
+        sources = null;
+        
+        ConfGSTTerminator terminator = ConfGSTTerminator.newLenient().build();
+        for (int key = 0; key < KEYS; key++) terminator.declare("key"+key, "value"+key);
+        
+        System.gc();
+        long baselineCount = GCPressureReport.collections();
+        long baselineTime = GCPressureReport.collectionTime();
+        long start = System.nanoTime();
+        long length = 0;
+        for (int i = 0; i < renders; i++) length += switch (template.apply(random.nextInt(templates))) {
+            case Template parsed -> terminator.terminate(parsed).length();
+            case MappedTemplate mapped -> terminator.terminate(mapped).length();
+            default -> throw new IllegalStateException();
+        };
+        long elapsed = System.nanoTime() - start;
+        long count = GCPressureReport.collections() - baselineCount;
+        long time = GCPressureReport.collectionTime() - baselineTime;
+        
+        long fullStart = System.nanoTime();
+        for (int i = 0; i < FULL_COLLECTIONS; i++) System.gc();
+        long full = System.nanoTime() - fullStart;
+        
+        System.out.printf("form = %s, templates = %d, renders = %d (%d chars)%n", form, templates, renders, length);
+        System.out.printf("old generation after full GC: %.1f MB%n", GCPressureReport.oldGenerationUsed() / 1048576.0);
+        System.out.printf("render: %.0f ns/op, %d collections, %d ms in GC%n", (double) elapsed / renders, count, time);
+        System.out.printf("full GC: %.1f ms average%n", full / 1e6 / FULL_COLLECTIONS);
+        if (template.apply(0) == null) throw new IllegalStateException();
+    }
+    
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) count += Math.max(0, collector.getCollectionCount());
+        return count;
+    }
+    
+    private static long collectionTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) time += Math.max(0, collector.getCollectionTime());
+        return time;
+    }
+    
+    /**
+     * Sum of heap pools that survive young collections, "G1 Old Gen", "Tenured Gen", "PS Old Gen" and so on.
+     */
+    private static long oldGenerationUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && (pool.getName().contains("Old") || pool.getName().contains("Tenured"))) used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+    
+}
\ No newline at end of file
@@ -2,18 +2,45 @@ package ru.ancap.gst;
 
 import lombok.SneakyThrows;
 import org.apache.commons.rng.core.source64.XoRoShiRo128Plus;
+import org.jetbrains.annotations.Nullable;
 import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
 import ru.ancap.commons.Pair;
 import ru.ancap.gst.buffer.conf.ConfGSTTerminator;
+import ru.ancap.gst.buffer.conf.LenientOptionalHandler;
+import ru.ancap.gst.buffer.conf.OptionalHandler;
 import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.GSTSink;
+import ru.ancap.gst.parser.bound.BoundTemplate;
+import ru.ancap.gst.parser.bound.KeySchema;
+import ru.ancap.gst.parser.cache.CachingGSTParser;
+import ru.ancap.gst.parser.compact.CompactTemplate;
+import ru.ancap.gst.parser.compact.CompactTemplateFormat;
+import ru.ancap.gst.parser.compact.SymbolTable;
 import ru.ancap.gst.parser.gst_structure.GSTPart;
 import ru.ancap.gst.parser.gst_structure.Placeholder;
+import ru.ancap.gst.parser.gst_structure.Template;
+import ru.ancap.gst.parser.mapped.MappedTemplate;
+import ru.ancap.gst.parser.mapped.MappedTemplateStore;
+import ru.ancap.gst.parser.sequence.SequenceGSTParser;
+import ru.ancap.gst.parser.simple.ParallelGSTParser;
 import ru.ancap.gst.parser.simple.SimpleGSTParser;
+import ru.ancap.gst.parser.table.TableGSTParser;
+import ru.ancap.gst.parser.utf8.Utf8GSTParser;
+import ru.ancap.gst.parser.utf8.Utf8GSTSink;
 import ru.ancap.gst.util.LinkedObjects;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -30,15 +57,22 @@ public class GSTBenchmark {
     
     private static final Placeholder DUMMY_PLACEHOLDER = Placeholder.DUMMY;
     
+    private static final int SIZE_100_CHARS = 100 * 700;
+    
     private final int BASE_LENGTH = 700;
     private final int SAMPLES_AMOUNT = 100;
-    private final int SAMPLES_AMOUNT_LARGE = 1000;
+    private static final int SAMPLES_AMOUNT_LARGE = 1000;
     private final int VALUE_SAMPLES = 10000;
     
     private final XoRoShiRo128Plus random = new XoRoShiRo128Plus(System.nanoTime(), this.getClass().hashCode());
     private final char[] alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
     
     private final GSTParser parser = SimpleGSTParser.inst();
+    private final GSTParser tableParser = TableGSTParser.inst();
+    private final GSTParser parallelParser = ParallelGSTParser.inst();
+    private final GSTParser sequenceParser = SequenceGSTParser.inst();
+    private final Utf8GSTParser utf8Parser = Utf8GSTParser.inst();
+    private final GSTParser cachingParser = CachingGSTParser.inst();
     
     private final Map<String, String> testHashMap = new HashMap<>();
     
@@ -49,21 +83,77 @@ public class GSTBenchmark {
     private final List<Pair<String, List<String>>> placeholders10Samples  = new ArrayList<>();
     private final List<Pair<String, List<String>>> placeholders100Samples = new ArrayList<>();
     
+    private final List<CharSequence> size100NonStringSamples = new ArrayList<>();
+    private final List<LinkedObjects<GSTPart>> placeholders100Linked = new ArrayList<>();
+    private final List<Template> placeholders100Templates = new ArrayList<>();
+    private final List<MappedTemplate> placeholders100Mapped = new ArrayList<>();
+    private final List<BoundTemplate> placeholders100Bound = new ArrayList<>();
+    private final List<String[]> placeholders100Values = new ArrayList<>();
+    private byte[] placeholders10Compiled;
+    private final SymbolTable symbols = new SymbolTable();
+    private final List<byte[]> size100Utf8Samples = new ArrayList<>();
+    
     private final List<String> valueSamples = new ArrayList<>();
     
+    private LinkedObjects<GSTPart> declarationsTemplate;
+    private ConfGSTTerminator declarations3;
+    private ConfGSTTerminator declarations300;
+    private ConfGSTTerminator declarations3000;
+    private ConfGSTTerminator frozenDeclarations300;
+    private ConfGSTTerminator globalDeclarations297;
+    private List<String> declarationsSampleKeys;
+    private static final int FORKS = 10_000;
+    private ConfGSTTerminator declarations1000;
+    
     @Setup
     @SneakyThrows
     public void setup() {
         for (int i = 0; i < this.SAMPLES_AMOUNT; i++) {
             this.simpleSamplesSmall.add(this.generateTestString(1, 1));
         }
-        for (int i = 0; i < this.SAMPLES_AMOUNT_LARGE; i++) {
+        for (int i = 0; i < GSTBenchmark.SAMPLES_AMOUNT_LARGE; i++) {
             this.simpleSamples          .add(this.generateTestString(1,   1   ));
             this.size10Samples          .add(this.generateTestString(10,  1   ));
             this.size100Samples         .add(this.generateTestString(100, 1   ));
             this.placeholders10Samples  .add(this.generateTestString(1,   10  ));
             this.placeholders100Samples .add(this.generateTestString(1,   100 ));
         }
+        for (var sample : this.size100Samples) {
+            this.size100NonStringSamples.add(new StringBuilder(sample.key()));
+            this.size100Utf8Samples.add(sample.key().getBytes(StandardCharsets.UTF_8));
+        }
+        for (var sample : this.placeholders100Samples) {
+            this.placeholders100Linked.add(this.parser.parse(sample.key()));
+            this.placeholders100Templates.add(this.parser.parseTemplate(sample.key()));
+            this.placeholders100Bound.add(KeySchema.of(sample.value()).compile(this.parser, sample.key()));
+            String[] values = new String[sample.value().size()];
+            Arrays.fill(values, "yoba");
+            this.placeholders100Values.add(values);
+        }
+        Map<String, String> placeholders100Sources = new LinkedHashMap<>();
+        for (int i = 0; i < this.placeholders100Samples.size(); i++) placeholders100Sources.put("template"+i, this.placeholders100Samples.get(i).key());
+        Path mappedFile = Files.createTempFile("gst-benchmark", ".gstm");
+        mappedFile.toFile().deleteOnExit();
+        MappedTemplateStore.write(mappedFile, (SimpleGSTParser) this.parser, placeholders100Sources);
+        MappedTemplateStore mappedStore = MappedTemplateStore.open(mappedFile, (SimpleGSTParser) this.parser);
+        for (String name : placeholders100Sources.keySet()) this.placeholders100Mapped.add(mappedStore.find(name));
+        Map<String, CompactTemplate> compiled = new LinkedHashMap<>();
+        for (int i = 0; i < this.placeholders10Samples.size(); i++) {
+            compiled.put("template"+i, CompactTemplate.compile(this.parser, this.placeholders10Samples.get(i).key(), this.symbols));
+        }
+        ByteArrayOutputStream compiledOutput = new ByteArrayOutputStream();
+        CompactTemplateFormat.write(compiledOutput, (SimpleGSTParser) this.parser, compiled);
+        this.placeholders10Compiled = compiledOutput.toByteArray();
+        var declarationsSample = this.generateTestString(1, 3);
+        this.declarationsTemplate = this.parser.parse(declarationsSample.key());
+        this.declarations3 = this.globallyDeclaredBuffer(declarationsSample, 0);
+        this.declarations300 = this.globallyDeclaredBuffer(declarationsSample, 297);
+        this.declarations3000 = this.globallyDeclaredBuffer(declarationsSample, 2997);
+        this.frozenDeclarations300 = this.declarations300.freeze();
+        this.globalDeclarations297 = this.globallyDeclaredBuffer(new Pair<>("", List.of()), 297).freeze();
+        this.declarationsSampleKeys = declarationsSample.value();
+        this.declarations1000 = ConfGSTTerminator.newStrict().placeholderOverrideHandler(new LenientOptionalHandler<>()).build();
+        for (int i = 0; i < 1000; i++) this.declarations1000.declare("global"+i, "yoba");
         for (int i = 0; i < this.VALUE_SAMPLES; i++) {
             this.valueSamples.add(this.generateRandomString(5));
         }
@@ -144,6 +234,16 @@ public class GSTBenchmark {
         return this.testBySamples(this.simpleSamples);
     }
     
+    /**
+     * Same as {@link #simple()}, but parse results are taken from cache, all samples fit in it.<br>
+     * Benchmark overhead:<br>
+     * 2x {@code : this.randomValueOfList()}<br>
+     */
+    @Benchmark
+    public CharSequence simple_cached() {
+        return this.testBySamples(this.cachingParser, this.simpleSamples);
+    }
+    
     /**
      * Expected O(n)<br>
      * Benchmark overhead:<br>
@@ -164,6 +264,24 @@ public class GSTBenchmark {
         return this.testBySamples(this.size100Samples);
     }
     
+    /**
+     * Same as {@link #complexity_size_100()}, but template is parsed straight into result with push-style parsing.<br>
+     * Expected O(n)<br>
+     * Benchmark overhead:<br>
+     * 2x {@code : this.randomValueOfList()}<br>
+     */
+    @Benchmark
+    public CharSequence oneShot_size_100() {
+        var buffer = ConfGSTTerminator.newStrict().build();
+        var sample = this.size100Samples.get(this.random.nextInt(this.size100Samples.size()));
+        
+        for (String placeholderKey : sample.value()) {
+            buffer.declare(placeholderKey, ignored -> "yoba");
+        }
+        
+        return buffer.terminate(this.parser, sample.key());
+    }
+    
     /**
      * Benchmark overhead:<br>
      * 11x {@code : this.randomValueOfList()}<br>
@@ -182,6 +300,159 @@ public class GSTBenchmark {
         return this.testBySamples(this.placeholders100Samples);
     }
     
+    /**
+     * Render only, templates are parsed in advance to linked form.<br>
+     * Benchmark overhead:<br>
+     * 1x {@code : this.bufferInstantiation()}<br>
+     * 1x {@code : this.randomValueOfList()}<br>
+     */
+    @Benchmark
+    public CharSequence render_linked_placeholders_100() {
+        int index = this.random.nextInt(this.placeholders100Samples.size());
+        return this.declaredBuffer(this.placeholders100Samples.get(index)).terminate(this.placeholders100Linked.get(index));
+    }
+    
+    /**
+     * Same as {@link #render_linked_placeholders_100()}, but templates are parsed in advance to array-backed form.<br>
+     * Benchmark overhead:<br>
+     * 1x {@code : this.bufferInstantiation()}<br>
+     * 1x {@code : this.randomValueOfList()}<br>
+     */
+    @Benchmark
+    public CharSequence render_template_placeholders_100() {
+        int index = this.random.nextInt(this.placeholders100Samples.size());
+        return this.declaredBuffer(this.placeholders100Samples.get(index)).terminate(this.placeholders100Templates.get(index));
+    }
+    
+    /**
+     * Same as {@link #render_linked_placeholders_100()}, but templates are read from memory-mapped store.<br>
+     * Benchmark overhead:<br>
+     * 1x {@code : this.bufferInstantiation()}<br>
+     * 1x {@code : this.randomValueOfList()}<br>
+     */
+    @Benchmark
+    public CharSequence render_mapped_placeholders_100() {
+        int index = this.random.nextInt(this.placeholders100Samples.size());
+        return this.declaredBuffer(this.placeholders100Samples.get(index)).terminate(this.placeholders100Mapped.get(index));
+    }
+    
+    /**
+     * Template with 3 placeholders rendered by terminator that has only their declarations, setup to nowhere is
+     * checked.<br>
+     * Benchmark overhead: none
+     */
+    @Benchmark
+    public CharSequence render_declarations_3() {
+        return this.declarations3.terminate(this.declarationsTemplate);
+    }
+    
+    /**
+     * Same as {@link #render_declarations_3()}, but terminator also has 297 global declarations that template does not
+     * use.<br>
+     * Benchmark overhead: none
+     */
+    @Benchmark
+    public CharSequence render_declarations_300() {
+        return this.declarations300.terminate(this.declarationsTemplate);
+    }
+    
+    /**
+     * Same as {@link #render_declarations_3()}, but terminator also has 2997 global declarations that template does not
+     * use.<br>
+     * Benchmark overhead: none
+     */
+    @Benchmark
+    public CharSequence render_declarations_3000() {
+        return this.declarations3000.terminate(this.declarationsTemplate);
+    }
+    
+    /**
+     * Same as {@link #render_declarations_300()}, but terminator is frozen.<br>
+     * Benchmark overhead: none
+     */
+    @Benchmark
+    public CharSequence render_frozen_declarations_300() {
+        return this.frozenDeclarations300.terminate(this.declarationsTemplate);
+    }
+    
+    /**
+     * Same as {@link #render_declarations_300()}, but 297 global declarations are in frozen parent scope and 3
+     * declarations of template are declared in new scope on every render.<br>
+     * Benchmark overhead:<br>
+     * 1x {@code : this.scopeInstantiation()}<br>
+     */
+    @Benchmark
+    public CharSequence render_scope_declarations_300() {
+        var scope = this.globalDeclarations297.scope();
+        for (String placeholderKey : this.declarationsSampleKeys) scope.declare(placeholderKey, "yoba");
+        return scope.terminate(this.declarationsTemplate);
+    }
+    
+    /**
+     * Variants of terminator with 1000 declarations, every variant changes one declaration. Variants share declarations
+     * with base terminator.<br>
+     * Benchmark overhead: none
+     */
+    @Benchmark
+    @OperationsPerInvocation(GSTBenchmark.FORKS)
+    public List<ConfGSTTerminator> fork_declarations_1000() {
+        List<ConfGSTTerminator> forks = new ArrayList<>(GSTBenchmark.FORKS);
+        for (int i = 0; i < GSTBenchmark.FORKS; i++) {
+            var fork = this.declarations1000.fork();
+            fork.declare("global"+(i % 1000), "variant");
+            forks.add(fork);
+        }
+        return forks;
+    }
+    
+    /**
+     * Same as {@link #fork_declarations_1000()}, but every variant is declared from scratch.<br>
+     * Benchmark overhead: none
+     */
+    @Benchmark
+    @OperationsPerInvocation(GSTBenchmark.FORKS)
+    public List<ConfGSTTerminator> redeclare_declarations_1000() {
+        List<ConfGSTTerminator> variants = new ArrayList<>(GSTBenchmark.FORKS);
+        for (int i = 0; i < GSTBenchmark.FORKS; i++) {
+            var variant = ConfGSTTerminator.newStrict().placeholderOverrideHandler(new LenientOptionalHandler<>()).build();
+            for (int key = 0; key < 1000; key++) variant.declare("global"+key, key == i % 1000 ? "variant" : "yoba");
+            variants.add(variant);
+        }
+        return variants;
+    }
+    
+    /**
+     * @param globals amount of declarations that sample does not use, they are not reported as set up to nowhere
+     */
+    private ConfGSTTerminator globallyDeclaredBuffer(Pair<String, List<String>> sample, int globals) {
+        var buffer = ConfGSTTerminator.newStrict()
+            .setupToNowhereHandler(OptionalHandler.checking((key, handler) -> {}))
+            .build();
+        for (int i = 0; i < globals; i++) buffer.declare("global"+i, "yoba");
+        for (String placeholderKey : sample.value()) buffer.declare(placeholderKey, "yoba");
+        return buffer;
+    }
+    
+    /**
+     * Same as {@link #render_template_placeholders_100()}, but templates are compiled in advance against schema of
+     * their keys and rendered from positional values.<br>
+     * Benchmark overhead:<br>
+     * 1x {@code : this.randomValueOfList()}<br>
+     */
+    @Benchmark
+    public CharSequence render_bound_placeholders_100() {
+        int index = this.random.nextInt(this.placeholders100Samples.size());
+        return this.placeholders100Bound.get(index).render(this.placeholders100Values.get(index));
+    }
+    
+    private ConfGSTTerminator declaredBuffer(Pair<String, List<String>> sample) {
+        var buffer = ConfGSTTerminator.newStrict().build();
+        for (String placeholderKey : sample.value()) {
+            buffer.declare(placeholderKey, ignored -> "yoba");
+        }
+        return buffer;
+    }
+    
     /**
      * Benchmark overhead: <br>
      * 1x {@code : this.bufferInstantiation()}<br>
@@ -218,11 +489,131 @@ public class GSTBenchmark {
         }
     }
     
+    /**
+     * Parse only, score is chars/ns.<br>
+     * Text runs of String templates are scanned with String#indexOf() intrinsic (vectorized path).<br>
+     * Benchmark overhead:<br>
+     * 1x {@code : this.randomValueOfList()}<br>
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(GSTBenchmark.SIZE_100_CHARS)
+    public LinkedObjects<GSTPart> scan_vectorized_size_100() {
+        return this.parser.parse(this.size100Samples.get(this.random.nextInt(this.size100Samples.size())).key());
+    }
+    
+    /**
+     * Parse only, score is chars/ns.<br>
+     * Same templates as in {@link #scan_vectorized_size_100()}, but not Strings, so text runs are scanned char by char (scalar path).<br>
+     * Benchmark overhead:<br>
+     * 1x {@code : this.randomValueOfList()}<br>
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(GSTBenchmark.SIZE_100_CHARS)
+    public LinkedObjects<GSTPart> scan_scalar_size_100() {
+        return this.parser.parse(this.size100NonStringSamples.get(this.random.nextInt(this.size100NonStringSamples.size())));
+    }
+    
+    /**
+     * Parse only with table-driven parser, score is chars/ns.<br>
+     * Benchmark overhead:<br>
+     * 1x {@code : this.randomValueOfList()}<br>
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(GSTBenchmark.SIZE_100_CHARS)
+    public LinkedObjects<GSTPart> scan_table_size_100() {
+        return this.tableParser.parse(this.size100Samples.get(this.random.nextInt(this.size100Samples.size())).key());
+    }
+    
+    /**
+     * Parse only with string delimiters parser and default single character delimiters, score is chars/ns.<br>
+     * Should be the same as {@link #scan_vectorized_size_100()}.<br>
+     * Benchmark overhead:<br>
+     * 1x {@code : this.randomValueOfList()}<br>
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(GSTBenchmark.SIZE_100_CHARS)
+    public LinkedObjects<GSTPart> scan_sequence_size_100() {
+        return this.sequenceParser.parse(this.size100Samples.get(this.random.nextInt(this.size100Samples.size())).key());
+    }
+    
+    /**
+     * Parse only with parallel parser, templates are above its sequential threshold, score is chars/ns.<br>
+     * Benchmark overhead:<br>
+     * 1x {@code : this.randomValueOfList()}<br>
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(GSTBenchmark.SIZE_100_CHARS)
+    public LinkedObjects<GSTPart> scan_parallel_size_100() {
+        return this.parallelParser.parse(this.size100Samples.get(this.random.nextInt(this.size100Samples.size())).key());
+    }
+    
+    /**
+     * Parse only, template is UTF-8 bytes, parsed without decoding, score is bytes/ns.<br>
+     * Benchmark overhead:<br>
+     * 1x {@code : this.randomValueOfList()}<br>
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(GSTBenchmark.SIZE_100_CHARS)
+    public long scan_utf8_size_100() {
+        PartsCounter counter = new PartsCounter();
+        this.utf8Parser.parse(this.size100Utf8Samples.get(this.random.nextInt(this.size100Utf8Samples.size())), counter);
+        return counter.count;
+    }
+    
+    /**
+     * Same as {@link #scan_utf8_size_100()}, but template is decoded to String and then parsed, score is bytes/ns.<br>
+     * Benchmark overhead:<br>
+     * 1x {@code : this.randomValueOfList()}<br>
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(GSTBenchmark.SIZE_100_CHARS)
+    public long scan_decoded_utf8_size_100() {
+        PartsCounter counter = new PartsCounter();
+        byte[] template = this.size100Utf8Samples.get(this.random.nextInt(this.size100Utf8Samples.size()));
+        this.parser.parse(new String(template, StandardCharsets.UTF_8), counter);
+        return counter.count;
+    }
+    
+    /**
+     * Startup by parsing, all templates are compiled from sources, score is ns/template.
+     */
+    @Benchmark
+    @OperationsPerInvocation(GSTBenchmark.SAMPLES_AMOUNT_LARGE)
+    public Map<String, CompactTemplate> startup_parse_placeholders_10() {
+        Map<String, CompactTemplate> templates = new LinkedHashMap<>();
+        for (int i = 0; i < this.placeholders10Samples.size(); i++) {
+            templates.put("template"+i, CompactTemplate.compile(this.parser, this.placeholders10Samples.get(i).key(), this.symbols));
+        }
+        return templates;
+    }
+    
+    /**
+     * Same as {@link #startup_parse_placeholders_10()}, but templates are loaded from compiled format, score is
+     * ns/template.
+     */
+    @Benchmark
+    @OperationsPerInvocation(GSTBenchmark.SAMPLES_AMOUNT_LARGE)
+    public Map<String, CompactTemplate> startup_load_placeholders_10() throws IOException {
+        return CompactTemplateFormat.read(new ByteArrayInputStream(this.placeholders10Compiled), (SimpleGSTParser) this.parser, this.symbols);
+    }
+    
     @Benchmark
     public ConfGSTTerminator bufferInstantiation() {
         return ConfGSTTerminator.newStrict().build();
     }
     
+    @Benchmark
+    public ConfGSTTerminator scopeInstantiation() {
+        return this.globalDeclarations297.scope();
+    }
+    
     @Benchmark
     public String randomValueOfList() {
         return this.valueSamples.get(this.random.nextInt(this.VALUE_SAMPLES));
@@ -241,6 +632,10 @@ public class GSTBenchmark {
     }
     
     public CharSequence testBySamples(List<Pair<String, List<String>>> samples) {
+        return this.testBySamples(this.parser, samples);
+    }
+    
+    public CharSequence testBySamples(GSTParser parser, List<Pair<String, List<String>>> samples) {
         var buffer = ConfGSTTerminator.newStrict().build();
         var sample = samples.get(this.random.nextInt(samples.size()));
         
@@ -248,8 +643,35 @@ public class GSTBenchmark {
             buffer.declare(placeholderKey, ignored -> "yoba");
         }
         
-        LinkedObjects<GSTPart> parsedGST = this.parser.parse(sample.key());
+        LinkedObjects<GSTPart> parsedGST = parser.parse(sample.key());
         return buffer.terminate(parsedGST);
     }
     
+    
+    private static class PartsCounter implements GSTSink, Utf8GSTSink {
+        
+        private long count;
+        
+        @Override
+        public void onText(CharSequence source, int start, int end) {
+            this.count++;
+        }
+        
+        @Override
+        public void onPlaceholder(CharSequence source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected) {
+            this.count++;
+        }
+        
+        @Override
+        public void onText(ByteBuffer source, int start, int end) {
+            this.count++;
+        }
+        
+        @Override
+        public void onPlaceholder(ByteBuffer source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected) {
+            this.count++;
+        }
+        
+    }
+    
 }
\ No newline at end of file
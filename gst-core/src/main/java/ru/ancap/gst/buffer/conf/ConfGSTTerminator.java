@@ -1,6 +1,7 @@
 package ru.ancap.gst.buffer.conf;
 
 import lombok.*;
+import lombok.experimental.Accessors;
 import org.jetbrains.annotations.Nullable;
 import ru.ancap.gst.buffer.PlaceholderHandler;
 import ru.ancap.gst.buffer.SimpleReplace;
@@ -8,50 +9,115 @@ import ru.ancap.gst.buffer.conf.exception.PlaceholderOverrideException;
 import ru.ancap.gst.buffer.conf.exception.PlaceholderProcessingException;
 import ru.ancap.gst.buffer.conf.exception.PlaceholderSetupToNowhereException;
 import ru.ancap.gst.buffer.conf.exception.UnhandledPlaceholderException;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.GSTSink;
+import ru.ancap.gst.parser.argument.ArgumentDecoder;
+import ru.ancap.gst.parser.argument.ArgumentDecoders;
+import ru.ancap.gst.parser.argument.DecodedArgument;
+import ru.ancap.gst.parser.compact.CompactTemplate;
+import ru.ancap.gst.parser.gst_structure.DirectPlaceholderData;
 import ru.ancap.gst.parser.gst_structure.GSTPart;
 import ru.ancap.gst.parser.gst_structure.Placeholder;
+import ru.ancap.gst.parser.gst_structure.Template;
+import ru.ancap.gst.parser.gst_structure.TemplateMetadata;
 import ru.ancap.gst.parser.gst_structure.Text;
+import ru.ancap.gst.parser.mapped.MappedString;
+import ru.ancap.gst.parser.mapped.MappedTemplate;
 import ru.ancap.gst.parser.simple.exception.UnexpectedEndOfInputException;
+import ru.ancap.gst.parser.store.PlaceholderSegment;
+import ru.ancap.gst.parser.store.StoredTemplate;
+import ru.ancap.gst.parser.store.TextSegment;
+import ru.ancap.gst.parser.tree.PlaceholderNode;
+import ru.ancap.gst.parser.tree.TemplateTree;
+import ru.ancap.gst.parser.tree.TextNode;
+import ru.ancap.gst.parser.tree.TreeNode;
 import ru.ancap.gst.util.LinkedObjects;
 import ru.ancap.gst.util.Node;
 
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.logging.Logger;
 
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
 @ToString @EqualsAndHashCode
-@lombok.Builder(builderClassName = "Builder")
 public class ConfGSTTerminator {
     
-    private final Map<String, PlaceholderHandler> declarations = new HashMap<>();
-    
-    @lombok.Builder.Default private final InsertionHandler insertionHandler = InsertionSafer.UNSAFE;
-    @lombok.Builder.Default private final PhProcessingErrorHandler phProcessingErrorHandler = (ign, err) -> {
-        throw new PlaceholderProcessingException(err);
-    };
-    @lombok.Builder.Default private final PlaceholderHandler unhandledPlaceholderHandler = unused -> {
-        throw new UnhandledPlaceholderException(unused);
-    };
-    @lombok.Builder.Default private final OptionalHandler<SetupToNowhereHandler> setupToNowhereHandler = OptionalHandler.checking(
-        (key, handler) -> {throw new PlaceholderSetupToNowhereException(key, handler);}
-    );
-    @lombok.Builder.Default private final OptionalHandler<PlaceholderOverrideHandler> placeholderOverrideHandler = OptionalHandler.checking(
-        (key, prev, next) -> { throw new PlaceholderOverrideException(key, prev, next); }
-    );
-    @lombok.Builder.Default private final OptionalHandler<UnexpectedEndOfInputHandler> unexpectedEndOfInputHandler = OptionalHandler.checking(
-        gst -> { throw new UnexpectedEndOfInputException(gst);}
-    );
+    /**
+     * Renders that check setup to nowhere mark used declaration slots in bitset instead of copying declarations.
+     */
+    private final Declarations declarations;
+    private final Map<String, ArgumentDecoder<?>> argumentDecoders;
+    
+    /**
+     * Frozen scope that resolves keys not declared in this one, see {@link #scope()}.
+     */
+    private final @Nullable ConfGSTTerminator parent;
+    
+    private final InsertionHandler insertionHandler;
+    private final PhProcessingErrorHandler phProcessingErrorHandler;
+    private final PlaceholderHandler unhandledPlaceholderHandler;
+    private final OptionalHandler<SetupToNowhereHandler> setupToNowhereHandler;
+    private final OptionalHandler<PlaceholderOverrideHandler> placeholderOverrideHandler;
+    private final OptionalHandler<UnexpectedEndOfInputHandler> unexpectedEndOfInputHandler;
+    
+    /**
+     * Last check of {@link #checkSetupToNowhere(TemplateMetadata, Set)} that reported nothing.
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude private volatile @Nullable CheckedSetup checkedSetup;
+    
+    public static Builder builder() {
+        return new Builder();
+    }
     
+    @Accessors(fluent = true, chain = true) @Setter
     public static class Builder {
         
+        private InsertionHandler insertionHandler = InsertionSafer.UNSAFE;
+        private PhProcessingErrorHandler phProcessingErrorHandler = (ign, err) -> {
+            throw new PlaceholderProcessingException(err);
+        };
+        private PlaceholderHandler unhandledPlaceholderHandler = unused -> {
+            throw new UnhandledPlaceholderException(unused);
+        };
+        private OptionalHandler<SetupToNowhereHandler> setupToNowhereHandler = OptionalHandler.checking(
+            (key, handler) -> {throw new PlaceholderSetupToNowhereException(key, handler);}
+        );
+        private OptionalHandler<PlaceholderOverrideHandler> placeholderOverrideHandler = OptionalHandler.checking(
+            (key, prev, next) -> { throw new PlaceholderOverrideException(key, prev, next); }
+        );
+        private OptionalHandler<UnexpectedEndOfInputHandler> unexpectedEndOfInputHandler = OptionalHandler.checking(
+            gst -> { throw new UnexpectedEndOfInputException(gst);}
+        );
+        
+        /**
+         * Parent scope, frozen when terminator is built, see {@link ConfGSTTerminator#scope()}. Handlers of this
+         * builder are used for declarations of built terminator only.
+         */
+        private @Nullable ConfGSTTerminator parent;
+        
         public Builder insertionSafer(InsertionSafer safer) {
             this.insertionHandler(safer);
             return this;
         }
         
+        public ConfGSTTerminator build() {
+            ConfGSTTerminator parent = this.parent == null ? null : this.parent.freeze();
+            return new ConfGSTTerminator(
+                new MutableDeclarations(parent == null ? 0 : parent.declarations.slots()),
+                new HashMap<>(),
+                parent,
+                this.insertionHandler,
+                this.phProcessingErrorHandler,
+                this.unhandledPlaceholderHandler,
+                this.setupToNowhereHandler,
+                this.placeholderOverrideHandler,
+                this.unexpectedEndOfInputHandler
+            );
+        }
+        
     }
     
     /**
@@ -86,14 +152,14 @@ public class ConfGSTTerminator {
         }))
         .placeholderOverrideHandler(OptionalHandler.checking((key, prev, next) -> {
             logger.throwing(ConfGSTTerminator.class.getName(), "newWarning", new PlaceholderOverrideException(key, prev, next));
-            return true;                                                                                                         
+            return true;
         }))
         .unexpectedEndOfInputHandler(OptionalHandler.checking((gst) -> {
             logger.throwing(ConfGSTTerminator.class.getName(), "newWarning", new UnexpectedEndOfInputException(gst));
         }));
     
     /**
-     * Fail-safe (lenient) terminator that still says to user what happened wrong. 
+     * Fail-safe (lenient) terminator that still says to user what happened wrong.
      * Uses Instance pattern since usually warnings shouldn't customize per every
      * call rather than per system.
      */
@@ -113,8 +179,112 @@ public class ConfGSTTerminator {
         this.declareRaw(key, new CallConfer(this.insertionHandler, this.phProcessingErrorHandler, handler));
     }
     
+    /**
+     * Declares handler that gets argument decoded with decoder. In templates compiled with
+     * {@link #argumentDecoders()} argument is decoded once at compile time, otherwise on every call. Placeholder
+     * without argument or with argument that decoder rejects is passed to processing error handler.
+     */
+    public <T> void declare(String key, ArgumentDecoder<T> decoder, DecodedPlaceholderHandler<T> handler) {
+        var confer = new DecodingConfer<>(this.insertionHandler, this.phProcessingErrorHandler, decoder, handler);
+        this.declareRaw(key, confer);
+        if (this.findDeclaration(key) == confer) this.argumentDecoders.put(key, decoder);
+    }
+    
+    /**
+     * @return decoders of declarations made with {@link #declare(String, ArgumentDecoder, DecodedPlaceholderHandler)},
+     *         templates compiled with them are rendered without decoding arguments
+     */
+    public ArgumentDecoders argumentDecoders() {
+        ArgumentDecoders.Builder builder = ArgumentDecoders.builder();
+        this.collectArgumentDecoders(builder, this);
+        return builder.build();
+    }
+    
+    private void collectArgumentDecoders(ArgumentDecoders.Builder builder, ConfGSTTerminator scope) {
+        if (this.parent != null) this.parent.collectArgumentDecoders(builder, scope);
+        this.argumentDecoders.forEach((key, decoder) -> {
+            if (scope.find(key) == this.declarations.find(key)) builder.decoder(key, decoder);
+        });
+    }
+    
+    /**
+     * @return declaration of this scope or, if there is none, of parent scopes
+     */
     public @Nullable PlaceholderHandler findDeclaration(String placeholderKey) {
-        return this.declarations.get(placeholderKey);
+        Declaration declaration = this.find(placeholderKey);
+        return declaration == null ? null : declaration.handler();
+    }
+    
+    private @Nullable Declaration find(String key) {
+        Declaration declaration = this.declarations.find(key);
+        if (declaration != null || this.parent == null) return declaration;
+        return this.parent.find(key);
+    }
+    
+    /**
+     * Immutable copy of terminator that can be safely published and rendered with from many threads without locks.
+     * Declarations are moved to open addressing table built for their final key set, which is faster to look up than
+     * {@link HashMap}. Declare methods of frozen terminator throw {@link UnsupportedOperationException}. Handlers are
+     * shared with this terminator, so they must be thread-safe too.
+     */
+    public ConfGSTTerminator freeze() {
+        if (this.declarations instanceof FrozenDeclarations) return this;
+        return new ConfGSTTerminator(
+            FrozenDeclarations.of(this.declarations),
+            Map.copyOf(this.argumentDecoders),
+            this.parent,
+            this.insertionHandler,
+            this.phProcessingErrorHandler,
+            this.unhandledPlaceholderHandler,
+            this.setupToNowhereHandler,
+            this.placeholderOverrideHandler,
+            this.unexpectedEndOfInputHandler
+        );
+    }
+    
+    /**
+     * Copy of terminator that shares declarations with it. Declarations of fork are kept in persistent hash trie, so
+     * declare on fork costs O(log n) and does not affect this terminator, and declare on this terminator does not
+     * affect fork. Trie of this terminator is built by first fork after declarations were changed, O(n), and shared by
+     * next forks, which are O(1). Fork of frozen terminator is not frozen. Parent scope and handlers are shared.
+     */
+    public ConfGSTTerminator fork() {
+        return new ConfGSTTerminator(
+            this.declarations.fork(),
+            new HashMap<>(this.argumentDecoders),
+            this.parent,
+            this.insertionHandler,
+            this.phProcessingErrorHandler,
+            this.unhandledPlaceholderHandler,
+            this.setupToNowhereHandler,
+            this.placeholderOverrideHandler,
+            this.unexpectedEndOfInputHandler
+        );
+    }
+    
+    /**
+     * Creates empty scope over frozen copy of this terminator (or over this terminator if it is already frozen, which
+     * is the cheap way). Keys are resolved through declarations of scope first and through parent second, so
+     * declaration in scope shadows declaration of parent and is not reported as override. Parent is not changed by
+     * scope.
+     * <p>
+     * Scope has the same handlers as this terminator, to configure them use {@link Builder#parent(ConfGSTTerminator)}.
+     * Setup to nowhere is checked per scope: declarations of every scope are checked by handler of their scope, and
+     * shadowed declarations are not checked.
+     */
+    public ConfGSTTerminator scope() {
+        ConfGSTTerminator parent = this.freeze();
+        return new ConfGSTTerminator(
+            new MutableDeclarations(parent.declarations.slots()),
+            new HashMap<>(),
+            parent,
+            this.insertionHandler,
+            this.phProcessingErrorHandler,
+            this.unhandledPlaceholderHandler,
+            this.setupToNowhereHandler,
+            this.placeholderOverrideHandler,
+            this.unexpectedEndOfInputHandler
+        );
     }
     
     @RequiredArgsConstructor
@@ -133,12 +303,42 @@ public class ConfGSTTerminator {
         
     }
     
+    @RequiredArgsConstructor
+    private static class DecodingConfer<T> implements PlaceholderHandler {
+        
+        private final InsertionHandler insertionHandler;
+        private final PhProcessingErrorHandler phProcessingErrorHandler;
+        
+        private final ArgumentDecoder<T> decoder;
+        private final DecodedPlaceholderHandler<T> shrinkedCallTarget;
+        
+        @Override
+        public String handle(Placeholder placeholder) {
+            return this.handle(placeholder, null);
+        }
+        
+        /**
+         * @param decoded argument decoded at compile time, used only if it was decoded with decoder of this handler
+         */
+        @SuppressWarnings("unchecked")
+        public String handle(Placeholder placeholder, @Nullable DecodedArgument decoded) {
+            try {
+                T argument = decoded != null && decoded.decoder() == this.decoder ? (T) decoded.value() : this.decoder.decode(placeholder.directData().argument().orElseThrow());
+                return this.insertionHandler.handle(this.shrinkedCallTarget.handle(placeholder.directData(), argument));
+            } catch (Throwable throwable) {
+                return this.phProcessingErrorHandler.handle(placeholder.directData(), throwable);
+            }
+        }
+        
+    }
+    
     public void declareRaw(String key, PlaceholderHandler handler) {
         if (this.placeholderOverrideHandler.checkForProblem()) {
-            var prev = this.declarations.get(key);
-            if (prev != null) if (!this.placeholderOverrideHandler.handler().handle(key, prev, handler)) return;
+            var prev = this.declarations.find(key);
+            if (prev != null) if (!this.placeholderOverrideHandler.handler().handle(key, prev.handler(), handler)) return;
         }
-        this.declarations.put(key, handler);
+        this.declarations.declare(key, handler);
+        this.argumentDecoders.remove(key);
     }
     
     public String terminate(LinkedObjects<GSTPart> terminated) {
@@ -147,8 +347,8 @@ public class ConfGSTTerminator {
     
     /**
      * Does not provide side effect. Makes minimal possible amount of calls to hashmaps
-     * (ph = 1 remove + 1 get, declaration = 1 put) to ensure
-     * max performance.
+     * (ph = 1 get) to ensure max performance. Declarations are not copied, if setup to nowhere is checked, used ones
+     * are marked in bitset of declaration slots.
      */
     public String terminate(LinkedObjects<GSTPart> terminated, Set<String> excludedKeys) {
         StringBuilder result = new StringBuilder();
@@ -157,30 +357,306 @@ public class ConfGSTTerminator {
         if (this.unexpectedEndOfInputHandler.checkForProblem() && terminated.graphEnd().contents() instanceof Placeholder placeholder && !placeholder.endExpected()) {
             this.unexpectedEndOfInputHandler.handler().handle(terminated);
         }
-        Map<String, PlaceholderHandler> lookup = new HashMap<>(this.declarations);
-        Iterator<Node<GSTPart>> iterator = terminated.iterator();
-        while (true) {
-            if (iterator.hasNext()) {
-                Node<GSTPart> node = iterator.next();
-                GSTPart part = node.contents();
-                switch (part) {
-                    case Placeholder placeholder -> {
-                        var state = this.declarations.get(placeholder.directData().key());
-                        lookup.remove(placeholder.directData().key()); // if you know how to get rid of this call let me know
-                        if (placeholder.exclusion()) continue;
-                        if (state == null) result.append(this.unhandledPlaceholderHandler.handle(placeholder));
-                        else result.append(state.handle(placeholder));
+        long @Nullable [] used = this.usedSlots();
+        for (Node<GSTPart> node : terminated) {
+            switch (node.contents()) {
+                case Placeholder placeholder -> this.handle(placeholder, used, result);
+                case Text text -> text.appendTo(result);
+            }
+        }
+        this.checkSetupToNowhere(used, excludedKeys);
+        return result.toString();
+    }
+    
+    public String terminate(Template terminated) {
+        return this.terminate(terminated, Set.of());
+    }
+    
+    /**
+     * Same as {@link #terminate(LinkedObjects, Set)}, but parts are iterated by index, and declarations are checked
+     * against {@link Template#metadata()} instead of being marked during rendering, see
+     * {@link #checkSetupToNowhere(TemplateMetadata, Set)}.
+     */
+    public String terminate(Template terminated, Set<String> excludedKeys) {
+        if (terminated.isEmpty()) return "";
+        TemplateMetadata metadata = terminated.metadata();
+        if (this.unexpectedEndOfInputHandler.checkForProblem() && !metadata.endExpected()) {
+            this.unexpectedEndOfInputHandler.handler().handle(terminated.toLinkedObjects());
+        }
+        StringBuilder result = new StringBuilder();
+        for (int index = 0; index < terminated.size(); index++) {
+            switch (terminated.get(index)) {
+                case Placeholder placeholder -> this.handle(placeholder, terminated.decodedArgument(index), null, result);
+                case Text text -> text.appendTo(result);
+            }
+        }
+        this.checkSetupToNowhere(metadata, excludedKeys);
+        return result.toString();
+    }
+    
+    public String terminate(CompactTemplate terminated) {
+        return this.terminate(terminated, Set.of());
+    }
+    
+    /**
+     * Same as {@link #terminate(Template, Set)}, placeholders are created only for the time of handling.
+     */
+    public String terminate(CompactTemplate terminated, Set<String> excludedKeys) {
+        if (terminated.size() == 0) return "";
+        TemplateMetadata metadata = terminated.metadata();
+        if (this.unexpectedEndOfInputHandler.checkForProblem() && !metadata.endExpected()) {
+            this.unexpectedEndOfInputHandler.handler().handle(terminated.toTemplate().toLinkedObjects());
+        }
+        Rendering rendering = new Rendering(new StringBuilder(terminated.source().length()), null);
+        terminated.replay(rendering);
+        this.checkSetupToNowhere(metadata, excludedKeys);
+        return rendering.result.toString();
+    }
+    
+    public String terminate(StoredTemplate terminated) {
+        return this.terminate(terminated, Set.of());
+    }
+    
+    /**
+     * Same as {@link #terminate(LinkedObjects, Set)}, placeholders are created only for the time of handling.
+     */
+    public String terminate(StoredTemplate terminated, Set<String> excludedKeys) {
+        if (terminated.size() == 0) return "";
+        if (this.unexpectedEndOfInputHandler.checkForProblem() && !terminated.endExpected()) {
+            this.unexpectedEndOfInputHandler.handler().handle(terminated.toTemplate().toLinkedObjects());
+        }
+        StringBuilder result = new StringBuilder();
+        long @Nullable [] used = this.usedSlots();
+        for (int part = 0; part < terminated.size(); part++) {
+            switch (terminated.segment(part)) {
+                case PlaceholderSegment placeholder -> this.handle(placeholder.toPlaceholder(terminated.index(part)), used, result);
+                case TextSegment text -> result.append(text.text());
+            }
+        }
+        this.checkSetupToNowhere(used, excludedKeys);
+        return result.toString();
+    }
+    
+    public String terminate(MappedTemplate terminated) {
+        return this.terminate(terminated, Set.of());
+    }
+    
+    /**
+     * Same as {@link #terminate(LinkedObjects, Set)}, text is copied from mapping straight to result, placeholders
+     * are created only for the time of handling.
+     */
+    public String terminate(MappedTemplate terminated, Set<String> excludedKeys) {
+        int size = terminated.size();
+        if (size == 0) return "";
+        if (this.unexpectedEndOfInputHandler.checkForProblem() && !terminated.endExpected()) {
+            this.unexpectedEndOfInputHandler.handler().handle(terminated.toTemplate().toLinkedObjects());
+        }
+        MappedString source = terminated.source();
+        boolean endExpected = terminated.endExpected();
+        Rendering rendering = new Rendering(new StringBuilder(source.length()), this.usedSlots());
+        for (int part = 0; part < size; part++) {
+            if (terminated.isText(part)) source.appendTo(rendering.result, terminated.start(part), terminated.end(part));
+            else rendering.onPlaceholder(
+                source,
+                terminated.start(part),
+                terminated.end(part),
+                terminated.key(part),
+                terminated.argument(part),
+                terminated.exclusion(part),
+                endExpected || part != size - 1
+            );
+        }
+        this.checkSetupToNowhere(rendering.used, excludedKeys);
+        return rendering.result.toString();
+    }
+    
+    public String terminate(GSTParser parser, CharSequence template) {
+        return this.terminate(parser, template, Set.of());
+    }
+    
+    /**
+     * One-shot rendering, template is parsed straight into result without building parse result. Has same
+     * semantics as {@link #terminate(LinkedObjects, Set)}, except that unexpected end of input is found only
+     * after all placeholders are handled. In that case template is parsed again to pass it to handler.
+     */
+    public String terminate(GSTParser parser, CharSequence template, Set<String> excludedKeys) {
+        if (template.isEmpty()) return "";
+        Rendering rendering = new Rendering(new StringBuilder(template.length()), this.usedSlots());
+        parser.parse(template, rendering);
+        if (this.unexpectedEndOfInputHandler.checkForProblem() && rendering.unexpectedEnd) {
+            this.unexpectedEndOfInputHandler.handler().handle(parser.parse(template));
+        }
+        this.checkSetupToNowhere(rendering.used, excludedKeys);
+        return rendering.result.toString();
+    }
+    
+    public String terminate(TemplateTree terminated) {
+        return this.terminate(terminated, Set.of());
+    }
+    
+    /**
+     * Same as {@link #terminate(LinkedObjects, Set)}, but placeholders in arguments are evaluated inside-out in the
+     * same pass: argument is rendered first and outer placeholder is handled with rendered argument. Arguments of
+     * excluded placeholders are not evaluated, but their keys are counted as used.
+     */
+    public String terminate(TemplateTree terminated, Set<String> excludedKeys) {
+        if (terminated.nodes().isEmpty()) return "";
+        if (this.unexpectedEndOfInputHandler.checkForProblem() && !terminated.endExpected()) {
+            this.unexpectedEndOfInputHandler.handler().handle(terminated.toTemplate().toLinkedObjects());
+        }
+        StringBuilder result = new StringBuilder();
+        long @Nullable [] used = this.usedSlots();
+        this.evaluate(terminated, used, result);
+        this.checkSetupToNowhere(used, excludedKeys);
+        return result.toString();
+    }
+    
+    private void evaluate(TemplateTree tree, long @Nullable [] used, StringBuilder result) {
+        for (TreeNode node : tree.nodes()) {
+            switch (node) {
+                case TextNode text -> text.text().appendTo(result);
+                case PlaceholderNode placeholderNode -> {
+                    Placeholder placeholder = placeholderNode.placeholder();
+                    TemplateTree argument = placeholderNode.argument();
+                    if (argument != null) {
+                        if (placeholder.exclusion()) this.skip(argument, used);
+                        else {
+                            StringBuilder rendered = new StringBuilder();
+                            this.evaluate(argument, used, rendered);
+                            placeholder = placeholder.withDirectData(placeholder.directData().withArgument(Optional.of(rendered.toString())));
+                        }
                     }
-                    case Text text -> result.append(text.string());
+                    this.handle(placeholder, used, result);
                 }
-            } else {
-                if (this.setupToNowhereHandler.checkForProblem()) for (var setToNowhere : lookup.entrySet()) {
-                    if (!excludedKeys.contains(setToNowhere.getKey())) this.setupToNowhereHandler.handler().handle(setToNowhere.getKey(), setToNowhere.getValue());
-                }
-                break;
             }
         }
-        return result.toString();
+    }
+    
+    private void skip(TemplateTree tree, long @Nullable [] used) {
+        for (TreeNode node : tree.nodes()) {
+            if (!(node instanceof PlaceholderNode placeholder)) continue;
+            if (used != null) this.markUsed(used, placeholder.placeholder().directData().key());
+            if (placeholder.argument() != null) this.skip(placeholder.argument(), used);
+        }
+    }
+    
+    /**
+     * @param used bitset of used declaration slots, null if setup to nowhere is not checked or is checked against
+     *             template metadata
+     */
+    private void handle(Placeholder placeholder, long @Nullable [] used, StringBuilder result) {
+        this.handle(placeholder, null, used, result);
+    }
+    
+    /**
+     * @param decoded argument decoded at compile time, see {@link Template#decodedArgument(int)}
+     */
+    private void handle(Placeholder placeholder, @Nullable DecodedArgument decoded, long @Nullable [] used, StringBuilder result) {
+        var state = this.find(placeholder.directData().key());
+        if (state != null && used != null) ConfGSTTerminator.mark(used, state.slot());
+        if (placeholder.exclusion()) return;
+        if (state == null) result.append(this.unhandledPlaceholderHandler.handle(placeholder));
+        else if (decoded != null && state.handler() instanceof DecodingConfer<?> confer) result.append(confer.handle(placeholder, decoded));
+        else result.append(state.handler().handle(placeholder));
+    }
+    
+    /**
+     * @return empty bitset of declaration slots, null if setup to nowhere is not checked
+     */
+    private long @Nullable [] usedSlots() {
+        if (!this.checksSetupToNowhere()) return null;
+        return new long[(this.declarations.slots() + Long.SIZE - 1) / Long.SIZE];
+    }
+    
+    private void markUsed(long[] used, String key) {
+        Declaration declaration = this.find(key);
+        if (declaration != null) ConfGSTTerminator.mark(used, declaration.slot());
+    }
+    
+    /**
+     * Slots declared after bitset was created are not marked, they are not checked by bitset either.
+     */
+    private static void mark(long[] used, int slot) {
+        if (slot / Long.SIZE < used.length) used[slot / Long.SIZE] |= 1L << slot;
+    }
+    
+    /**
+     * Reports declarations that template does not use to setup to nowhere handler, same check as terminate methods
+     * do after rendering. Does not depend on rendering, so it can be done once for template and declarations that are
+     * rendered many times.
+     * <p>
+     * Check that reported nothing is remembered for the same metadata and excluded keys instances, and repeated
+     * until keys are declared, so rendering of the same {@link Template} or {@link CompactTemplate} checks it once.
+     * Redeclaration of key does not change the result, because declaration stays in its slot.
+     */
+    public void checkSetupToNowhere(TemplateMetadata metadata, Set<String> excludedKeys) {
+        if (!this.checksSetupToNowhere()) return;
+        int slots = this.declarations.slots();
+        CheckedSetup checked = this.checkedSetup;
+        if (checked != null && checked.metadata() == metadata && checked.excludedKeys() == excludedKeys && checked.slots() == slots) return;
+        long[] used = this.usedSlots();
+        for (String key : metadata.keys()) this.markUsed(used, key);
+        if (!this.checkSetupToNowhere(used, excludedKeys, this)) this.checkedSetup = new CheckedSetup(metadata, excludedKeys, slots);
+    }
+    
+    private void checkSetupToNowhere(long @Nullable [] used, Set<String> excludedKeys) {
+        if (used != null) this.checkSetupToNowhere(used, excludedKeys, this);
+    }
+    
+    /**
+     * @param scope scope that is rendered with, declarations that it resolves to other scopes are shadowed
+     * @return whether anything was reported
+     */
+    private boolean checkSetupToNowhere(long[] used, Set<String> excludedKeys, ConfGSTTerminator scope) {
+        boolean[] reported = {false};
+        if (this.setupToNowhereHandler.checkForProblem()) this.declarations.forEach(setToNowhere -> {
+            int slot = setToNowhere.slot();
+            if (slot / Long.SIZE >= used.length || (used[slot / Long.SIZE] & 1L << slot) != 0) return;
+            if (excludedKeys.contains(setToNowhere.key())) return;
+            if (scope != this && scope.find(setToNowhere.key()) != setToNowhere) return;
+            reported[0] = true;
+            this.setupToNowhereHandler.handler().handle(setToNowhere.key(), setToNowhere.handler());
+        });
+        if (this.parent != null && this.parent.checkSetupToNowhere(used, excludedKeys, scope)) reported[0] = true;
+        return reported[0];
+    }
+    
+    private boolean checksSetupToNowhere() {
+        return this.setupToNowhereHandler.checkForProblem() || (this.parent != null && this.parent.checksSetupToNowhere());
+    }
+    
+    /**
+     * Declarations of scope and its parents are only added, so amount of slots identifies declared keys.
+     */
+    private record CheckedSetup(TemplateMetadata metadata, Set<String> excludedKeys, int slots) { }
+    
+    @RequiredArgsConstructor
+    private class Rendering implements GSTSink {
+        
+        private final StringBuilder result;
+        private final long @Nullable [] used;
+        private boolean unexpectedEnd;
+        
+        @Override
+        public void onText(CharSequence source, int start, int end) {
+            this.result.append(source, start, end);
+        }
+        
+        @Override
+        public void onPlaceholder(CharSequence source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected) {
+            ConfGSTTerminator.this.handle(new Placeholder(
+                new DirectPlaceholderData(key, Optional.ofNullable(argument), Text.view(start, source, start, end)),
+                exclusion,
+                endExpected
+            ), this.used, this.result);
+            if (!endExpected) this.unexpectedEnd = true;
+        }
+        
+        @Override
+        public boolean keepsSource() {
+            return false;
+        }
+        
     }
     
 }
\ No newline at end of file
@@ -0,0 +1,8 @@
+package ru.ancap.gst.buffer.conf;
+
+import ru.ancap.gst.buffer.PlaceholderHandler;
+
+/**
+ * @param slot index of declaration in bitset of used declarations, kept when key is declared again
+ */
+record Declaration(String key, int slot, PlaceholderHandler handler) { }
\ No newline at end of file
@@ -0,0 +1,59 @@
+package ru.ancap.gst.buffer.conf;
+
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.buffer.PlaceholderHandler;
+
+import java.util.function.Consumer;
+
+/**
+ * Declarations of {@link ConfGSTTerminator}. Declarations are equal if they have the same slots and the same
+ * declarations, whatever implementation keeps them, see {@link #equal(Declarations, Object)}.
+ */
+sealed interface Declarations permits MutableDeclarations, FrozenDeclarations, PersistentDeclarations {
+    
+    @Nullable Declaration find(String key);
+    
+    /**
+     * Declares key in new slot, or in slot of previous declaration of key.
+     */
+    void declare(String key, PlaceholderHandler handler);
+    
+    /**
+     * @return exclusive upper bound of slots
+     */
+    int slots();
+    
+    /**
+     * Iterates declarations, order depends on implementation.
+     */
+    void forEach(Consumer<Declaration> action);
+    
+    /**
+     * @return declarations that share current declarations with this ones, declare on either of them does not
+     *         affect the other
+     */
+    PersistentDeclarations fork();
+    
+    static boolean equal(Declarations declarations, @Nullable Object other) {
+        if (declarations == other) return true;
+        if (!(other instanceof Declarations that) || declarations.slots() != that.slots()) return false;
+        int[] sizes = new int[2];
+        boolean[] contained = {true};
+        declarations.forEach(declaration -> {
+            sizes[0]++;
+            if (!declaration.equals(that.find(declaration.key()))) contained[0] = false;
+        });
+        that.forEach(declaration -> sizes[1]++);
+        return contained[0] && sizes[0] == sizes[1];
+    }
+    
+    /**
+     * Does not depend on order of declarations, like {@link java.util.Set#hashCode()}.
+     */
+    static int hashCode(Declarations declarations) {
+        int[] hash = {declarations.slots()};
+        declarations.forEach(declaration -> hash[0] += declaration.hashCode());
+        return hash[0];
+    }
+    
+}
\ No newline at end of file
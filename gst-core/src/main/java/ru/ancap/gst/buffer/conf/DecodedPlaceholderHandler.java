@@ -0,0 +1,13 @@
+package ru.ancap.gst.buffer.conf;
+
+import ru.ancap.gst.parser.gst_structure.DirectPlaceholderData;
+
+/**
+ * Same as {@link ConfExpectPlaceholderHandler}, but gets argument already decoded, see
+ * {@link ConfGSTTerminator#declare(String, ru.ancap.gst.parser.argument.ArgumentDecoder, DecodedPlaceholderHandler)}.
+ */
+public interface DecodedPlaceholderHandler<T> {
+    
+    String handle(DirectPlaceholderData directPhData, T argument);
+    
+}
\ No newline at end of file
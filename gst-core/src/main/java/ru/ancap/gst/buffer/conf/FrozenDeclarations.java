@@ -0,0 +1,113 @@
+package ru.ancap.gst.buffer.conf;
+
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.buffer.PlaceholderHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Open addressing table built once from final key set. Capacity is at least twice amount of keys and index is taken
+ * from high bits of multiplied hash, so probe sequences are short. Hashes are compared before keys and keys are
+ * kept in array next to them, declaration is loaded only when key is found. Immutable, all fields except lazily built
+ * snapshot for forks are final, so it can be shared between threads without synchronization.
+ */
+final class FrozenDeclarations implements Declarations {
+    
+    private final int shift;
+    private final int mask;
+    private final int[] hashes;
+    private final String[] keys;
+    private final Declaration[] table;
+    
+    /**
+     * Declarations in order of source declarations.
+     */
+    private final Declaration[] declarations;
+    private final int slots;
+    
+    /**
+     * Trie of declarations for forks, built once. Nodes are immutable and have only final fields, so it is safe to
+     * build it in several threads at once and publish it through data race.
+     */
+    private PersistentDeclarations.@Nullable Node snapshot;
+    
+    private FrozenDeclarations(Declaration[] declarations, int slots) {
+        int capacity = Integer.highestOneBit(Math.max(2, declarations.length) * 2 - 1) * 2;
+        this.shift = Integer.SIZE - Integer.numberOfTrailingZeros(capacity);
+        this.mask = capacity - 1;
+        this.hashes = new int[capacity];
+        this.keys = new String[capacity];
+        this.table = new Declaration[capacity];
+        this.declarations = declarations;
+        this.slots = slots;
+        for (Declaration declaration : declarations) {
+            int hash = declaration.key().hashCode();
+            int index = this.index(hash);
+            while (this.keys[index] != null) index = (index + 1) & this.mask;
+            this.hashes[index] = hash;
+            this.keys[index] = declaration.key();
+            this.table[index] = declaration;
+        }
+    }
+    
+    static FrozenDeclarations of(Declarations declarations) {
+        if (declarations instanceof FrozenDeclarations frozen) return frozen;
+        List<Declaration> ordered = new ArrayList<>();
+        declarations.forEach(ordered::add);
+        return new FrozenDeclarations(ordered.toArray(Declaration[]::new), declarations.slots());
+    }
+    
+    @Override
+    public @Nullable Declaration find(String key) {
+        int hash = key.hashCode();
+        for (int index = this.index(hash); ; index = (index + 1) & this.mask) {
+            String candidate = this.keys[index];
+            if (candidate == null) return null;
+            if (this.hashes[index] == hash && candidate.equals(key)) return this.table[index];
+        }
+    }
+    
+    @Override
+    public void declare(String key, PlaceholderHandler handler) {
+        throw new UnsupportedOperationException("Terminator is frozen, can not declare "+key);
+    }
+    
+    @Override
+    public int slots() {
+        return this.slots;
+    }
+    
+    @Override
+    public void forEach(Consumer<Declaration> action) {
+        for (Declaration declaration : this.declarations) action.accept(declaration);
+    }
+    
+    @Override
+    public PersistentDeclarations fork() {
+        PersistentDeclarations.Node snapshot = this.snapshot;
+        if (snapshot == null && this.declarations.length > 0) this.snapshot = snapshot = PersistentDeclarations.root(this);
+        return new PersistentDeclarations(snapshot, this.slots);
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        return Declarations.equal(this, other);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Declarations.hashCode(this);
+    }
+    
+    @Override
+    public String toString() {
+        return "FrozenDeclarations[size="+this.declarations.length+", capacity="+this.table.length+"]";
+    }
+    
+    private int index(int hash) {
+        return (hash * 0x9E3779B9) >>> this.shift;
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,77 @@
+package ru.ancap.gst.buffer.conf;
+
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.buffer.PlaceholderHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+@RequiredArgsConstructor
+@ToString
+final class MutableDeclarations implements Declarations {
+    
+    /**
+     * First slot of this declarations, slots below it belong to parent scopes.
+     */
+    private final int base;
+    private final Map<String, Declaration> declarations = new HashMap<>();
+    private final List<Declaration> slots = new ArrayList<>();
+    
+    /**
+     * Trie of current declarations for forks, built by first fork and dropped by declare.
+     */
+    @ToString.Exclude
+    private PersistentDeclarations.@Nullable Node snapshot;
+    private boolean snapshotted;
+    
+    @Override
+    public @Nullable Declaration find(String key) {
+        return this.declarations.get(key);
+    }
+    
+    @Override
+    public void declare(String key, PlaceholderHandler handler) {
+        this.snapshot = null;
+        this.snapshotted = false;
+        Declaration prev = this.declarations.get(key);
+        Declaration declaration = new Declaration(key, prev == null ? this.base + this.slots.size() : prev.slot(), handler);
+        this.declarations.put(key, declaration);
+        if (prev == null) this.slots.add(declaration);
+        else this.slots.set(declaration.slot() - this.base, declaration);
+    }
+    
+    @Override
+    public int slots() {
+        return this.base + this.slots.size();
+    }
+    
+    @Override
+    public void forEach(Consumer<Declaration> action) {
+        this.slots.forEach(action);
+    }
+    
+    @Override
+    public PersistentDeclarations fork() {
+        if (!this.snapshotted) {
+            this.snapshot = PersistentDeclarations.root(this);
+            this.snapshotted = true;
+        }
+        return new PersistentDeclarations(this.snapshot, this.slots());
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        return Declarations.equal(this, other);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Declarations.hashCode(this);
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,149 @@
+package ru.ancap.gst.buffer.conf;
+
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.buffer.PlaceholderHandler;
+
+import java.util.function.Consumer;
+
+/**
+ * Hash array mapped trie. Nodes are immutable and shared between forks, declare copies only path from root to
+ * declared key, so it costs O(log n) time and memory, and fork is O(1). Every node uses 5 bits of hash, children
+ * are kept in bitmap order, keys with equal hashes are kept in list node below the last level.
+ */
+final class PersistentDeclarations implements Declarations {
+    
+    private static final int BITS = 5;
+    private static final int MASK = (1 << PersistentDeclarations.BITS) - 1;
+    
+    private @Nullable Node root;
+    private int slots;
+    
+    PersistentDeclarations(@Nullable Node root, int slots) {
+        this.root = root;
+        this.slots = slots;
+    }
+    
+    /**
+     * Builds trie of declarations, slots are kept.
+     */
+    static @Nullable Node root(Declarations declarations) {
+        Node[] root = new Node[1];
+        declarations.forEach(declaration -> root[0] = PersistentDeclarations.put(root[0], 0, declaration.key().hashCode(), declaration));
+        return root[0];
+    }
+    
+    @Override
+    public @Nullable Declaration find(String key) {
+        int hash = key.hashCode();
+        Node node = this.root;
+        for (int shift = 0; node != null; shift += PersistentDeclarations.BITS) {
+            if (shift >= Integer.SIZE) {
+                for (Object child : node.children) if (((Declaration) child).key().equals(key)) return (Declaration) child;
+                return null;
+            }
+            int bit = 1 << ((hash >>> shift) & PersistentDeclarations.MASK);
+            if ((node.bitmap & bit) == 0) return null;
+            Object child = node.children[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (child instanceof Declaration declaration) return declaration.key().equals(key) ? declaration : null;
+            node = (Node) child;
+        }
+        return null;
+    }
+    
+    @Override
+    public void declare(String key, PlaceholderHandler handler) {
+        Declaration prev = this.find(key);
+        Declaration declaration = new Declaration(key, prev == null ? this.slots++ : prev.slot(), handler);
+        this.root = PersistentDeclarations.put(this.root, 0, key.hashCode(), declaration);
+    }
+    
+    @Override
+    public int slots() {
+        return this.slots;
+    }
+    
+    /**
+     * Walks trie, so declarations are iterated in hash order.
+     */
+    @Override
+    public void forEach(Consumer<Declaration> action) {
+        PersistentDeclarations.forEach(this.root, action);
+    }
+    
+    @Override
+    public PersistentDeclarations fork() {
+        return new PersistentDeclarations(this.root, this.slots);
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        return Declarations.equal(this, other);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Declarations.hashCode(this);
+    }
+    
+    @Override
+    public String toString() {
+        return "PersistentDeclarations[slots="+this.slots+"]";
+    }
+    
+    private static Node put(@Nullable Node node, int shift, int hash, Declaration declaration) {
+        if (node == null) return new Node(1 << ((hash >>> shift) & PersistentDeclarations.MASK), new Object[]{declaration});
+        if (shift >= Integer.SIZE) {
+            for (int index = 0; index < node.children.length; index++) {
+                if (((Declaration) node.children[index]).key().equals(declaration.key())) return node.with(index, declaration);
+            }
+            return node.inserted(0, node.children.length, declaration);
+        }
+        int bit = 1 << ((hash >>> shift) & PersistentDeclarations.MASK);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) return node.inserted(bit, index, declaration);
+        Object child = node.children[index];
+        if (child instanceof Node subnode) return node.with(index, PersistentDeclarations.put(subnode, shift + PersistentDeclarations.BITS, hash, declaration));
+        Declaration existing = (Declaration) child;
+        if (existing.key().equals(declaration.key())) return node.with(index, declaration);
+        return node.with(index, PersistentDeclarations.pair(existing, declaration, hash, shift + PersistentDeclarations.BITS));
+    }
+    
+    private static Node pair(Declaration existing, Declaration declaration, int hash, int shift) {
+        if (shift >= Integer.SIZE) return new Node(0, new Object[]{existing, declaration});
+        int existingIndex = (existing.key().hashCode() >>> shift) & PersistentDeclarations.MASK;
+        int index = (hash >>> shift) & PersistentDeclarations.MASK;
+        if (existingIndex == index) return new Node(1 << index, new Object[]{PersistentDeclarations.pair(existing, declaration, hash, shift + PersistentDeclarations.BITS)});
+        return new Node((1 << existingIndex) | (1 << index), existingIndex < index ? new Object[]{existing, declaration} : new Object[]{declaration, existing});
+    }
+    
+    private static void forEach(@Nullable Node node, Consumer<Declaration> action) {
+        if (node == null) return;
+        for (Object child : node.children) {
+            if (child instanceof Declaration declaration) action.accept(declaration);
+            else PersistentDeclarations.forEach((Node) child, action);
+        }
+    }
+    
+    /**
+     * @param bitmap children present at this level, 0 in list node of keys with equal hashes
+     * @param children {@link Declaration} or {@link Node} for every bit of bitmap
+     */
+    record Node(int bitmap, Object[] children) {
+        
+        private Node with(int index, Object child) {
+            Object[] children = this.children.clone();
+            children[index] = child;
+            return new Node(this.bitmap, children);
+        }
+        
+        private Node inserted(int bit, int index, Object child) {
+            Object[] children = new Object[this.children.length + 1];
+            System.arraycopy(this.children, 0, children, 0, index);
+            children[index] = child;
+            System.arraycopy(this.children, index, children, index + 1, this.children.length - index);
+            return new Node(this.bitmap | bit, children);
+        }
+        
+    }
+    
+}
\ No newline at end of file
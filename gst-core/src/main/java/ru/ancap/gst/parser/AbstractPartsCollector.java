@@ -0,0 +1,48 @@
+package ru.ancap.gst.parser;
+
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.gst_structure.DirectPlaceholderData;
+import ru.ancap.gst.parser.gst_structure.GSTPart;
+import ru.ancap.gst.parser.gst_structure.Placeholder;
+import ru.ancap.gst.parser.gst_structure.Text;
+import ru.ancap.gst.util.SourceFragment;
+
+import java.util.Optional;
+
+/**
+ * Sink that turns sink calls into parts. Text passed in several calls is joined into one {@link Text} part, which
+ * stays a view into source unless it was split by escaping characters or passed
+ * in different sources.
+ */
+abstract class AbstractPartsCollector implements GSTSink {
+    
+    private @Nullable SourceFragment text;
+    private int textIndex = 0;
+    
+    protected abstract void add(GSTPart part);
+    
+    @Override
+    public void onText(CharSequence source, int start, int end) {
+        if (this.text == null) this.text = new SourceFragment(source);
+        else this.text.continueIn(source);
+        this.text.take(start, end);
+    }
+    
+    @Override
+    public void onPlaceholder(CharSequence source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected) {
+        this.flushText();
+        this.add(new Placeholder(
+            new DirectPlaceholderData(key, Optional.ofNullable(argument), Text.view(start, source, start, end)),
+            exclusion,
+            endExpected
+        ));
+        this.textIndex = end;
+    }
+    
+    protected void flushText() {
+        if (this.text == null || this.text.isEmpty()) return;
+        this.add(this.text.text(this.textIndex));
+        this.text.reset();
+    }
+    
+}
\ No newline at end of file
@@ -1,11 +1,12 @@
 package ru.ancap.gst.parser;
 
 import ru.ancap.gst.parser.gst_structure.GSTPart;
+import ru.ancap.gst.parser.gst_structure.Template;
 import ru.ancap.gst.util.LinkedObjects;
 
 /**
- * General String Template parser. Build on the idea of direct submitting values to direct places, 
- * defined in template. 
+ * General String Template parser. Build on the idea of direct submitting values to direct places,
+ * defined in template.
  * <p>
  * Should support these features:<br>
  * — Simple keys (syntax may be like {ph1})<br>
@@ -13,9 +14,31 @@ import ru.ancap.gst.util.LinkedObjects;
  * — In-line placeholder exclusion (syntax may be like {!ph3})<br>
  * <p>
  * Syntax and additional features depend on implementation.<br>
+ * <p>
+ * Implementations are allowed to keep references to template in parse result instead of copying it, so
+ * mutable templates (like StringBuilder) should not be changed while parse result is in use.
  */
 public interface GSTParser {
     
-    LinkedObjects<GSTPart> parse(String string);
+    default LinkedObjects<GSTPart> parse(CharSequence template) {
+        PartsCollector collector = new PartsCollector();
+        this.parse(template, collector);
+        return collector.result();
+    }
+    
+    /**
+     * Same as {@link #parse(CharSequence)}, but result is immutable and array-backed, so it is faster to iterate and
+     * can be shared between threads without copying.
+     */
+    default Template parseTemplate(CharSequence template) {
+        TemplateCollector collector = new TemplateCollector();
+        this.parse(template, collector);
+        return collector.result();
+    }
+    
+    /**
+     * Push-style parsing, passes parts to sink in template order without building parse result.
+     */
+    void parse(CharSequence template, GSTSink sink);
     
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package ru.ancap.gst.parser;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Receiver of template parts in push-style parsing (see {@link GSTParser#parse(CharSequence, GSTSink)}). Parts are
+ * passed in template order as offsets into source, so consumer can render, validate or index template without
+ * building intermediate structure.
+ */
+public interface GSTSink {
+    
+    /**
+     * Text can be passed in several calls in a row, because escaping characters are not part of text and split it.
+     *
+     * @param start inclusive
+     * @param end exclusive
+     */
+    void onText(CharSequence source, int start, int end);
+    
+    /**
+     * @param start inclusive start of original placeholder representation in source
+     * @param end exclusive end of original placeholder representation in source
+     * @param argument null if placeholder has no argument
+     * @param endExpected false if template ended before placeholder was closed
+     */
+    void onPlaceholder(CharSequence source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected);
+    
+    /**
+     * Matters only for parsers that reuse source buffer between calls, such as
+     * {@link ru.ancap.gst.parser.simple.StreamingGSTParser}. If sink returns true, it gets a stable copy of every
+     * reported range, which can be kept after call returns. If sink returns false, it gets the reused buffer itself,
+     * which is valid only during the call.
+     *
+     * @return false if source is not used after call returns
+     */
+    default boolean keepsSource() {
+        return true;
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,23 @@
+package ru.ancap.gst.parser;
+
+import ru.ancap.gst.parser.gst_structure.GSTPart;
+import ru.ancap.gst.util.LinkedObjects;
+
+/**
+ * Sink that builds pull-style parse result as {@link LinkedObjects}, see {@link AbstractPartsCollector}.
+ */
+public class PartsCollector extends AbstractPartsCollector {
+    
+    private final LinkedObjects<GSTPart> parts = new LinkedObjects<>();
+    
+    @Override
+    protected void add(GSTPart part) {
+        this.parts.add(part);
+    }
+    
+    public LinkedObjects<GSTPart> result() {
+        this.flushText();
+        return this.parts;
+    }
+    
+}
\ No newline at end of file
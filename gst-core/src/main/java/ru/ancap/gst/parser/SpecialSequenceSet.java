@@ -0,0 +1,44 @@
+package ru.ancap.gst.parser;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.experimental.Accessors;
+
+/**
+ * Same as {@link SpecialCharacterSet}, but delimiters can be strings, for example "${" and "}" or "{{" and "}}".
+ * Escaping character escapes whole delimiter that follows it.
+ */
+@ToString @EqualsAndHashCode
+@Accessors(fluent = true) @Getter
+@lombok.Builder(builderClassName = "Builder")
+public final class SpecialSequenceSet {
+    
+    public static final SpecialSequenceSet DEFAULT = SpecialSequenceSet.builder().build();
+    
+    @lombok.Builder.Default private final String opening = "{";
+    @lombok.Builder.Default private final String closing = "}";
+    @lombok.Builder.Default private final String argumentDelimiter = ":";
+    @lombok.Builder.Default private final String exclusionMarker = "!";
+    @lombok.Builder.Default private final char escapingCharacter = '\\';
+    
+    public static SpecialSequenceSet of(SpecialCharacterSet set) {
+        return SpecialSequenceSet.builder()
+            .closure(String.valueOf(set.opening()), String.valueOf(set.closing()))
+            .argumentDelimiter(String.valueOf(set.argumentDelimiter()))
+            .exclusionMarker(String.valueOf(set.exclusionChar()))
+            .escapingCharacter(set.escapingCharacter())
+            .build();
+    }
+    
+    public static class Builder {
+        
+        public Builder closure(String opening, String closing) {
+            this.opening(opening);
+            this.closing(closing);
+            return this;
+        }
+        
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,23 @@
+package ru.ancap.gst.parser;
+
+import ru.ancap.gst.parser.gst_structure.GSTPart;
+import ru.ancap.gst.parser.gst_structure.Template;
+
+/**
+ * Sink that builds pull-style parse result as {@link Template}, see {@link AbstractPartsCollector}.
+ */
+public class TemplateCollector extends AbstractPartsCollector {
+    
+    private final Template.Builder parts = Template.builder();
+    
+    @Override
+    protected void add(GSTPart part) {
+        this.parts.add(part);
+    }
+    
+    public Template result() {
+        this.flushText();
+        return this.parts.build();
+    }
+    
+}
\ No newline at end of file
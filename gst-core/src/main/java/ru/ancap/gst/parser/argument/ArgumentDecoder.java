@@ -0,0 +1,61 @@
+package ru.ancap.gst.parser.argument;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Converts placeholder argument to value that handler works with. Argument is constant in template, so it can be
+ * decoded once, when template is compiled with {@link ArgumentDecoders}, instead of on every render, see
+ * {@link ru.ancap.gst.parser.gst_structure.Template#decodedArgument(int)}.
+ * <p>
+ * Decoded values are cached by decoder instance, so decoder should be created once and kept in constant, not created
+ * for every declaration. Decoder must be pure and its values should be immutable, because they are shared by all
+ * renders of template.
+ */
+@FunctionalInterface
+public interface ArgumentDecoder<T> {
+    
+    ArgumentDecoder<Integer> INT = Integer::valueOf;
+    ArgumentDecoder<Long> LONG = Long::valueOf;
+    ArgumentDecoder<Double> DOUBLE = Double::valueOf;
+    
+    /**
+     * @throws RuntimeException if argument is invalid, for example {@link NumberFormatException}
+     */
+    T decode(String argument);
+    
+    /**
+     * Decodes constant name of enum, for example "HALF_UP" for {@link java.math.RoundingMode}.
+     */
+    static <E extends Enum<E>> ArgumentDecoder<E> enumOf(Class<E> type) {
+        return argument -> Enum.valueOf(type, argument);
+    }
+    
+    /**
+     * Splits argument by delimiter, empty elements are kept, so "a,,b" is ["a", "", "b"].
+     */
+    static ArgumentDecoder<List<String>> list(String delimiter) {
+        return ArgumentDecoder.list(delimiter, argument -> argument);
+    }
+    
+    /**
+     * Same as {@link #list(String)}, but every element is decoded with element decoder.
+     */
+    static <T> ArgumentDecoder<List<T>> list(String delimiter, ArgumentDecoder<T> element) {
+        if (delimiter.isEmpty()) throw new IllegalArgumentException("Delimiter must not be empty");
+        return argument -> {
+            List<T> elements = new ArrayList<>();
+            int start = 0;
+            while (true) {
+                int end = argument.indexOf(delimiter, start);
+                if (end == -1) break;
+                elements.add(element.decode(argument.substring(start, end)));
+                start = end + delimiter.length();
+            }
+            elements.add(element.decode(argument.substring(start)));
+            return Collections.unmodifiableList(elements);
+        };
+    }
+    
+}
@@ -0,0 +1,91 @@
+package ru.ancap.gst.parser.argument;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.gst_structure.DirectPlaceholderData;
+import ru.ancap.gst.parser.gst_structure.Placeholder;
+import ru.ancap.gst.parser.gst_structure.Template;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable set of argument decoders by placeholder keys. Compiling template with it decodes arguments of all
+ * placeholders whose keys have decoder and keeps decoded values in template, see {@link Template#decodedArgument(int)},
+ * so terminator renders them without decoding.
+ */
+@ToString @EqualsAndHashCode
+public final class ArgumentDecoders {
+    
+    public static final ArgumentDecoders EMPTY = new ArgumentDecoders(Map.of());
+    
+    private final Map<String, ArgumentDecoder<?>> decoders;
+    
+    private ArgumentDecoders(Map<String, ArgumentDecoder<?>> decoders) {
+        this.decoders = decoders;
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    public static class Builder {
+        
+        private final Map<String, ArgumentDecoder<?>> decoders = new HashMap<>();
+        
+        public Builder decoder(String key, ArgumentDecoder<?> decoder) {
+            this.decoders.put(key, decoder);
+            return this;
+        }
+        
+        public ArgumentDecoders build() {
+            return new ArgumentDecoders(Map.copyOf(this.decoders));
+        }
+        
+    }
+    
+    public @Nullable ArgumentDecoder<?> find(String key) {
+        return this.decoders.get(key);
+    }
+    
+    /**
+     * Parses and compiles template, see {@link #compile(Template)}.
+     */
+    public Template compile(GSTParser parser, CharSequence template) {
+        return this.compile(parser.parseTemplate(template));
+    }
+    
+    /**
+     * Placeholders without argument or without decoder are kept as is.
+     *
+     * @return template with decoded arguments, same template if there is nothing to decode
+     * @throws ArgumentDecodingException with every argument that decoder rejected
+     */
+    public Template compile(Template template) {
+        if (this.decoders.isEmpty()) return template;
+        DecodedArgument[] decoded = null;
+        List<ArgumentDecodingException.Failure> failures = null;
+        for (int index = 0; index < template.size(); index++) {
+            if (!(template.get(index) instanceof Placeholder placeholder)) continue;
+            DirectPlaceholderData data = placeholder.directData();
+            ArgumentDecoder<?> decoder = this.decoders.get(data.key());
+            if (decoder == null || data.argument().isEmpty()) continue;
+            String argument = data.argument().get();
+            try {
+                Object value = decoder.decode(argument);
+                if (decoded == null) decoded = new DecodedArgument[template.size()];
+                decoded[index] = new DecodedArgument(decoder, value);
+            } catch (RuntimeException exception) {
+                if (failures == null) failures = new ArrayList<>();
+                failures.add(new ArgumentDecodingException.Failure(data.key(), argument, data.originalPart().index(), exception));
+            }
+        }
+        if (failures != null) throw new ArgumentDecodingException(failures);
+        return decoded == null ? template : template.withDecodedArguments(decoded);
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,35 @@
+package ru.ancap.gst.parser.argument;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Some arguments of template can not be decoded, thrown once at compile time with all failures of template.
+ */
+@Accessors(fluent = true) @Getter
+public class ArgumentDecodingException extends IllegalArgumentException {
+    
+    private final List<Failure> failures;
+    
+    public ArgumentDecodingException(List<Failure> failures) {
+        super(failures.stream().map(Failure::toString).collect(Collectors.joining("; ")));
+        this.failures = List.copyOf(failures);
+        for (Failure failure : failures) this.addSuppressed(failure.cause());
+    }
+    
+    /**
+     * @param index index of placeholder in template source
+     */
+    public record Failure(String key, String argument, int index, RuntimeException cause) {
+        
+        @Override
+        public String toString() {
+            return "argument \""+this.argument+"\" of \""+this.key+"\" at "+this.index+": "+this.cause;
+        }
+        
+    }
+    
+}
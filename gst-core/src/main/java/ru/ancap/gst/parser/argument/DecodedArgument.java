@@ -0,0 +1,8 @@
+package ru.ancap.gst.parser.argument;
+
+/**
+ * Argument of placeholder decoded at compile time.
+ *
+ * @param decoder decoder that produced value, value is used only for the same decoder instance
+ */
+public record DecodedArgument(ArgumentDecoder<?> decoder, Object value) { }
@@ -0,0 +1,34 @@
+package ru.ancap.gst.parser.bound;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Some placeholders of template can not be bound to schema, thrown once at compile time with all failures of template.
+ */
+@Accessors(fluent = true) @Getter
+public class BindingException extends IllegalArgumentException {
+    
+    private final List<Failure> failures;
+    
+    public BindingException(List<Failure> failures) {
+        super(failures.stream().map(Failure::toString).collect(Collectors.joining("; ")));
+        this.failures = List.copyOf(failures);
+    }
+    
+    /**
+     * @param index index of placeholder in template source
+     */
+    public record Failure(String key, int index, String reason) {
+        
+        @Override
+        public String toString() {
+            return "placeholder \""+this.key+"\" at "+this.index+": "+this.reason;
+        }
+        
+    }
+    
+}
\ No newline at end of file
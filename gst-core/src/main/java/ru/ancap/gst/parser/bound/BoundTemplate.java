@@ -0,0 +1,83 @@
+package ru.ancap.gst.parser.bound;
+
+import java.util.function.IntFunction;
+
+/**
+ * Template compiled against {@link KeySchema}, placeholders are replaced with slots of their keys. Rendering takes
+ * values by slot, so there are no key lookups, no handlers and no per-render maps, only text and values are appended.
+ * Immutable, can be rendered from many threads.
+ */
+public final class BoundTemplate {
+    
+    private final KeySchema schema;
+    
+    /**
+     * Text before every placeholder and after the last one, texts around excluded placeholders are joined.
+     */
+    private final String[] texts;
+    private final int[] slots;
+    private final int textLength;
+    
+    BoundTemplate(KeySchema schema, String[] texts, int[] slots) {
+        this.schema = schema;
+        this.texts = texts;
+        this.slots = slots;
+        int textLength = 0;
+        for (String text : texts) textLength += text.length();
+        this.textLength = textLength;
+    }
+    
+    public KeySchema schema() {
+        return this.schema;
+    }
+    
+    /**
+     * @param values value for every key of schema, in schema order
+     * @throws IllegalArgumentException if amount of values is not equal to size of schema
+     */
+    public String render(String... values) {
+        this.checkValues(values.length);
+        StringBuilder result = this.result();
+        result.append(this.texts[0]);
+        for (int index = 0; index < this.slots.length; index++) result.append(values[this.slots[index]]).append(this.texts[index + 1]);
+        return result.toString();
+    }
+    
+    /**
+     * Same as {@link #render(String...)}, values are converted with {@link String#valueOf(Object)}.
+     */
+    public String render(Object... values) {
+        this.checkValues(values.length);
+        StringBuilder result = this.result();
+        result.append(this.texts[0]);
+        for (int index = 0; index < this.slots.length; index++) result.append(values[this.slots[index]]).append(this.texts[index + 1]);
+        return result.toString();
+    }
+    
+    /**
+     * @param values gives value by slot, called once for every placeholder
+     */
+    public String render(IntFunction<String> values) {
+        StringBuilder result = this.result();
+        result.append(this.texts[0]);
+        for (int index = 0; index < this.slots.length; index++) result.append(values.apply(this.slots[index])).append(this.texts[index + 1]);
+        return result.toString();
+    }
+    
+    @Override
+    public String toString() {
+        return "BoundTemplate[schema="+this.schema+", placeholders="+this.slots.length+", textLength="+this.textLength+"]";
+    }
+    
+    private void checkValues(int amount) {
+        if (amount != this.schema.size()) throw new IllegalArgumentException("Expected "+this.schema.size()+" values for "+this.schema+", got "+amount);
+    }
+    
+    /**
+     * Text length plus small estimate for every value.
+     */
+    private StringBuilder result() {
+        return new StringBuilder(this.textLength + this.slots.length * 8);
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,110 @@
+package ru.ancap.gst.parser.bound;
+
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.gst_structure.GSTPart;
+import ru.ancap.gst.parser.gst_structure.Placeholder;
+import ru.ancap.gst.parser.gst_structure.Template;
+import ru.ancap.gst.parser.gst_structure.Text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ordered set of placeholder keys, key is bound to its position (slot). Templates compiled against schema are
+ * rendered from values by slot, see {@link BoundTemplate}. Immutable.
+ */
+public final class KeySchema {
+    
+    private final List<String> keys;
+    private final Map<String, Integer> slots;
+    
+    private KeySchema(List<String> keys, Map<String, Integer> slots) {
+        this.keys = keys;
+        this.slots = slots;
+    }
+    
+    /**
+     * @throws IllegalArgumentException if key is repeated
+     */
+    public static KeySchema of(String... keys) {
+        return KeySchema.of(List.of(keys));
+    }
+    
+    /**
+     * @throws IllegalArgumentException if key is repeated
+     */
+    public static KeySchema of(List<String> keys) {
+        Map<String, Integer> slots = new HashMap<>();
+        for (int slot = 0; slot < keys.size(); slot++) {
+            if (slots.putIfAbsent(keys.get(slot), slot) != null) throw new IllegalArgumentException("Key \""+keys.get(slot)+"\" is repeated in schema "+keys);
+        }
+        return new KeySchema(List.copyOf(keys), Map.copyOf(slots));
+    }
+    
+    public int size() {
+        return this.keys.size();
+    }
+    
+    public List<String> keys() {
+        return this.keys;
+    }
+    
+    /**
+     * @return slot of key, -1 if key is not in schema
+     */
+    public int slot(String key) {
+        return this.slots.getOrDefault(key, -1);
+    }
+    
+    /**
+     * Parses and compiles template, see {@link #compile(Template)}.
+     */
+    public BoundTemplate compile(GSTParser parser, CharSequence template) {
+        return this.compile(parser.parseTemplate(template));
+    }
+    
+    /**
+     * Binds keys of placeholders to slots once, so bound template is rendered without looking keys up. Excluded
+     * placeholders are dropped whatever their keys are. Keys of schema that template does not use are allowed.
+     *
+     * @throws BindingException with every placeholder that is not in schema, has argument (bound template has no
+     *                          handlers to interpret it) or is not closed
+     */
+    public BoundTemplate compile(Template template) {
+        List<String> texts = new ArrayList<>();
+        int[] slots = new int[template.size()];
+        int placeholders = 0;
+        StringBuilder pending = new StringBuilder();
+        List<BindingException.Failure> failures = new ArrayList<>();
+        for (int index = 0; index < template.size(); index++) {
+            GSTPart part = template.get(index);
+            switch (part) {
+                case Text text -> text.appendTo(pending);
+                case Placeholder placeholder -> {
+                    if (placeholder.exclusion()) continue;
+                    String key = placeholder.directData().key();
+                    int slot = this.slot(key);
+                    int sourceIndex = placeholder.directData().originalPart().index();
+                    if (slot == -1) failures.add(new BindingException.Failure(key, sourceIndex, "key is not in schema "+this.keys));
+                    else if (placeholder.directData().argument().isPresent()) failures.add(new BindingException.Failure(key, sourceIndex, "placeholder has argument"));
+                    else if (!placeholder.endExpected()) failures.add(new BindingException.Failure(key, sourceIndex, "placeholder is not closed"));
+                    texts.add(pending.toString());
+                    pending.setLength(0);
+                    slots[placeholders++] = slot;
+                }
+            }
+        }
+        if (!failures.isEmpty()) throw new BindingException(failures);
+        texts.add(pending.toString());
+        return new BoundTemplate(this, texts.toArray(String[]::new), slots.length == placeholders ? slots : Arrays.copyOf(slots, placeholders));
+    }
+    
+    @Override
+    public String toString() {
+        return "KeySchema"+this.keys;
+    }
+    
+}
\ No newline at end of file
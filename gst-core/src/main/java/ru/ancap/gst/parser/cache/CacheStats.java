@@ -0,0 +1,21 @@
+package ru.ancap.gst.parser.cache;
+
+/**
+ * Snapshot of {@link CachingGSTParser} counters.
+ *
+ * @param hits parses served from cache
+ * @param misses parses passed to delegate parser
+ * @param evictions entries removed to make room for more frequent templates
+ * @param rejections parsed templates not admitted to cache, because they are less frequent than eviction candidate
+ *                   or too big
+ * @param entries entries in cache
+ * @param bytes estimated bytes retained by entries
+ */
+public record CacheStats(long hits, long misses, long evictions, long rejections, int entries, long bytes) {
+    
+    public double hitRate() {
+        long requests = this.hits + this.misses;
+        return requests == 0 ? 1 : (double) this.hits / requests;
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,350 @@
+package ru.ancap.gst.parser.cache;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.GSTSink;
+import ru.ancap.gst.parser.TemplateCollector;
+import ru.ancap.gst.parser.gst_structure.GSTPart;
+import ru.ancap.gst.parser.gst_structure.Placeholder;
+import ru.ancap.gst.parser.gst_structure.Template;
+import ru.ancap.gst.parser.gst_structure.Text;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+import ru.ancap.gst.util.LinkedObjects;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decorator of {@link GSTParser} that caches parse results. Cache is bounded both by amount of entries and by
+ * estimated bytes retained by them, and can be shared between threads.
+ * <p>
+ * When cache is full, parsed template is admitted only if it was requested more often recently than eviction
+ * candidate (TinyLFU admission, frequencies are estimated with {@link FrequencySketch}), so templates that are parsed
+ * only once do not push out frequently used ones. Eviction candidate is chosen with CLOCK: entry that was hit since
+ * last pass of clock hand gets second chance. Lookups are lock-free, lock is taken only to admit parsed template.
+ * <p>
+ * Cache keeps parts in immutable {@link Template}, which is returned as is from {@link #parseTemplate(CharSequence)},
+ * while every {@link #parse(CharSequence)} returns new {@link LinkedObjects} filled with its parts, so mutating
+ * returned result does not affect cache or other threads. Parts themselves are immutable, their texts are views into
+ * cache key. Templates that are not Strings are copied to String for lookup. Templates that
+ * delegate rejects with exception are not cached.
+ * <p>
+ * Caching pays off only when the same templates are parsed repeatedly, lookup hashes the whole template, so for
+ * one-shot templates it is slower than plain parse.
+ */
+@ToString
+public class CachingGSTParser implements GSTParser {
+    
+    private final GSTParser parser;
+    private final int maximumEntries;
+    private final long maximumBytes;
+    
+    @ToString.Exclude private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    @ToString.Exclude private final FrequencySketch sketch;
+    
+    /**
+     * Entries in CLOCK order, head is under clock hand. Guarded by lock, as well as bytes.
+     */
+    @ToString.Exclude private final ArrayDeque<Entry> clock = new ArrayDeque<>();
+    @ToString.Exclude private final ReentrantLock lock = new ReentrantLock();
+    @ToString.Exclude private long bytes;
+    
+    @ToString.Exclude private final LongAdder hits = new LongAdder();
+    @ToString.Exclude private final LongAdder misses = new LongAdder();
+    @ToString.Exclude private final LongAdder evictions = new LongAdder();
+    @ToString.Exclude private final LongAdder rejections = new LongAdder();
+    
+    private CachingGSTParser(GSTParser parser, int maximumEntries, long maximumBytes) {
+        this.parser = parser;
+        this.maximumEntries = maximumEntries;
+        this.maximumBytes = maximumBytes;
+        this.sketch = new FrequencySketch(maximumEntries);
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    @Accessors(fluent = true, chain = true) @Setter
+    public static class Builder {
+        
+        private GSTParser parser = SimpleGSTParser.inst();
+        private int maximumEntries = 10_000;
+        
+        /**
+         * Bound of estimated bytes retained by cached entries, see {@link CacheStats#bytes()}.
+         */
+        private long maximumBytes = 64L << 20;
+        
+        public CachingGSTParser build() {
+            if (this.maximumEntries < 1) throw new IllegalArgumentException("Maximum entries must be positive, got "+this.maximumEntries);
+            if (this.maximumBytes < 1) throw new IllegalArgumentException("Maximum bytes must be positive, got "+this.maximumBytes);
+            return new CachingGSTParser(this.parser, this.maximumEntries, this.maximumBytes);
+        }
+        
+    }
+    
+    public static CachingGSTParser inst() {
+        return CachingGSTParser.builder().build();
+    }
+    
+    @Override
+    public LinkedObjects<GSTPart> parse(CharSequence template) {
+        return this.entry(template).template.toLinkedObjects();
+    }
+    
+    @Override
+    public Template parseTemplate(CharSequence template) {
+        return this.entry(template).template;
+    }
+    
+    /**
+     * Replays parts recorded from delegate, offsets are passed against given template. If template is not in cache,
+     * it is parsed completely before first part is passed to sink.
+     */
+    @Override
+    public void parse(CharSequence template, GSTSink sink) {
+        this.entry(template).replay(template, sink);
+    }
+    
+    public CacheStats stats() {
+        this.lock.lock();
+        try {
+            return new CacheStats(
+                this.hits.sum(),
+                this.misses.sum(),
+                this.evictions.sum(),
+                this.rejections.sum(),
+                this.clock.size(),
+                this.bytes
+            );
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    public void invalidateAll() {
+        this.lock.lock();
+        try {
+            this.entries.clear();
+            this.clock.clear();
+            this.bytes = 0;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    private Entry entry(CharSequence template) {
+        String key = template.toString();
+        this.sketch.increment(key.hashCode());
+        Entry entry = this.entries.get(key);
+        if (entry != null) {
+            this.hits.increment();
+            if (!entry.referenced) entry.referenced = true;
+            return entry;
+        }
+        this.misses.increment();
+        entry = Entry.parse(this.parser, key);
+        this.admit(entry);
+        return entry;
+    }
+    
+    /**
+     * Candidate can need several victims to fit, it is compared with all of them before any is evicted, so either
+     * all victims are evicted and candidate is admitted, or cache is left as it was.
+     */
+    private void admit(Entry candidate) {
+        if (candidate.weight > this.maximumBytes) {
+            this.rejections.increment();
+            return;
+        }
+        this.lock.lock();
+        try {
+            if (this.entries.containsKey(candidate.key)) return;
+            int frequency = this.sketch.frequency(candidate.key.hashCode());
+            List<Entry> victims = new ArrayList<>(1);
+            long freed = 0;
+            while (this.clock.size() >= this.maximumEntries || this.bytes - freed + candidate.weight > this.maximumBytes) {
+                Entry victim = this.nextVictim();
+                victims.add(victim);
+                freed += victim.weight;
+                if (this.sketch.frequency(victim.key.hashCode()) >= frequency) {
+                    for (int i = victims.size() - 1; i >= 0; i--) this.clock.addFirst(victims.get(i));
+                    this.rejections.increment();
+                    return;
+                }
+            }
+            for (Entry victim : victims) this.entries.remove(victim.key);
+            this.bytes -= freed;
+            this.evictions.add(victims.size());
+            this.entries.put(candidate.key, candidate);
+            this.clock.addLast(candidate);
+            this.bytes += candidate.weight;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /**
+     * Must be called under lock with non-empty clock, removes returned entry from clock.
+     */
+    private Entry nextVictim() {
+        while (true) {
+            Entry entry = this.clock.pollFirst();
+            //noinspection DataFlowIssue because clock is not empty and every polled entry is either returned or added back
+            if (!entry.referenced) return entry;
+            entry.referenced = false;
+            this.clock.addLast(entry);
+        }
+    }
+    
+    private static class Entry {
+        
+        private static final int OBJECT_HEADER = 12;
+        private static final int ARRAY_HEADER = 16;
+        private static final int REFERENCE = 4;
+        
+        /**
+         * Entry, its node in map and slot in clock.
+         */
+        private static final int ENTRY_OVERHEAD = 96;
+        private static final int TEXT = 32;
+        
+        /**
+         * Placeholder and its direct data.
+         */
+        private static final int PLACEHOLDER = 48;
+        private static final int OPTIONAL = 16;
+        
+        public final String key;
+        public final Template template;
+        
+        /**
+         * Start and end of every part that was passed to sink by delegate, text can be passed in several calls.
+         */
+        public final int[] bounds;
+        
+        /**
+         * Placeholder of every sink call, null for text.
+         */
+        public final @Nullable Placeholder[] placeholders;
+        public final long weight;
+        
+        /**
+         * Hit since last pass of clock hand. Written without synchronization, lost write only costs second chance.
+         */
+        public boolean referenced;
+        
+        private Entry(String key, Template template, int[] bounds, @Nullable Placeholder[] placeholders) {
+            this.key = key;
+            this.template = template;
+            this.bounds = bounds;
+            this.placeholders = placeholders;
+            this.weight = Entry.weigh(key, template, placeholders.length);
+        }
+        
+        public static Entry parse(GSTParser parser, String key) {
+            Recorder recorder = new Recorder();
+            parser.parse(key, recorder);
+            Template template = recorder.collector.result();
+            
+            Placeholder[] placeholders = new Placeholder[recorder.events];
+            int event = recorder.placeholderEvents.nextSetBit(0);
+            for (GSTPart part : template) {
+                if (part instanceof Placeholder placeholder) {
+                    placeholders[event] = placeholder;
+                    event = recorder.placeholderEvents.nextSetBit(event + 1);
+                }
+            }
+            return new Entry(key, template, Arrays.copyOf(recorder.bounds, recorder.events * 2), placeholders);
+        }
+        
+        public void replay(CharSequence source, GSTSink sink) {
+            for (int event = 0; event < this.placeholders.length; event++) {
+                int start = this.bounds[event * 2];
+                int end = this.bounds[event * 2 + 1];
+                Placeholder placeholder = this.placeholders[event];
+                if (placeholder == null) sink.onText(source, start, end);
+                else sink.onPlaceholder(
+                    source,
+                    start,
+                    end,
+                    placeholder.directData().key(),
+                    placeholder.directData().argument().orElse(null),
+                    placeholder.exclusion(),
+                    placeholder.endExpected()
+                );
+            }
+        }
+        
+        /**
+         * Rough estimate for 64-bit JVM with compressed oops. Texts are counted as if they were already materialized
+         * to strings, because views into key materialize on first {@link Text#string()} call and keep the string.
+         */
+        private static long weigh(String key, Template template, int events) {
+            long weight = ENTRY_OVERHEAD + stringWeight(key.length());
+            weight += OBJECT_HEADER + REFERENCE + ARRAY_HEADER + (long) template.size() * REFERENCE;
+            weight += ARRAY_HEADER + (long) events * (2 * Integer.BYTES + REFERENCE);
+            for (GSTPart part : template) weight += switch (part) {
+                case Text text -> TEXT + stringWeight(text.length());
+                case Placeholder placeholder -> {
+                    var data = placeholder.directData();
+                    yield PLACEHOLDER
+                        + stringWeight(data.key().length())
+                        + data.argument().map(argument -> OPTIONAL + stringWeight(argument.length())).orElse(0L)
+                        + TEXT + stringWeight(data.originalPart().length());
+                }
+            };
+            return weight;
+        }
+        
+        /**
+         * String object and its array, counted as UTF-16.
+         */
+        private static long stringWeight(int length) {
+            return OBJECT_HEADER + 12 + ARRAY_HEADER + 2L * length;
+        }
+        
+    }
+    
+    /**
+     * Builds pull-style result and remembers sink calls, so both styles can be served from cache.
+     */
+    private static class Recorder implements GSTSink {
+        
+        public final TemplateCollector collector = new TemplateCollector();
+        public final BitSet placeholderEvents = new BitSet();
+        public int[] bounds = new int[16];
+        public int events;
+        
+        @Override
+        public void onText(CharSequence source, int start, int end) {
+            this.record(start, end);
+            this.collector.onText(source, start, end);
+        }
+        
+        @Override
+        public void onPlaceholder(CharSequence source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected) {
+            this.placeholderEvents.set(this.events);
+            this.record(start, end);
+            this.collector.onPlaceholder(source, start, end, key, argument, exclusion, endExpected);
+        }
+        
+        private void record(int start, int end) {
+            if (this.events * 2 == this.bounds.length) this.bounds = Arrays.copyOf(this.bounds, this.bounds.length * 2);
+            this.bounds[this.events * 2] = start;
+            this.bounds[this.events * 2 + 1] = end;
+            this.events++;
+        }
+        
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+package ru.ancap.gst.parser.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch of 4-bit counters for TinyLFU admission, estimates how often key was requested recently. Every
+ * long holds 16 counters, each key has 4 counters in different longs. When number of increments reaches sample size,
+ * all counters are halved, so old popularity fades away.
+ * <p>
+ * Updates are not synchronized, concurrent increments can be lost, which only makes estimation a bit less precise.
+ */
+class FrequencySketch {
+    
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNTER = 15;
+    
+    private final AtomicLongArray table;
+    private final int mask;
+    private final int sampleSize;
+    
+    private int increments;
+    
+    /**
+     * @param expectedEntries maximum amount of entries in cache
+     */
+    public FrequencySketch(int expectedEntries) {
+        int length = Integer.highestOneBit(Math.clamp(expectedEntries, 8, 1 << 24) - 1) << 1;
+        this.table = new AtomicLongArray(length);
+        this.mask = length - 1;
+        this.sampleSize = 10 * length;
+    }
+    
+    public int frequency(int hash) {
+        int frequency = MAX_COUNTER;
+        for (int depth = 0; depth < SEEDS.length; depth++) {
+            long word = this.table.getOpaque(this.indexOf(hash, depth));
+            frequency = Math.min(frequency, (int) (word >>> offsetOf(hash, depth)) & MAX_COUNTER);
+        }
+        return frequency;
+    }
+    
+    public void increment(int hash) {
+        boolean incremented = false;
+        for (int depth = 0; depth < SEEDS.length; depth++) {
+            int index = this.indexOf(hash, depth);
+            int offset = offsetOf(hash, depth);
+            long word = this.table.getOpaque(index);
+            if (((word >>> offset) & MAX_COUNTER) == MAX_COUNTER) continue;
+            this.table.setOpaque(index, word + (1L << offset));
+            incremented = true;
+        }
+        if (incremented && ++this.increments >= this.sampleSize) this.reset();
+    }
+    
+    private void reset() {
+        for (int index = 0; index < this.table.length(); index++) {
+            this.table.setOpaque(index, (this.table.getOpaque(index) >>> 1) & RESET_MASK);
+        }
+        this.increments /= 2;
+    }
+    
+    private int indexOf(int hash, int depth) {
+        long mixed = (hash + SEEDS[depth]) * SEEDS[depth];
+        mixed += mixed >>> 32;
+        return (int) mixed & this.mask;
+    }
+    
+    /**
+     * Each depth takes its counter from different nibble of long, chosen by its own 4 bits of hash.
+     */
+    private static int offsetOf(int hash, int depth) {
+        return ((hash >>> (depth << 3)) & 15) << 2;
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,238 @@
+package ru.ancap.gst.parser.compact;
+
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.GSTSink;
+import ru.ancap.gst.parser.TemplateCollector;
+import ru.ancap.gst.parser.gst_structure.Template;
+import ru.ancap.gst.parser.gst_structure.TemplateMetadata;
+
+import java.util.Arrays;
+
+/**
+ * Memory-compact immutable parse result for keeping a lot of templates resident. Instead of object per part it keeps
+ * template source and one int array with three ints per part:
+ * <ul>
+ *     <li>start and end of part in source, for text it is text itself, for placeholder its original representation;</li>
+ *     <li>-1 for text, for placeholder id of key in {@link SymbolTable} with exclusion and unclosed end flags.</li>
+ * </ul>
+ * Arguments are kept in nullable slots by part, array of slots is not allocated at all if template has no arguments.
+ * Source is String, so Latin-1 templates take one byte per character (see JEP 254), and text is never copied.
+ * <p>
+ * Parts are the same as calls to {@link GSTSink} by parser, so text split by escaping characters takes several parts.
+ * Placeholder objects are not kept and are created only when template is rendered or converted.
+ */
+public final class CompactTemplate {
+    
+    static final int TEXT = -1;
+    private static final int EXCLUSION = 1;
+    private static final int UNCLOSED = 2;
+    static final int FLAG_BITS = 2;
+    
+    private final String source;
+    private final SymbolTable symbols;
+    private final int[] parts;
+    
+    /**
+     * Null if template has no arguments.
+     */
+    private final @Nullable String[] arguments;
+    
+    /**
+     * Computed on first request, same as in {@link Template}.
+     */
+    private @Nullable TemplateMetadata metadata;
+    
+    /**
+     * @param parts not copied
+     * @param arguments not copied
+     */
+    CompactTemplate(String source, SymbolTable symbols, int[] parts, @Nullable String[] arguments) {
+        this.source = source;
+        this.symbols = symbols;
+        this.parts = parts;
+        this.arguments = arguments;
+    }
+    
+    /**
+     * Template that is not String is copied.
+     *
+     * @param symbols table that keys are interned into, it is kept by template and lives as long as any template
+     *                compiled with it
+     */
+    public static CompactTemplate compile(GSTParser parser, CharSequence template, SymbolTable symbols) {
+        Compiler compiler = new Compiler(symbols);
+        String source = template.toString();
+        parser.parse(source, compiler);
+        return new CompactTemplate(
+            source,
+            symbols,
+            Arrays.copyOf(compiler.parts, compiler.size * 3),
+            compiler.arguments == null ? null : Arrays.copyOf(compiler.arguments, compiler.size)
+        );
+    }
+    
+    int[] parts() {
+        return this.parts;
+    }
+    
+    @Nullable String[] arguments() {
+        return this.arguments;
+    }
+    
+    public String source() {
+        return this.source;
+    }
+    
+    public SymbolTable symbols() {
+        return this.symbols;
+    }
+    
+    public int size() {
+        return this.parts.length / 3;
+    }
+    
+    public boolean isText(int part) {
+        return this.parts[part * 3 + 2] == TEXT;
+    }
+    
+    public int start(int part) {
+        return this.parts[part * 3];
+    }
+    
+    public int end(int part) {
+        return this.parts[part * 3 + 1];
+    }
+    
+    /**
+     * @param part index of placeholder part
+     */
+    public int keyId(int part) {
+        return this.parts[part * 3 + 2] >>> FLAG_BITS;
+    }
+    
+    /**
+     * @param part index of placeholder part
+     */
+    public String key(int part) {
+        return this.symbols.symbol(this.keyId(part));
+    }
+    
+    /**
+     * @param part index of placeholder part
+     */
+    public @Nullable String argument(int part) {
+        return this.arguments == null ? null : this.arguments[part];
+    }
+    
+    /**
+     * @param part index of placeholder part
+     */
+    public boolean exclusion(int part) {
+        return (this.parts[part * 3 + 2] & EXCLUSION) != 0;
+    }
+    
+    /**
+     * @return false if template ended before last placeholder was closed
+     */
+    public boolean endExpected() {
+        int size = this.size();
+        return size == 0 || this.isText(size - 1) || (this.parts[(size - 1) * 3 + 2] & UNCLOSED) == 0;
+    }
+    
+    public TemplateMetadata metadata() {
+        TemplateMetadata metadata = this.metadata;
+        if (metadata == null) {
+            TemplateMetadata.Builder builder = TemplateMetadata.builder();
+            for (int part = 0; part < this.size(); part++) {
+                if (this.isText(part)) builder.text();
+                else builder.add(this.key(part), this.argument(part) != null, this.exclusion(part), (this.parts[part * 3 + 2] & UNCLOSED) == 0);
+            }
+            metadata = builder.build();
+            this.metadata = metadata;
+        }
+        return metadata;
+    }
+    
+    /**
+     * Passes parts to sink in the same way as parser did, source is {@link #source()}.
+     */
+    public void replay(GSTSink sink) {
+        int[] parts = this.parts;
+        for (int part = 0; part < parts.length / 3; part++) {
+            int start = parts[part * 3];
+            int end = parts[part * 3 + 1];
+            int info = parts[part * 3 + 2];
+            if (info == TEXT) sink.onText(this.source, start, end);
+            else sink.onPlaceholder(
+                this.source,
+                start,
+                end,
+                this.symbols.symbol(info >>> FLAG_BITS),
+                this.argument(part),
+                (info & EXCLUSION) != 0,
+                (info & UNCLOSED) == 0
+            );
+        }
+    }
+    
+    public Template toTemplate() {
+        TemplateCollector collector = new TemplateCollector();
+        this.replay(collector);
+        return collector.result();
+    }
+    
+    @Override
+    public String toString() {
+        return "CompactTemplate[source=" + this.source + ", parts=" + this.size() + "]";
+    }
+    
+    private static class Compiler implements GSTSink {
+        
+        private final SymbolTable symbols;
+        
+        public int[] parts = new int[24];
+        public @Nullable String[] arguments;
+        public int size;
+        
+        public Compiler(SymbolTable symbols) {
+            this.symbols = symbols;
+        }
+        
+        @Override
+        public void onText(CharSequence source, int start, int end) {
+            this.add(start, end, TEXT);
+        }
+        
+        @Override
+        public void onPlaceholder(CharSequence source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected) {
+            int flags = (exclusion ? EXCLUSION : 0) | (endExpected ? 0 : UNCLOSED);
+            int part = this.add(start, end, this.symbols.intern(key) << FLAG_BITS | flags);
+            if (argument != null) {
+                if (this.arguments == null) this.arguments = new String[this.parts.length / 3];
+                this.arguments[part] = argument;
+            }
+        }
+        
+        /**
+         * @return index of added part
+         */
+        private int add(int start, int end, int info) {
+            if (this.size * 3 == this.parts.length) {
+                this.parts = Arrays.copyOf(this.parts, this.parts.length * 2);
+                if (this.arguments != null) this.arguments = Arrays.copyOf(this.arguments, this.parts.length / 3);
+            }
+            this.parts[this.size * 3] = start;
+            this.parts[this.size * 3 + 1] = end;
+            this.parts[this.size * 3 + 2] = info;
+            return this.size++;
+        }
+        
+        @Override
+        public boolean keepsSource() {
+            return false;
+        }
+        
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,242 @@
+package ru.ancap.gst.parser.compact;
+
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.EscapingMode;
+import ru.ancap.gst.parser.SpecialCharacterSet;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Versioned binary format of {@link CompactTemplate}s, lets templates be compiled once (on build or on first start)
+ * and later loaded with bulk reads instead of parsing. Format records syntax templates were parsed with, loading them
+ * for other syntax fails.
+ * <p>
+ * Layout, numbers are big-endian:
+ * <pre>
+ * int     magic "GSTC"
+ * short   version
+ * char[5] opening, closing, argument delimiter, exclusion and escaping characters
+ * byte    escaping mode: 0 if unescaped is simple text, 1 if unescaped is placeholder
+ * int     amount of symbols, then every symbol as string
+ * int     amount of templates, then for every template:
+ *         string name, string source, int amount of parts, int[3 × parts] parts (see {@link CompactTemplate}),
+ *         int amount of arguments, then for every argument int part and string argument
+ * </pre>
+ * String is int length, byte coder (0 for Latin-1, 1 for UTF-16) and length bytes or chars. Keys in parts are
+ * indices in symbols section, on load they are replaced with ids of target {@link SymbolTable}.
+ */
+public final class CompactTemplateFormat {
+    
+    public static final int MAGIC = 0x47535443;
+    public static final short VERSION = 1;
+    
+    private static final byte LATIN_1 = 0;
+    private static final byte UTF_16 = 1;
+    
+    /**
+     * Length and coder of empty string.
+     */
+    private static final int STRING_MINIMUM = Integer.BYTES + 1;
+    
+    /**
+     * Name, source, amount of parts and amount of arguments.
+     */
+    private static final int TEMPLATE_MINIMUM = 2 * STRING_MINIMUM + 2 * Integer.BYTES;
+    
+    private CompactTemplateFormat() {}
+    
+    /**
+     * Templates must be compiled with given parser, output is not closed.
+     */
+    public static void write(OutputStream output, SimpleGSTParser parser, Map<String, CompactTemplate> templates) throws IOException {
+        CompactTemplateFormat.write(output, parser.specialCharacterSet(), parser.escapingMode(), templates);
+    }
+    
+    /**
+     * Templates must be compiled with given syntax, output is not closed.
+     */
+    public static void write(OutputStream output, SpecialCharacterSet set, EscapingMode mode, Map<String, CompactTemplate> templates) throws IOException {
+        Map<String, Integer> symbolIndices = new LinkedHashMap<>();
+        for (CompactTemplate template : templates.values()) {
+            for (int part = 0; part < template.size(); part++) {
+                if (!template.isText(part)) symbolIndices.putIfAbsent(template.key(part), symbolIndices.size());
+            }
+        }
+        
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(output));
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        CompactTemplateFormat.writeSyntax(data, set, mode);
+        data.writeInt(symbolIndices.size());
+        for (String symbol : symbolIndices.keySet()) CompactTemplateFormat.writeString(data, symbol);
+        data.writeInt(templates.size());
+        for (var entry : templates.entrySet()) {
+            CompactTemplate template = entry.getValue();
+            CompactTemplateFormat.writeString(data, entry.getKey());
+            CompactTemplateFormat.writeString(data, template.source());
+            int[] parts = template.parts();
+            data.writeInt(parts.length / 3);
+            for (int index = 0; index < parts.length; index++) {
+                int value = parts[index];
+                if (index % 3 == 2 && value != CompactTemplate.TEXT) {
+                    int symbol = symbolIndices.get(template.key(index / 3));
+                    value = symbol << CompactTemplate.FLAG_BITS | value & ((1 << CompactTemplate.FLAG_BITS) - 1);
+                }
+                data.writeInt(value);
+            }
+            @Nullable String[] arguments = template.arguments();
+            int argumentsAmount = 0;
+            if (arguments != null) for (String argument : arguments) if (argument != null) argumentsAmount++;
+            data.writeInt(argumentsAmount);
+            if (arguments != null) for (int part = 0; part < arguments.length; part++) {
+                if (arguments[part] == null) continue;
+                data.writeInt(part);
+                CompactTemplateFormat.writeString(data, arguments[part]);
+            }
+        }
+        data.flush();
+    }
+    
+    /**
+     * Reads all input, input is not closed.
+     *
+     * @param symbols table keys are interned into
+     * @return templates by names in written order
+     * @throws TemplateFormatException if data is corrupted, has other version or templates were compiled with syntax
+     *                                 other than syntax of parser
+     */
+    public static Map<String, CompactTemplate> read(InputStream input, SimpleGSTParser parser, SymbolTable symbols) throws IOException {
+        return CompactTemplateFormat.read(input, parser.specialCharacterSet(), parser.escapingMode(), symbols);
+    }
+    
+    /**
+     * @see #read(InputStream, SimpleGSTParser, SymbolTable)
+     */
+    public static Map<String, CompactTemplate> read(InputStream input, SpecialCharacterSet set, EscapingMode mode, SymbolTable symbols) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(input.readAllBytes());
+        try {
+            if (buffer.remaining() < Integer.BYTES || buffer.getInt() != MAGIC) throw new TemplateFormatException("Not compiled templates");
+            short version = buffer.getShort();
+            if (version != VERSION) throw new TemplateFormatException("Unsupported version "+version+", expected "+VERSION);
+            CompactTemplateFormat.checkSyntax(buffer, set, mode);
+            
+            int[] symbolIds = new int[CompactTemplateFormat.readAmount(buffer, STRING_MINIMUM, "symbols")];
+            for (int index = 0; index < symbolIds.length; index++) symbolIds[index] = symbols.intern(CompactTemplateFormat.readString(buffer));
+            
+            int templatesAmount = CompactTemplateFormat.readAmount(buffer, TEMPLATE_MINIMUM, "templates");
+            Map<String, CompactTemplate> templates = new LinkedHashMap<>(Math.max(16, (int) (templatesAmount / 0.75f) + 1));
+            for (int template = 0; template < templatesAmount; template++) {
+                String name = CompactTemplateFormat.readString(buffer);
+                String source = CompactTemplateFormat.readString(buffer);
+                int[] parts = new int[CompactTemplateFormat.readAmount(buffer, 3 * Integer.BYTES, "parts") * 3];
+                buffer.asIntBuffer().get(parts);
+                buffer.position(buffer.position() + parts.length * Integer.BYTES);
+                for (int index = 0; index < parts.length; index += 3) {
+                    int start = parts[index];
+                    int end = parts[index + 1];
+                    if (start < 0 || start > end || end > source.length()) throw new TemplateFormatException("Part "+start+"-"+end+" is out of source "+name);
+                    int info = parts[index + 2];
+                    if (info == CompactTemplate.TEXT) continue;
+                    int symbol = info >>> CompactTemplate.FLAG_BITS;
+                    if (symbol >= symbolIds.length) throw new TemplateFormatException("Unknown symbol "+symbol+" in "+name);
+                    parts[index + 2] = symbolIds[symbol] << CompactTemplate.FLAG_BITS | info & ((1 << CompactTemplate.FLAG_BITS) - 1);
+                }
+                int argumentsAmount = CompactTemplateFormat.readAmount(buffer, Integer.BYTES + STRING_MINIMUM, "arguments");
+                String[] arguments = argumentsAmount == 0 ? null : new String[parts.length / 3];
+                for (int argument = 0; argument < argumentsAmount; argument++) {
+                    int part = buffer.getInt();
+                    if (part < 0 || part >= parts.length / 3 || parts[part * 3 + 2] == CompactTemplate.TEXT) {
+                        throw new TemplateFormatException("Argument of part "+part+" that is not placeholder in "+name);
+                    }
+                    //noinspection DataFlowIssue because arguments are not null if there is any argument
+                    arguments[part] = CompactTemplateFormat.readString(buffer);
+                }
+                templates.put(name, new CompactTemplate(source, symbols, parts, arguments));
+            }
+            return templates;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException exception) {
+            throw new TemplateFormatException("Compiled templates are corrupted: "+exception);
+        }
+    }
+    
+    private static void writeSyntax(DataOutputStream data, SpecialCharacterSet set, EscapingMode mode) throws IOException {
+        data.writeChar(set.opening());
+        data.writeChar(set.closing());
+        data.writeChar(set.argumentDelimiter());
+        data.writeChar(set.exclusionChar());
+        data.writeChar(set.escapingCharacter());
+        data.writeByte(switch (mode) {
+            case UNESCAPED_IS_SIMPLE_TEXT -> 0;
+            case UNESCAPED_IS_PLACEHOLDER -> 1;
+        });
+    }
+    
+    private static void checkSyntax(ByteBuffer buffer, SpecialCharacterSet set, EscapingMode mode) throws TemplateFormatException {
+        SpecialCharacterSet writtenSet = SpecialCharacterSet.builder()
+            .closure(buffer.getChar(), buffer.getChar())
+            .argumentDelimiter(buffer.getChar())
+            .exclusionChar(buffer.getChar())
+            .escapingCharacter(buffer.getChar())
+            .build();
+        byte writtenMode = buffer.get();
+        EscapingMode writtenEscapingMode = switch (writtenMode) {
+            case 0 -> EscapingMode.UNESCAPED_IS_SIMPLE_TEXT;
+            case 1 -> EscapingMode.UNESCAPED_IS_PLACEHOLDER;
+            default -> throw new TemplateFormatException("Unknown escaping mode "+writtenMode);
+        };
+        if (!writtenSet.equals(set) || writtenEscapingMode != mode) {
+            throw new TemplateFormatException("Templates were compiled with "+writtenSet+" and "+writtenEscapingMode+", expected "+set+" and "+mode);
+        }
+    }
+    
+    private static void writeString(DataOutputStream data, String string) throws IOException {
+        int length = string.length();
+        boolean latin1 = true;
+        for (int index = 0; index < length && latin1; index++) latin1 = string.charAt(index) <= 0xFF;
+        data.writeInt(length);
+        data.writeByte(latin1 ? LATIN_1 : UTF_16);
+        if (latin1) data.write(string.getBytes(StandardCharsets.ISO_8859_1));
+        else data.writeChars(string);
+    }
+    
+    /**
+     * Amount is checked against remaining bytes, so corrupted amount can not cause allocation of huge or negative array.
+     *
+     * @param minimumBytes minimum bytes taken by one element
+     */
+    private static int readAmount(ByteBuffer buffer, int minimumBytes, String elements) throws TemplateFormatException {
+        int amount = buffer.getInt();
+        if (amount < 0 || (long) amount * minimumBytes > buffer.remaining()) {
+            throw new TemplateFormatException("Amount of "+elements+" "+amount+" does not fit into remaining "+buffer.remaining()+" bytes");
+        }
+        return amount;
+    }
+    
+    private static String readString(ByteBuffer buffer) throws TemplateFormatException {
+        int length = buffer.getInt();
+        byte coder = buffer.get();
+        if (length < 0 || (long) length * (coder == UTF_16 ? Character.BYTES : 1) > buffer.remaining()) {
+            throw new TemplateFormatException("String length "+length+" does not fit into remaining "+buffer.remaining()+" bytes");
+        }
+        String string = switch (coder) {
+            case LATIN_1 -> new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.ISO_8859_1);
+            case UTF_16 -> {
+                char[] chars = new char[length];
+                buffer.asCharBuffer().get(chars);
+                length *= Character.BYTES;
+                yield new String(chars);
+            }
+            default -> throw new TemplateFormatException("Unknown string coder "+coder);
+        };
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+    
+}
\ No newline at end of file
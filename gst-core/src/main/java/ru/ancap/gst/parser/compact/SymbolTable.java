@@ -0,0 +1,61 @@
+package ru.ancap.gst.parser.compact;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe append-only table of interned symbols (placeholder keys), every symbol gets dense int id. Templates
+ * that use the same table keep only one instance of every key and refer to it by id.
+ * <p>
+ * Lookups are lock-free, only adding new symbol takes lock. Symbols are never removed, so table should be used for
+ * bounded set of keys, like keys of localization templates. There is no global table, table is created by owner of
+ * templates and is collected together with them.
+ */
+public final class SymbolTable {
+    
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    
+    /**
+     * Symbol is written to array before array is published and before its id is published.
+     */
+    private volatile String[] symbols = new String[64];
+    private int size;
+    
+    /**
+     * @return id of symbol, symbol is added to table if it is not there yet
+     */
+    public int intern(String symbol) {
+        Integer id = this.ids.get(symbol);
+        if (id != null) return id;
+        synchronized (this) {
+            id = this.ids.get(symbol);
+            if (id != null) return id;
+            String[] symbols = this.symbols;
+            if (this.size == symbols.length) symbols = Arrays.copyOf(symbols, this.size * 2);
+            symbols[this.size] = symbol;
+            this.symbols = symbols;
+            this.ids.put(symbol, this.size);
+            return this.size++;
+        }
+    }
+    
+    /**
+     * @return id of symbol or -1 if symbol is not in table
+     */
+    public int find(String symbol) {
+        Integer id = this.ids.get(symbol);
+        return id == null ? -1 : id;
+    }
+    
+    /**
+     * @param id id returned by {@link #intern(String)}
+     */
+    public String symbol(int id) {
+        return this.symbols[id];
+    }
+    
+    public int size() {
+        return this.ids.size();
+    }
+    
+}
\ No newline at end of file
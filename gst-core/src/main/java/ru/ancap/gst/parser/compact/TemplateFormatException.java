@@ -0,0 +1,15 @@
+package ru.ancap.gst.parser.compact;
+
+import java.io.IOException;
+
+/**
+ * Compiled templates can not be loaded: data is corrupted, has other format version or was compiled with other syntax.
+ * Templates should be parsed again in this case.
+ */
+public class TemplateFormatException extends IOException {
+    
+    public TemplateFormatException(String message) {
+        super(message);
+    }
+    
+}
\ No newline at end of file
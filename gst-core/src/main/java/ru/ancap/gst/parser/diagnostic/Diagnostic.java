@@ -0,0 +1,27 @@
+package ru.ancap.gst.parser.diagnostic;
+
+/**
+ * Problem in template that was recovered by lenient parse instead of throwing exception.
+ *
+ * @param index index of problematic character in template
+ */
+public record Diagnostic(Kind kind, int index, char character) {
+    
+    public enum Kind {
+        
+        /**
+         * Escaping character is followed by regular character. Both characters are kept where they are: in text they
+         * are taken as text, in placeholder key or argument they become part of key or argument, so "\{fo\o}" is
+         * placeholder with key "fo\o".
+         */
+        REGULAR_CHARACTER_ESCAPED,
+        
+        /**
+         * Unescaped special character in placeholder key, placeholder up to this character is taken as text verbatim and
+         * character is parsed again as if it was in text.
+         */
+        UNEXPECTED_SPECIAL_CHARACTER
+        
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,77 @@
+package ru.ancap.gst.parser.diagnostic;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only list of diagnostics, each one is packed into single long, so collecting them on high volume of bad
+ * templates allocates only backing array.
+ */
+public class Diagnostics {
+    
+    private static final long[] EMPTY = new long[0];
+    private static final Diagnostic.Kind[] KINDS = Diagnostic.Kind.values();
+    
+    private long[] packed = EMPTY;
+    private int size;
+    
+    public void add(Diagnostic.Kind kind, int index, char character) {
+        if (this.size == this.packed.length) this.packed = Arrays.copyOf(this.packed, Math.max(4, this.size * 2));
+        this.packed[this.size++] = (long) index << 32 | kind.ordinal() << 16 | character;
+    }
+    
+    public int size() {
+        return this.size;
+    }
+    
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+    
+    public Diagnostic.Kind kind(int i) {
+        return KINDS[(int) (this.packed(i) >>> 16) & 0xFFFF];
+    }
+    
+    public int index(int i) {
+        return (int) (this.packed(i) >>> 32);
+    }
+    
+    public char character(int i) {
+        return (char) this.packed(i);
+    }
+    
+    public Diagnostic get(int i) {
+        return new Diagnostic(this.kind(i), this.index(i), this.character(i));
+    }
+    
+    /**
+     * @return view of diagnostics, diagnostics are unpacked on access
+     */
+    public List<Diagnostic> asList() {
+        return new AbstractList<>() {
+            
+            @Override
+            public Diagnostic get(int i) {
+                return Diagnostics.this.get(i);
+            }
+            
+            @Override
+            public int size() {
+                return Diagnostics.this.size;
+            }
+            
+        };
+    }
+    
+    private long packed(int i) {
+        if (i < 0 || i >= this.size) throw new IndexOutOfBoundsException("Index "+i+" out of bounds for size "+this.size);
+        return this.packed[i];
+    }
+    
+    @Override
+    public String toString() {
+        return this.asList().toString();
+    }
+    
+}
\ No newline at end of file
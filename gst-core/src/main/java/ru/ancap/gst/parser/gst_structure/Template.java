@@ -0,0 +1,164 @@
+package ru.ancap.gst.parser.gst_structure;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.argument.DecodedArgument;
+import ru.ancap.gst.util.LinkedObjects;
+import ru.ancap.gst.util.Node;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Immutable parse result, parts are kept in array in template order. Unlike {@link LinkedObjects} it can be iterated
+ * by index without pointer chasing and iterator allocation, and can be safely published to other threads and shared
+ * without copying.
+ * <p>
+ * Template compiled with {@link ru.ancap.gst.parser.argument.ArgumentDecoders} additionally keeps arguments decoded at
+ * compile time by part index, see {@link #decodedArgument(int)}. They are derived from parts, so they are not compared
+ * by {@link #equals(Object)} and are lost by conversions to other forms.
+ */
+public final class Template implements Iterable<GSTPart> {
+    
+    public static final Template EMPTY = new Template(new GSTPart[0]);
+    
+    private final GSTPart[] parts;
+    
+    /**
+     * Null if no argument was decoded, otherwise has length of parts and null for parts without decoded argument.
+     */
+    private final DecodedArgument @Nullable [] decodedArguments;
+    
+    /**
+     * Computed on first request. Racing threads compute equal metadata, record is safely published by its final
+     * fields.
+     */
+    private @Nullable TemplateMetadata metadata;
+    
+    private Template(GSTPart[] parts) {
+        this(parts, null);
+    }
+    
+    private Template(GSTPart[] parts, DecodedArgument @Nullable [] decodedArguments) {
+        this.parts = parts;
+        this.decodedArguments = decodedArguments;
+    }
+    
+    public static Template of(GSTPart... parts) {
+        return parts.length == 0 ? Template.EMPTY : new Template(parts.clone());
+    }
+    
+    public static Template of(LinkedObjects<GSTPart> parts) {
+        Builder builder = Template.builder();
+        for (Node<GSTPart> node : parts) builder.add(node.contents());
+        return builder.build();
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    public static class Builder {
+        
+        private GSTPart[] parts = new GSTPart[8];
+        private int size;
+        
+        public Builder add(GSTPart part) {
+            if (this.size == this.parts.length) this.parts = Arrays.copyOf(this.parts, this.size * 2);
+            this.parts[this.size++] = part;
+            return this;
+        }
+        
+        public Template build() {
+            return this.size == 0 ? Template.EMPTY : new Template(Arrays.copyOf(this.parts, this.size));
+        }
+        
+    }
+    
+    public int size() {
+        return this.parts.length;
+    }
+    
+    public boolean isEmpty() {
+        return this.parts.length == 0;
+    }
+    
+    public GSTPart get(int index) {
+        return this.parts[index];
+    }
+    
+    /**
+     * @return false if template ended before last placeholder was closed
+     */
+    public boolean endExpected() {
+        return this.parts.length == 0 || !(this.parts[this.parts.length - 1] instanceof Placeholder placeholder) || placeholder.endExpected();
+    }
+    
+    /**
+     * @return argument of placeholder at index decoded at compile time, null if it was not decoded
+     */
+    public @Nullable DecodedArgument decodedArgument(int index) {
+        return this.decodedArguments == null ? null : this.decodedArguments[index];
+    }
+    
+    /**
+     * @param decodedArguments arguments by part index, null for parts without decoded argument, or null to drop
+     *                         decoded arguments
+     * @return template with the same parts and decoded arguments
+     */
+    public Template withDecodedArguments(DecodedArgument @Nullable [] decodedArguments) {
+        if (decodedArguments != null && decodedArguments.length != this.parts.length) throw new IllegalArgumentException(
+            "Decoded arguments length "+decodedArguments.length+" does not match template size "+this.parts.length
+        );
+        Template template = new Template(this.parts, decodedArguments == null ? null : decodedArguments.clone());
+        template.metadata = this.metadata;
+        return template;
+    }
+    
+    public TemplateMetadata metadata() {
+        TemplateMetadata metadata = this.metadata;
+        if (metadata == null) {
+            metadata = TemplateMetadata.of(this);
+            this.metadata = metadata;
+        }
+        return metadata;
+    }
+    
+    public List<GSTPart> asList() {
+        return Collections.unmodifiableList(Arrays.asList(this.parts));
+    }
+    
+    /**
+     * @return new mutable linked form of this template
+     */
+    public LinkedObjects<GSTPart> toLinkedObjects() {
+        LinkedObjects<GSTPart> linked = new LinkedObjects<>();
+        for (GSTPart part : this.parts) linked.add(part);
+        return linked;
+    }
+    
+    @Override
+    public @NotNull Iterator<GSTPart> iterator() {
+        return this.asList().iterator();
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof Template template)) return false;
+        return Arrays.equals(this.parts, template.parts);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.parts);
+    }
+    
+    @Override
+    public String toString() {
+        return "Template" + Arrays.toString(this.parts);
+    }
+    
+}
\ No newline at end of file
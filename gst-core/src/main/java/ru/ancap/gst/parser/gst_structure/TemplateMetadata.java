@@ -0,0 +1,78 @@
+package ru.ancap.gst.parser.gst_structure;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Facts about template that do not depend on declarations, computed once per parse result. Sets are unmodifiable
+ * and iterate keys in order of their first occurrence in template.
+ *
+ * @param keys distinct keys of all placeholders, including excluded ones
+ * @param keysWithArguments keys that have argument at least in one placeholder
+ * @param exclusions keys that are excluded at least in one placeholder
+ * @param endExpected false if template ended before last placeholder was closed
+ */
+public record TemplateMetadata(Set<String> keys, Set<String> keysWithArguments, Set<String> exclusions, boolean endExpected) {
+    
+    public static final TemplateMetadata EMPTY = new TemplateMetadata(Set.of(), Set.of(), Set.of(), true);
+    
+    public static TemplateMetadata of(Template template) {
+        Builder builder = TemplateMetadata.builder();
+        for (int index = 0; index < template.size(); index++) {
+            switch (template.get(index)) {
+                case Placeholder placeholder -> builder.add(
+                    placeholder.directData().key(),
+                    placeholder.directData().argument().isPresent(),
+                    placeholder.exclusion(),
+                    placeholder.endExpected()
+                );
+                case Text ignored -> builder.text();
+            }
+        }
+        return builder.build();
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    /**
+     * Collects parts in template order, must not be used after {@link #build()}.
+     */
+    public static class Builder {
+        
+        private final Set<String> keys = new LinkedHashSet<>();
+        private final Set<String> keysWithArguments = new LinkedHashSet<>();
+        private final Set<String> exclusions = new LinkedHashSet<>();
+        private boolean endExpected = true;
+        
+        public Builder add(String key, boolean argument, boolean exclusion, boolean endExpected) {
+            this.keys.add(key);
+            if (argument) this.keysWithArguments.add(key);
+            if (exclusion) this.exclusions.add(key);
+            this.endExpected = endExpected;
+            return this;
+        }
+        
+        /**
+         * Last placeholder is not last part of template, so template end is expected whatever placeholder was.
+         */
+        public Builder text() {
+            this.endExpected = true;
+            return this;
+        }
+        
+        public TemplateMetadata build() {
+            if (this.keys.isEmpty() && this.endExpected) return TemplateMetadata.EMPTY;
+            return new TemplateMetadata(
+                Collections.unmodifiableSet(this.keys),
+                Collections.unmodifiableSet(this.keysWithArguments),
+                Collections.unmodifiableSet(this.exclusions),
+                this.endExpected
+            );
+        }
+        
+    }
+    
+}
\ No newline at end of file
@@ -1,9 +1,97 @@
 package ru.ancap.gst.parser.gst_structure;
 
-import lombok.With;
+import org.jetbrains.annotations.Nullable;
 
 /**
- * @param index first text symbol 0-based index in original string
+ * Text part of template. Can be a view into the parsed source, in this case string is materialized only on first
+ * {@link #string()} call, and text that is only written to result with {@link #appendTo(StringBuilder)} is never
+ * copied at all. Source of view must not be changed while view is in use.
+ * <p>
+ * Text was a record before views were added, accessors and {@code with} methods of record are kept, but it can not be
+ * deconstructed with record patterns anymore.
  */
-@With
-public record Text(int index, String string) implements GSTPart { }
\ No newline at end of file
+public final class Text implements GSTPart {
+    
+    private final int index;
+    private final CharSequence source;
+    private final int start;
+    private final int end;
+    
+    /**
+     * Racy single-check caching, safe for the same reasons as String#hashCode() caching.
+     */
+    private @Nullable String string;
+    
+    /**
+     * @param index first text symbol 0-based index in original string
+     */
+    public Text(int index, String string) {
+        this(index, string, 0, string.length());
+        this.string = string;
+    }
+    
+    private Text(int index, CharSequence source, int start, int end) {
+        this.index = index;
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+    
+    /**
+     * @param index first text symbol 0-based index in original string
+     * @param start start of text in source, inclusive
+     * @param end end of text in source, exclusive
+     */
+    public static Text view(int index, CharSequence source, int start, int end) {
+        return new Text(index, source, start, end);
+    }
+    
+    public int index() {
+        return this.index;
+    }
+    
+    public String string() {
+        String string = this.string;
+        if (string == null) {
+            string = this.source.subSequence(this.start, this.end).toString();
+            this.string = string;
+        }
+        return string;
+    }
+    
+    public int length() {
+        return this.end - this.start;
+    }
+    
+    public void appendTo(StringBuilder builder) {
+        String string = this.string;
+        if (string != null) builder.append(string);
+        else builder.append(this.source, this.start, this.end);
+    }
+    
+    public Text withIndex(int index) {
+        return this.index == index ? this : new Text(index, this.source, this.start, this.end);
+    }
+    
+    public Text withString(String string) {
+        return new Text(this.index, string);
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof Text text)) return false;
+        return this.index == text.index && this.string().equals(text.string());
+    }
+    
+    @Override
+    public int hashCode() {
+        return 31 * Integer.hashCode(this.index) + this.string().hashCode();
+    }
+    
+    @Override
+    public String toString() {
+        return "Text[index=" + this.index + ", string=" + this.string() + "]";
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,82 @@
+package ru.ancap.gst.parser.mapped;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * String stored in {@link MappedTemplateStore}, characters are read from mapping on every access, nothing is copied
+ * to heap until {@link #toString()} is called.
+ */
+public final class MappedString implements CharSequence {
+    
+    private final ByteBuffer buffer;
+    
+    /**
+     * Offset of first character in buffer.
+     */
+    private final int offset;
+    private final int length;
+    private final boolean latin1;
+    
+    MappedString(ByteBuffer buffer, int offset, int length, boolean latin1) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.latin1 = latin1;
+    }
+    
+    @Override
+    public int length() {
+        return this.length;
+    }
+    
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= this.length) throw new IndexOutOfBoundsException("Index "+index+" out of bounds for length "+this.length);
+        if (this.latin1) return (char) (this.buffer.get(this.offset + index) & 0xFF);
+        return this.buffer.getChar(this.offset + index * Character.BYTES);
+    }
+    
+    /**
+     * Same as {@code result.append(this, start, end)} without bounds check per character.
+     */
+    public void appendTo(StringBuilder result, int start, int end) {
+        if (start < 0 || end > this.length || start > end) throw new IndexOutOfBoundsException("Range ["+start+", "+end+") out of bounds for length "+this.length);
+        ByteBuffer buffer = this.buffer;
+        if (this.latin1) for (int index = this.offset + start; index < this.offset + end; index++) result.append((char) (buffer.get(index) & 0xFF));
+        else for (int index = this.offset + start * Character.BYTES; index < this.offset + end * Character.BYTES; index += Character.BYTES) result.append(buffer.getChar(index));
+    }
+    
+    /**
+     * Compares characters without copying.
+     */
+    public boolean contentEquals(String string) {
+        if (string.length() != this.length) return false;
+        for (int index = 0; index < this.length; index++) if (this.charAt(index) != string.charAt(index)) return false;
+        return true;
+    }
+    
+    @Override
+    public @NotNull CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > this.length || start > end) throw new IndexOutOfBoundsException("Range ["+start+", "+end+") out of bounds for length "+this.length);
+        return new MappedString(this.buffer, this.offset + (this.latin1 ? start : start * Character.BYTES), end - start, this.latin1);
+    }
+    
+    /**
+     * Copies characters to heap with one bulk read.
+     */
+    @Override
+    public @NotNull String toString() {
+        if (this.latin1) {
+            byte[] bytes = new byte[this.length];
+            this.buffer.get(this.offset, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+        char[] chars = new char[this.length];
+        this.buffer.slice(this.offset, this.length * Character.BYTES).asCharBuffer().get(chars);
+        return new String(chars);
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,131 @@
+package ru.ancap.gst.parser.mapped;
+
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.GSTSink;
+import ru.ancap.gst.parser.TemplateCollector;
+import ru.ancap.gst.parser.gst_structure.Template;
+
+/**
+ * View of template in {@link MappedTemplateStore}. Keeps only position of template record, parts, source and
+ * arguments are read from mapping, keys are taken from key table of store.
+ * <p>
+ * Parts are the same as parts of {@link ru.ancap.gst.parser.compact.CompactTemplate} it was compiled from.
+ */
+public final class MappedTemplate {
+    
+    private final MappedTemplateStore store;
+    
+    /**
+     * Offset of template record in mapping.
+     */
+    private final int record;
+    
+    MappedTemplate(MappedTemplateStore store, int record) {
+        this.store = store;
+        this.record = record;
+    }
+    
+    public String name() {
+        return this.store.string(this.store.buffer().getInt(this.record)).toString();
+    }
+    
+    public MappedString source() {
+        return this.store.string(this.store.buffer().getInt(this.record + MappedTemplateStore.SOURCE));
+    }
+    
+    public int size() {
+        return this.store.buffer().getInt(this.record + MappedTemplateStore.PARTS_AMOUNT);
+    }
+    
+    public boolean isText(int part) {
+        return this.info(part) == MappedTemplateStore.TEXT;
+    }
+    
+    public int start(int part) {
+        return this.store.buffer().getInt(this.part(part));
+    }
+    
+    public int end(int part) {
+        return this.store.buffer().getInt(this.part(part) + Integer.BYTES);
+    }
+    
+    /**
+     * @param part index of placeholder part
+     */
+    public String key(int part) {
+        return this.store.symbol(this.info(part) >>> MappedTemplateStore.FLAG_BITS);
+    }
+    
+    /**
+     * Argument is copied to heap on every call.
+     *
+     * @param part index of placeholder part
+     */
+    public @Nullable String argument(int part) {
+        int offset = this.store.buffer().getInt(this.part(part) + 3 * Integer.BYTES);
+        return offset == MappedTemplateStore.NONE ? null : this.store.string(offset).toString();
+    }
+    
+    /**
+     * @param part index of placeholder part
+     */
+    public boolean exclusion(int part) {
+        return (this.info(part) & MappedTemplateStore.EXCLUSION) != 0;
+    }
+    
+    /**
+     * @return false if template ended before last placeholder was closed
+     */
+    public boolean endExpected() {
+        int size = this.size();
+        return size == 0 || this.isText(size - 1) || (this.info(size - 1) & MappedTemplateStore.UNCLOSED) == 0;
+    }
+    
+    /**
+     * Passes parts to sink in the same way as parser did, source is {@link #source()}, so text is passed as range of
+     * mapped characters.
+     */
+    public void replay(GSTSink sink) {
+        this.replay(this.source(), sink);
+    }
+    
+    /**
+     * Copies template to heap.
+     */
+    public Template toTemplate() {
+        TemplateCollector collector = new TemplateCollector();
+        this.replay(this.source().toString(), collector);
+        return collector.result();
+    }
+    
+    @Override
+    public String toString() {
+        return "MappedTemplate[name=" + this.name() + ", parts=" + this.size() + "]";
+    }
+    
+    private void replay(CharSequence source, GSTSink sink) {
+        int size = this.size();
+        for (int part = 0; part < size; part++) {
+            int info = this.info(part);
+            if (info == MappedTemplateStore.TEXT) sink.onText(source, this.start(part), this.end(part));
+            else sink.onPlaceholder(
+                source,
+                this.start(part),
+                this.end(part),
+                this.store.symbol(info >>> MappedTemplateStore.FLAG_BITS),
+                this.argument(part),
+                (info & MappedTemplateStore.EXCLUSION) != 0,
+                (info & MappedTemplateStore.UNCLOSED) == 0
+            );
+        }
+    }
+    
+    private int part(int part) {
+        return this.record + MappedTemplateStore.RECORD_HEADER + part * MappedTemplateStore.PART;
+    }
+    
+    private int info(int part) {
+        return this.store.buffer().getInt(this.part(part) + 2 * Integer.BYTES);
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,392 @@
+package ru.ancap.gst.parser.mapped;
+
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.EscapingMode;
+import ru.ancap.gst.parser.SpecialCharacterSet;
+import ru.ancap.gst.parser.compact.CompactTemplate;
+import ru.ancap.gst.parser.compact.SymbolTable;
+import ru.ancap.gst.parser.compact.TemplateFormatException;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only store of compiled templates in memory-mapped file. Several processes on one host can open the same file,
+ * then templates are kept once in page cache instead of heap of every process, and opening store costs only mapping
+ * and check of header and templates table. Templates are not copied to heap: {@link MappedTemplate} reads parts, text
+ * and arguments straight from mapping, only keys are copied once per store, on first use. Record of template is
+ * checked once, when template is found first, so corrupted file is reported with {@link TemplateFormatException}
+ * instead of failing or rendering garbage later.
+ * <p>
+ * File is created by {@link #write(Path, SimpleGSTParser, Map)} in temporary file that is moved in place of target,
+ * so stores that are already opened keep mapping of old file. File must not be modified in place while it is mapped.
+ * The same store can be kept in direct memory without file with {@link #allocate(SimpleGSTParser, Map)}. Store is
+ * thread-safe.
+ * <p>
+ * Layout, numbers are big-endian and aligned to 4 bytes:
+ * <pre>
+ * int     magic "GSTM"
+ * short   version
+ * char[5] opening, closing, argument delimiter, exclusion and escaping characters
+ * byte    escaping mode: 0 if unescaped is simple text, 1 if unescaped is placeholder, then 3 bytes of padding
+ * int     amount of symbols, int offset of symbols
+ * int     amount of templates, int capacity of templates table, int offset of templates table
+ * strings and template records, symbols and templates table
+ * </pre>
+ * Symbols are offsets of key strings. Templates table is open-addressing table with linear probing by
+ * {@link String#hashCode()} of name, slot is offset of template record or -1. Template record is offsets of name and
+ * source strings, amount of parts and four ints for every part: start and end in source, -1 for text or index of key
+ * in symbols with exclusion and unclosed end flags for placeholder, offset of argument or -1. String is int length,
+ * byte coder (0 for Latin-1, 1 for UTF-16), length bytes or chars and padding. Equal strings are stored once.
+ */
+public final class MappedTemplateStore {
+    
+    public static final int MAGIC = 0x4753544D;
+    public static final short VERSION = 1;
+    
+    static final int TEXT = -1;
+    static final int NONE = -1;
+    static final int EXCLUSION = 1;
+    static final int UNCLOSED = 2;
+    static final int FLAG_BITS = 2;
+    
+    static final int SOURCE = 4;
+    static final int PARTS_AMOUNT = 8;
+    static final int RECORD_HEADER = 12;
+    static final int PART = 16;
+    
+    private static final int HEADER = 40;
+    private static final byte LATIN_1 = 0;
+    private static final byte UTF_16 = 1;
+    
+    private final ByteBuffer buffer;
+    private final int templates;
+    private final int tableCapacity;
+    private final int tableOffset;
+    private final int symbolsOffset;
+    
+    /**
+     * Keys copied to heap, filled on first use. Races only lead to copying key several times, strings are safely
+     * published by themselves.
+     */
+    private final String[] symbols;
+    
+    /**
+     * Slots of templates table with checked records, same races as with {@link #symbols}.
+     */
+    private final boolean[] checked;
+    
+    private MappedTemplateStore(ByteBuffer buffer, int symbols, int symbolsOffset, int templates, int tableCapacity, int tableOffset) {
+        this.buffer = buffer;
+        this.symbols = new String[symbols];
+        this.checked = new boolean[tableCapacity];
+        this.symbolsOffset = symbolsOffset;
+        this.templates = templates;
+        this.tableCapacity = tableCapacity;
+        this.tableOffset = tableOffset;
+    }
+    
+    /**
+     * Compiles templates with parser and writes them to file, file is replaced atomically if file system supports it.
+     *
+     * @param templates template sources by names
+     */
+    public static void write(Path file, SimpleGSTParser parser, Map<String, ? extends CharSequence> templates) throws IOException {
+        ByteBuffer encoded = MappedTemplateStore.encode(parser, templates);
+        Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, Arrays.copyOf(encoded.array(), encoded.limit()));
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException exception) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+    
+    /**
+     * Compiles templates with parser into direct memory, same layout as in file, but without file. Heap keeps only
+     * store, its keys and buffer object, so big template sets do not add to live set that GC marks. Direct memory is
+     * freed when store and all its templates become unreachable, it counts to {@code -XX:MaxDirectMemorySize}.
+     *
+     * @param templates template sources by names
+     */
+    public static MappedTemplateStore allocate(SimpleGSTParser parser, Map<String, ? extends CharSequence> templates) {
+        ByteBuffer encoded = MappedTemplateStore.encode(parser, templates);
+        ByteBuffer direct = ByteBuffer.allocateDirect(encoded.limit()).put(encoded).flip();
+        return MappedTemplateStore.of(direct.asReadOnlyBuffer());
+    }
+    
+    /**
+     * @return heap buffer with store from 0 to limit
+     */
+    private static ByteBuffer encode(SimpleGSTParser parser, Map<String, ? extends CharSequence> templates) {
+        Writer writer = new Writer();
+        writer.buffer.putInt(MAGIC);
+        writer.buffer.putShort(VERSION);
+        SpecialCharacterSet set = parser.specialCharacterSet();
+        writer.buffer.putChar(set.opening());
+        writer.buffer.putChar(set.closing());
+        writer.buffer.putChar(set.argumentDelimiter());
+        writer.buffer.putChar(set.exclusionChar());
+        writer.buffer.putChar(set.escapingCharacter());
+        writer.buffer.put(MappedTemplateStore.escapingModeCode(parser.escapingMode()));
+        writer.buffer.position(HEADER);
+        
+        SymbolTable symbols = new SymbolTable();
+        int tableCapacity = Integer.highestOneBit(Math.max(1, templates.size()) * 2 - 1) << 1;
+        int[] table = new int[tableCapacity];
+        Arrays.fill(table, NONE);
+        for (var entry : templates.entrySet()) {
+            CompactTemplate template = CompactTemplate.compile(parser, entry.getValue(), symbols);
+            int name = writer.string(entry.getKey());
+            int source = writer.string(template.source());
+            int[] arguments = new int[template.size()];
+            for (int part = 0; part < template.size(); part++) {
+                String argument = template.isText(part) ? null : template.argument(part);
+                arguments[part] = argument == null ? NONE : writer.string(argument);
+            }
+            
+            int record = writer.reserve(RECORD_HEADER + template.size() * PART);
+            writer.buffer.putInt(name).putInt(source).putInt(template.size());
+            for (int part = 0; part < template.size(); part++) {
+                writer.buffer.putInt(template.start(part)).putInt(template.end(part));
+                if (template.isText(part)) writer.buffer.putInt(TEXT);
+                else {
+                    boolean unclosed = part == template.size() - 1 && !template.endExpected();
+                    writer.buffer.putInt(template.keyId(part) << FLAG_BITS | (template.exclusion(part) ? EXCLUSION : 0) | (unclosed ? UNCLOSED : 0));
+                }
+                writer.buffer.putInt(arguments[part]);
+            }
+            
+            int slot = entry.getKey().hashCode() & (tableCapacity - 1);
+            while (table[slot] != NONE) slot = (slot + 1) & (tableCapacity - 1);
+            table[slot] = record;
+        }
+        
+        int[] symbolOffsets = new int[symbols.size()];
+        for (int symbol = 0; symbol < symbolOffsets.length; symbol++) symbolOffsets[symbol] = writer.string(symbols.symbol(symbol));
+        int symbolsOffset = writer.reserve(symbolOffsets.length * Integer.BYTES);
+        for (int offset : symbolOffsets) writer.buffer.putInt(offset);
+        int tableOffset = writer.reserve(tableCapacity * Integer.BYTES);
+        for (int record : table) writer.buffer.putInt(record);
+        
+        writer.buffer.putInt(20, symbolOffsets.length).putInt(24, symbolsOffset);
+        writer.buffer.putInt(28, templates.size()).putInt(32, tableCapacity).putInt(36, tableOffset);
+        
+        return writer.buffer.flip();
+    }
+    
+    /**
+     * Maps file, templates must be compiled with syntax of parser.
+     *
+     * @throws TemplateFormatException if file is not compiled templates, has other version, templates were
+     *                                 compiled with other syntax, or header or templates table is corrupted
+     */
+    public static MappedTemplateStore open(Path file, SimpleGSTParser parser) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new TemplateFormatException("File is too big: "+channel.size());
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC) throw new TemplateFormatException("Not compiled templates");
+        short version = buffer.getShort(4);
+        if (version != VERSION) throw new TemplateFormatException("Unsupported version "+version+", expected "+VERSION);
+        SpecialCharacterSet set = parser.specialCharacterSet();
+        boolean sameSyntax = buffer.getChar(6) == set.opening()
+            && buffer.getChar(8) == set.closing()
+            && buffer.getChar(10) == set.argumentDelimiter()
+            && buffer.getChar(12) == set.exclusionChar()
+            && buffer.getChar(14) == set.escapingCharacter()
+            && buffer.get(16) == MappedTemplateStore.escapingModeCode(parser.escapingMode());
+        if (!sameSyntax) throw new TemplateFormatException("Templates were compiled with other syntax than "+set+" and "+parser.escapingMode());
+        
+        int symbols = buffer.getInt(20);
+        int symbolsOffset = buffer.getInt(24);
+        int templates = buffer.getInt(28);
+        int tableCapacity = buffer.getInt(32);
+        int tableOffset = buffer.getInt(36);
+        if (symbols < 0 || tableCapacity < 1 || Integer.bitCount(tableCapacity) != 1) throw new TemplateFormatException("Compiled templates are corrupted");
+        if (!MappedTemplateStore.inBuffer(buffer, symbolsOffset, (long) symbols * Integer.BYTES)) throw new TemplateFormatException("Symbols are out of file");
+        if (!MappedTemplateStore.inBuffer(buffer, tableOffset, (long) tableCapacity * Integer.BYTES)) throw new TemplateFormatException("Templates table is out of file");
+        int occupied = 0;
+        for (int slot = 0; slot < tableCapacity; slot++) {
+            int record = buffer.getInt(tableOffset + slot * Integer.BYTES);
+            if (record == NONE) continue;
+            if (!MappedTemplateStore.inBuffer(buffer, record, RECORD_HEADER) || !MappedTemplateStore.isString(buffer, buffer.getInt(record))) {
+                throw new TemplateFormatException("Compiled templates are corrupted: slot "+slot+" is not template record");
+            }
+            occupied++;
+        }
+        if (templates != occupied) throw new TemplateFormatException("Amount of templates "+templates+" does not match "+occupied+" records in table");
+        return MappedTemplateStore.of(buffer);
+    }
+    
+    /**
+     * @return true if range is after header and inside buffer
+     */
+    private static boolean inBuffer(ByteBuffer buffer, int offset, long bytes) {
+        return offset >= HEADER && bytes >= 0 && offset + bytes <= buffer.limit();
+    }
+    
+    private static boolean isString(ByteBuffer buffer, int offset) {
+        if (!MappedTemplateStore.inBuffer(buffer, offset, Integer.BYTES + 1)) return false;
+        int length = buffer.getInt(offset);
+        byte coder = buffer.get(offset + Integer.BYTES);
+        if (length < 0 || coder != LATIN_1 && coder != UTF_16) return false;
+        return MappedTemplateStore.inBuffer(buffer, offset + Integer.BYTES + 1, coder == LATIN_1 ? length : (long) length * Character.BYTES);
+    }
+    
+    /**
+     * Checks what {@link MappedTemplate} reads from record: parts, source, arguments and keys. Header and name are
+     * checked on opening.
+     */
+    private void check(int record) throws TemplateFormatException {
+        ByteBuffer buffer = this.buffer;
+        String name = this.string(buffer.getInt(record)).toString();
+        int source = buffer.getInt(record + SOURCE);
+        if (!MappedTemplateStore.isString(buffer, source)) throw new TemplateFormatException("Source of "+name+" is out of file");
+        int sourceLength = buffer.getInt(source);
+        int parts = buffer.getInt(record + PARTS_AMOUNT);
+        if (!MappedTemplateStore.inBuffer(buffer, record + RECORD_HEADER, (long) parts * PART)) throw new TemplateFormatException("Parts of "+name+" are out of file");
+        for (int part = 0; part < parts; part++) {
+            int offset = record + RECORD_HEADER + part * PART;
+            int start = buffer.getInt(offset);
+            int end = buffer.getInt(offset + Integer.BYTES);
+            int info = buffer.getInt(offset + 2 * Integer.BYTES);
+            int argument = buffer.getInt(offset + 3 * Integer.BYTES);
+            if (start < 0 || start > end || end > sourceLength) throw new TemplateFormatException("Part "+start+"-"+end+" is out of source "+name);
+            if (info == TEXT) {
+                if (argument != NONE) throw new TemplateFormatException("Argument of part "+part+" that is not placeholder in "+name);
+                continue;
+            }
+            int symbol = info >>> FLAG_BITS;
+            if (info < 0 || symbol >= this.symbols.length) throw new TemplateFormatException("Unknown symbol "+symbol+" in "+name);
+            if (!MappedTemplateStore.isString(buffer, buffer.getInt(this.symbolsOffset + symbol * Integer.BYTES))) throw new TemplateFormatException("Symbol "+symbol+" is out of file");
+            if (argument != NONE && !MappedTemplateStore.isString(buffer, argument)) throw new TemplateFormatException("Argument of part "+part+" in "+name+" is out of file");
+        }
+    }
+    
+    /**
+     * Header must be checked.
+     */
+    private static MappedTemplateStore of(ByteBuffer buffer) {
+        return new MappedTemplateStore(buffer, buffer.getInt(20), buffer.getInt(24), buffer.getInt(28), buffer.getInt(32), buffer.getInt(36));
+    }
+    
+    /**
+     * Name is compared with names in mapping without copying them. Written table always has empty slot, but at most
+     * capacity slots are probed, so table without empty slot can not make lookup endless.
+     *
+     * @return template or null if store has no template with this name
+     * @throws TemplateFormatException if record of template is corrupted
+     */
+    public @Nullable MappedTemplate find(String name) throws TemplateFormatException {
+        int mask = this.tableCapacity - 1;
+        int slot = name.hashCode() & mask;
+        for (int probed = 0; probed < this.tableCapacity; probed++, slot = (slot + 1) & mask) {
+            int record = this.buffer.getInt(this.tableOffset + slot * Integer.BYTES);
+            if (record == NONE) return null;
+            if (!this.string(this.buffer.getInt(record)).contentEquals(name)) continue;
+            if (!this.checked[slot]) {
+                this.check(record);
+                this.checked[slot] = true;
+            }
+            return new MappedTemplate(this, record);
+        }
+        return null;
+    }
+    
+    public int size() {
+        return this.templates;
+    }
+    
+    ByteBuffer buffer() {
+        return this.buffer;
+    }
+    
+    MappedString string(int offset) {
+        int length = this.buffer.getInt(offset);
+        return new MappedString(this.buffer, offset + Integer.BYTES + 1, length, this.buffer.get(offset + Integer.BYTES) == LATIN_1);
+    }
+    
+    String symbol(int id) {
+        String symbol = this.symbols[id];
+        if (symbol == null) {
+            symbol = this.string(this.buffer.getInt(this.symbolsOffset + id * Integer.BYTES)).toString();
+            this.symbols[id] = symbol;
+        }
+        return symbol;
+    }
+    
+    @Override
+    public String toString() {
+        return "MappedTemplateStore[templates=" + this.templates + ", bytes=" + this.buffer.limit() + "]";
+    }
+    
+    private static byte escapingModeCode(EscapingMode mode) {
+        return switch (mode) {
+            case UNESCAPED_IS_SIMPLE_TEXT -> 0;
+            case UNESCAPED_IS_PLACEHOLDER -> 1;
+        };
+    }
+    
+    /**
+     * Heap buffer that grows on demand, strings are deduplicated.
+     */
+    private static class Writer {
+        
+        public ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+        private final Map<String, Integer> strings = new HashMap<>();
+        
+        /**
+         * @return offset of string
+         */
+        public int string(String string) {
+            Integer known = this.strings.get(string);
+            if (known != null) return known;
+            int length = string.length();
+            boolean latin1 = true;
+            for (int index = 0; index < length && latin1; index++) latin1 = string.charAt(index) <= 0xFF;
+            int bytes = latin1 ? length : length * Character.BYTES;
+            int offset = this.reserve(Integer.BYTES + 1 + bytes + 3 & ~3);
+            this.buffer.putInt(length);
+            this.buffer.put(latin1 ? LATIN_1 : UTF_16);
+            if (latin1) for (int index = 0; index < length; index++) this.buffer.put((byte) string.charAt(index));
+            else for (int index = 0; index < length; index++) this.buffer.putChar(string.charAt(index));
+            this.buffer.position(offset + (Integer.BYTES + 1 + bytes + 3 & ~3));
+            this.strings.put(string, offset);
+            return offset;
+        }
+        
+        /**
+         * Grows buffer to fit bytes after position.
+         *
+         * @return position
+         */
+        public int reserve(int bytes) {
+            int position = this.buffer.position();
+            if ((long) position + bytes > Integer.MAX_VALUE) throw new IllegalArgumentException("Templates do not fit into 2 GB");
+            if (this.buffer.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) this.buffer.capacity() * 2, (long) position + bytes)));
+                grown.put(this.buffer.flip());
+                this.buffer = grown;
+            }
+            return position;
+        }
+        
+    }
+    
+}
\ No newline at end of file
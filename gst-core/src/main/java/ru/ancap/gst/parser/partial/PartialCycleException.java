@@ -0,0 +1,29 @@
+package ru.ancap.gst.parser.partial;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+/**
+ * Template includes itself directly or through other templates.
+ */
+@RequiredArgsConstructor
+@Accessors(fluent = true) @Getter
+@ToString
+public class PartialCycleException extends IllegalArgumentException {
+    
+    /**
+     * Templates that were being linked, each includes the next one, the last one includes {@link #included()}.
+     */
+    private final List<String> linking;
+    private final String included;
+    
+    @Override
+    public String getMessage() {
+        return this.toString();
+    }
+    
+}
@@ -0,0 +1,201 @@
+package ru.ancap.gst.parser.partial;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.gst_structure.GSTPart;
+import ru.ancap.gst.parser.gst_structure.Placeholder;
+import ru.ancap.gst.parser.gst_structure.Template;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of named templates that can include each other. Include is placeholder whose key starts with include prefix,
+ * rest of the key is name of included template (partial), for example "\{>header}" with default prefix ">".
+ * <p>
+ * Registry keeps templates as they were registered and their linked form, where every include is replaced with parts
+ * of linked partial, so linked template is rendered in one pass as usual {@link Template}. When template is registered
+ * again, it and all templates that include it directly or transitively are linked again from kept parts, nothing is
+ * parsed again.
+ * <p>
+ * Include of template that is not registered is kept as placeholder and is resolved when that template is registered.
+ * Excluded include ("\{!>header}") is dropped, argument of include is ignored. Includes must not form cycle.
+ * <p>
+ * Reads are lock-free and return immutable templates, registration is serialized.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+@ToString
+public final class PartialRegistry {
+    
+    private final String includePrefix;
+    
+    /**
+     * Templates as registered, guarded by this.
+     */
+    @ToString.Exclude private final Map<String, Template> registered = new HashMap<>();
+    
+    /**
+     * Names of templates that include partial directly, by partial name, guarded by this.
+     */
+    @ToString.Exclude private final Map<String, Set<String>> dependents = new HashMap<>();
+    
+    @ToString.Exclude private final Map<String, Template> linked = new ConcurrentHashMap<>();
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    @Accessors(fluent = true, chain = true) @Setter
+    public static class Builder {
+        
+        private String includePrefix = ">";
+        
+        public PartialRegistry build() {
+            if (this.includePrefix.isEmpty()) throw new IllegalArgumentException("Include prefix must not be empty");
+            return new PartialRegistry(this.includePrefix);
+        }
+        
+    }
+    
+    public static PartialRegistry inst() {
+        return PartialRegistry.builder().build();
+    }
+    
+    /**
+     * Parses template and registers it, see {@link #register(String, Template)}.
+     */
+    public Template register(String name, GSTParser parser, CharSequence template) {
+        return this.register(name, parser.parseTemplate(template));
+    }
+    
+    /**
+     * Registers or replaces template and links it and all templates that include it.
+     *
+     * @return linked template
+     * @throws PartialCycleException if template includes itself directly or through other templates, registry is not
+     *                               changed in this case
+     */
+    public synchronized Template register(String name, Template template) {
+        Template previous = this.registered.put(name, template);
+        Map<String, Template> relinked = new HashMap<>();
+        try {
+            Set<String> affected = this.affected(name);
+            for (String affectedName : affected) this.link(affectedName, affected, relinked, new LinkedHashSet<>());
+        } catch (PartialCycleException exception) {
+            if (previous == null) this.registered.remove(name);
+            else this.registered.put(name, previous);
+            throw exception;
+        }
+        if (previous != null) for (String include : this.includes(previous)) this.dependents.get(include).remove(name);
+        for (String include : this.includes(template)) this.dependents.computeIfAbsent(include, unused -> new HashSet<>()).add(name);
+        this.linked.putAll(relinked);
+        return relinked.get(name);
+    }
+    
+    /**
+     * Removes template, templates that include it are linked again with include kept as placeholder.
+     */
+    public synchronized void remove(String name) {
+        Template previous = this.registered.remove(name);
+        if (previous == null) return;
+        for (String include : this.includes(previous)) this.dependents.get(include).remove(name);
+        this.linked.remove(name);
+        Map<String, Template> relinked = new HashMap<>();
+        Set<String> affected = this.affected(name);
+        for (String affectedName : affected) this.link(affectedName, affected, relinked, new LinkedHashSet<>());
+        this.linked.putAll(relinked);
+    }
+    
+    /**
+     * @return linked template or null if template with this name is not registered
+     */
+    public @Nullable Template find(String name) {
+        return this.linked.get(name);
+    }
+    
+    /**
+     * Links template that is not registered against registered ones.
+     */
+    public Template link(Template template) {
+        Template.Builder builder = Template.builder();
+        for (GSTPart part : template) {
+            String include = this.include(part);
+            Template partial = include == null ? null : this.linked.get(include);
+            if (partial == null) {
+                if (!this.excludedInclude(part)) builder.add(part);
+            } else for (GSTPart partialPart : partial) builder.add(partialPart);
+        }
+        return builder.build();
+    }
+    
+    /**
+     * @return registered templates that include given template directly or transitively and the template itself if
+     *         it is registered
+     */
+    private Set<String> affected(String name) {
+        Set<String> affected = new LinkedHashSet<>();
+        Deque<String> queue = new ArrayDeque<>(List.of(name));
+        while (!queue.isEmpty()) {
+            String next = queue.poll();
+            if (affected.add(next)) queue.addAll(this.dependents.getOrDefault(next, Set.of()));
+        }
+        affected.removeIf(affectedName -> !this.registered.containsKey(affectedName));
+        return affected;
+    }
+    
+    /**
+     * Links template and affected partials it includes, partials that are not affected are taken from current linked
+     * templates.
+     *
+     * @param affected templates that must be linked again
+     * @param relinked templates linked in this registration
+     * @param linking templates that are being linked, for cycle detection
+     */
+    private Template link(String name, Set<String> affected, Map<String, Template> relinked, LinkedHashSet<String> linking) {
+        Template done = relinked.get(name);
+        if (done != null) return done;
+        if (!linking.add(name)) throw new PartialCycleException(List.copyOf(linking), name);
+        
+        Template.Builder builder = Template.builder();
+        for (GSTPart part : this.registered.get(name)) {
+            String include = this.include(part);
+            if (include == null || !this.registered.containsKey(include)) {
+                if (!this.excludedInclude(part)) builder.add(part);
+                continue;
+            }
+            if (this.excludedInclude(part)) continue;
+            Template partial = affected.contains(include) ? this.link(include, affected, relinked, linking) : this.linked.get(include);
+            for (GSTPart partialPart : partial) builder.add(partialPart);
+        }
+        
+        linking.remove(name);
+        Template result = builder.build();
+        relinked.put(name, result);
+        return result;
+    }
+    
+    private Set<String> includes(Template template) {
+        Set<String> includes = new HashSet<>();
+        for (GSTPart part : template) {
+            String include = this.include(part);
+            if (include != null) includes.add(include);
+        }
+        return includes;
+    }
+    
+    /**
+     * @return name of included template or null if part is not include
+     */
+    private @Nullable String include(GSTPart part) {
+        if (!(part instanceof Placeholder placeholder)) return null;
+        String key = placeholder.directData().key();
+        return key.startsWith(this.includePrefix) ? key.substring(this.includePrefix.length()) : null;
+    }
+    
+    private boolean excludedInclude(GSTPart part) {
+        return part instanceof Placeholder placeholder && placeholder.exclusion() && this.include(part) != null;
+    }
+    
+}
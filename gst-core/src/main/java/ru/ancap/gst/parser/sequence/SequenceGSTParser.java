@@ -0,0 +1,255 @@
+package ru.ancap.gst.parser.sequence;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.EscapingMode;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.GSTSink;
+import ru.ancap.gst.parser.SpecialSequenceSet;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+import ru.ancap.gst.parser.simple.exception.RegularCharacterEscapedException;
+import ru.ancap.gst.parser.simple.exception.UnexpectedSpecialCharacterException;
+import ru.ancap.gst.util.CharSequences;
+import ru.ancap.gst.util.FastCharIndex;
+import ru.ancap.gst.util.SourceFragment;
+import ru.ancap.gst.util.SourceRun;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Implementation of {@link SimpleGSTParser} syntax with string delimiters (see {@link SpecialSequenceSet}), for
+ * example "${key:argument}" or "{{key}}". With single character delimiters produces same results as
+ * {@link SimpleGSTParser}.
+ * <p>
+ * Characters are filtered by index of first characters of delimiters, delimiter is verified only when its first
+ * character is met, so scanning cost is the same as with single characters. When several delimiters match at the same
+ * position, the longest one is taken.
+ * <p>
+ * Escaping character before delimiter makes whole delimiter a regular text. Escaping character before anything else
+ * than delimiter or escaping character is an error, same as in {@link SimpleGSTParser}.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+@ToString @EqualsAndHashCode
+public class SequenceGSTParser implements GSTParser {
+    
+    private static final int OPENING   = 0;
+    private static final int CLOSING   = 1;
+    private static final int DELIMITER = 2;
+    private static final int EXCLUSION = 3;
+    private static final int NONE      = -1;
+    
+    private final SpecialSequenceSet specialSequenceSet;
+    private final EscapingMode escapingMode;
+    
+    /**
+     * Delimiters by role.
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final String[] delimiters;
+    
+    /**
+     * Roles that can be met in key, from the longest delimiter to the shortest.
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final int[] keyRoles;
+    
+    /**
+     * All roles, from the longest delimiter to the shortest.
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final int[] escapableRoles;
+    
+    /**
+     * First characters of delimiters and escaping character.
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final FastCharIndex firstCharactersIndex;
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    @Accessors(fluent = true, chain = true) @Setter
+    public static class Builder {
+        
+        private SpecialSequenceSet specialSequenceSet = SpecialSequenceSet.DEFAULT;
+        private EscapingMode escapingMode = EscapingMode.UNESCAPED_IS_SIMPLE_TEXT;
+        
+        /**
+         * @throws IllegalArgumentException if some delimiter is empty or starts with escaping character
+         */
+        public SequenceGSTParser build() {
+            SpecialSequenceSet set = this.specialSequenceSet;
+            String[] delimiters = {set.opening(), set.closing(), set.argumentDelimiter(), set.exclusionMarker()};
+            StringBuilder firstCharacters = new StringBuilder().append(set.escapingCharacter());
+            for (String delimiter : delimiters) {
+                if (delimiter.isEmpty()) throw new IllegalArgumentException("Delimiters must not be empty: "+set);
+                if (delimiter.charAt(0) == set.escapingCharacter()) throw new IllegalArgumentException("Delimiters must not start with escaping character: "+set);
+                if (firstCharacters.indexOf(String.valueOf(delimiter.charAt(0))) == -1) firstCharacters.append(delimiter.charAt(0));
+            }
+            Comparator<Integer> longestFirst = Comparator.comparingInt(role -> -delimiters[role].length());
+            return new SequenceGSTParser(
+                set,
+                this.escapingMode,
+                delimiters,
+                Arrays.stream(new Integer[]{EXCLUSION, DELIMITER, CLOSING, OPENING}).sorted(longestFirst).mapToInt(Integer::intValue).toArray(),
+                Arrays.stream(new Integer[]{OPENING, CLOSING, DELIMITER, EXCLUSION}).sorted(longestFirst).mapToInt(Integer::intValue).toArray(),
+                FastCharIndex.of(firstCharacters.toString().toCharArray())
+            );
+        }
+        
+    }
+    
+    public static SequenceGSTParser inst() {
+        return SequenceGSTParser.builder().build();
+    }
+    
+    /**
+     * Does not copy template, same as {@link SimpleGSTParser#parse(CharSequence, GSTSink)}.
+     */
+    @Override
+    public void parse(CharSequence template, GSTSink sink) {
+        ParseState state = new ParseState(template, sink);
+        String opening = this.delimiters[OPENING];
+        String closing = this.delimiters[CLOSING];
+        char escaping = this.specialSequenceSet.escapingCharacter();
+        
+        int length = template.length();
+        int index = 0;
+        while (index < length) {
+            boolean escaped = state.escapeNext;
+            state.escapeNext = false;
+            char char_ = template.charAt(index);
+            if (!escaped && !this.firstCharactersIndex.contains(char_)) {
+                int runEnd;
+                if (state.filled == null) {
+                    runEnd = this.textRunEnd(state, index + 1, length);
+                    state.text.take(index, runEnd);
+                } else {
+                    runEnd = this.firstCharactersIndex.indexIn(template, index + 1, length);
+                    state.filled.take(index, runEnd);
+                }
+                index = runEnd;
+                continue;
+            }
+            if (char_ == escaping) {
+                if (escaped) this.take(state, index, index + 1);
+                else state.escapeNext = true;
+                index++;
+                continue;
+            }
+            
+            if (state.filled == null) {
+                boolean canBePhByEscapingRule = (this.escapingMode == EscapingMode.UNESCAPED_IS_SIMPLE_TEXT) == escaped;
+                if (canBePhByEscapingRule && CharSequences.startsWith(template, index, opening)) {
+                    state.text.flush();
+                    state.filled = state.key;
+                    state.partStartIndex = index - (this.escapingMode == EscapingMode.UNESCAPED_IS_SIMPLE_TEXT ? 1 : 0);
+                    index += opening.length();
+                    continue;
+                }
+            }
+            if (escaped) {
+                int role = this.roleAt(template, index, this.escapableRoles);
+                if (role == NONE) throw new RegularCharacterEscapedException(template.toString(), index, char_);
+                int end = index + this.delimiters[role].length();
+                this.take(state, index, end);
+                index = end;
+                continue;
+            }
+            
+            int role = NONE;
+            if (state.filled == state.key) role = this.roleAt(template, index, this.keyRoles);
+            else if (state.filled == state.argument && CharSequences.startsWith(template, index, closing)) role = CLOSING;
+            int end = role == NONE ? index + 1 : index + this.delimiters[role].length();
+            switch (role) {
+                case NONE -> this.take(state, index, end);
+                case EXCLUSION -> state.exclusion = true;
+                case DELIMITER -> {
+                    state.filled = state.argument;
+                    state.hasArgument = true;
+                }
+                case CLOSING -> state.closePlaceholder(end, true);
+                default -> throw new UnexpectedSpecialCharacterException(template.toString(), index, char_);
+            }
+            index = end;
+        }
+        if (state.filled == null) state.text.flush();
+        else state.closePlaceholder(length, false);
+    }
+    
+    private void take(ParseState state, int from, int to) {
+        if (state.filled == null) state.text.take(from, to);
+        else state.filled.take(from, to);
+    }
+    
+    /**
+     * @param roles roles to check, from the longest delimiter to the shortest
+     * @return role of the longest delimiter in template at index or {@link #NONE}
+     */
+    private int roleAt(CharSequence template, int index, int[] roles) {
+        for (int role : roles) if (CharSequences.startsWith(template, index, this.delimiters[role])) return role;
+        return NONE;
+    }
+    
+    /**
+     * Same as in {@link SimpleGSTParser}, text can be interrupted only by escaping character and, if unescaped opening
+     * is placeholder, by first character of opening.
+     */
+    private int textRunEnd(ParseState state, int from, int to) {
+        if (state.nextEscaping < from) state.nextEscaping = CharSequences.indexOf(state.template, this.specialSequenceSet.escapingCharacter(), from, to);
+        if (this.escapingMode == EscapingMode.UNESCAPED_IS_SIMPLE_TEXT) return state.nextEscaping;
+        if (state.nextOpening < from) state.nextOpening = CharSequences.indexOf(state.template, this.delimiters[OPENING].charAt(0), from, to);
+        return Math.min(state.nextEscaping, state.nextOpening);
+    }
+    
+    private static class ParseState {
+        
+        public final CharSequence template;
+        public final GSTSink sink;
+        
+        public final SourceRun text;
+        public final SourceFragment key;
+        public final SourceFragment argument;
+        
+        /**
+         * Key or argument, null for text, which is filled directly.
+         */
+        public @Nullable SourceFragment filled;
+        public int partStartIndex;
+        public boolean exclusion;
+        public boolean hasArgument;
+        public boolean escapeNext;
+        
+        public int nextEscaping = -1;
+        public int nextOpening = -1;
+        
+        public ParseState(CharSequence template, GSTSink sink) {
+            this.template = template;
+            this.sink = sink;
+            this.text = new SourceRun(template, sink);
+            this.key = new SourceFragment(template);
+            this.argument = new SourceFragment(template);
+        }
+        
+        /**
+         * @param end exclusive end of placeholder in template
+         */
+        public void closePlaceholder(int end, boolean endExpected) {
+            this.sink.onPlaceholder(
+                this.template,
+                this.partStartIndex,
+                end,
+                this.key.string(),
+                this.hasArgument ? this.argument.string() : null,
+                this.exclusion,
+                endExpected
+            );
+            this.key.reset();
+            this.argument.reset();
+            this.exclusion = false;
+            this.hasArgument = false;
+            this.filled = null;
+        }
+        
+    }
+    
+}
\ No newline at end of file
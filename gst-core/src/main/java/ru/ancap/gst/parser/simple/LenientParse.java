@@ -0,0 +1,10 @@
+package ru.ancap.gst.parser.simple;
+
+import ru.ancap.gst.parser.diagnostic.Diagnostics;
+import ru.ancap.gst.parser.gst_structure.GSTPart;
+import ru.ancap.gst.util.LinkedObjects;
+
+/**
+ * Result of {@link SimpleGSTParser#parseLenient(CharSequence)}, template is valid if there are no diagnostics.
+ */
+public record LenientParse(LinkedObjects<GSTPart> parts, Diagnostics diagnostics) { }
\ No newline at end of file
@@ -0,0 +1,263 @@
+package ru.ancap.gst.parser.simple;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.GSTSink;
+import ru.ancap.gst.parser.simple.exception.IllegalGSTException;
+import ru.ancap.gst.parser.simple.exception.RegularCharacterEscapedException;
+import ru.ancap.gst.parser.simple.exception.UnexpectedSpecialCharacterException;
+import ru.ancap.gst.util.SourceRun;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses big templates with {@link SimpleGSTParser} on several threads, produces exactly the same parts and exceptions.
+ * Templates shorter than sequential threshold are parsed on calling thread.
+ * <p>
+ * Template is split into chunks that are parsed speculatively in parallel, each as if it started in text. Escaping
+ * does not depend on parse state, so chunk boundaries are never placed right after escaping character and escaping is
+ * always resolved. Then chunks are joined in order: when previous chunk ended in text, speculative result is correct
+ * as is, otherwise unfinished placeholder is parsed further sequentially until parse returns to text at the position
+ * where speculative parse is in text too, after that point speculative result is used again.
+ * <p>
+ * For invalid templates the same exception is thrown, but text passed to sink before it can be split differently.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+@ToString @EqualsAndHashCode
+public class ParallelGSTParser implements GSTParser {
+    
+    private final SimpleGSTParser parser;
+    private final ForkJoinPool pool;
+    private final int sequentialThreshold;
+    private final int minChunkLength;
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    @Accessors(fluent = true, chain = true) @Setter
+    public static class Builder {
+        
+        private SimpleGSTParser parser = SimpleGSTParser.inst();
+        private ForkJoinPool pool = ForkJoinPool.commonPool();
+        
+        /**
+         * Templates shorter than this are parsed sequentially.
+         */
+        private int sequentialThreshold = 1 << 16;
+        
+        /**
+         * Template is split into about 4 chunks per pool thread, but not shorter than this.
+         */
+        private int minChunkLength = 1 << 14;
+        
+        public ParallelGSTParser build() {
+            if (this.minChunkLength < 1) throw new IllegalArgumentException("Chunk length must be positive, got "+this.minChunkLength);
+            return new ParallelGSTParser(this.parser, this.pool, this.sequentialThreshold, this.minChunkLength);
+        }
+        
+    }
+    
+    public static ParallelGSTParser inst() {
+        return ParallelGSTParser.builder().build();
+    }
+    
+    @Override
+    public void parse(CharSequence template, GSTSink sink) {
+        int length = template.length();
+        if (length == 0 || length < this.sequentialThreshold) {
+            this.parser.parse(template, sink);
+            return;
+        }
+        
+        List<Chunk> chunks = this.split(template);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) tasks.add(this.pool.submit(chunk::parseSpeculatively));
+        for (ForkJoinTask<?> task : tasks) task.join();
+        
+        Output output = new Output(template, sink);
+        Chunk first = chunks.get(0);
+        first.emitFrom(output, 0);
+        first.rethrowFailure();
+        
+        // state that is continued sequentially and chunk whose recorder receives its parts
+        SimpleGSTParser.ParseState state = first.state;
+        Chunk owner = first;
+        for (Chunk chunk : chunks.subList(1, chunks.size())) {
+            if (state.filling == SimpleGSTParser.FillState.FILLING_TEXT) {
+                state.text.flush();
+                owner.emitFrom(output, 0);
+                state = chunk.state;
+                owner = chunk;
+                chunk.emitFrom(output, chunk.from);
+                chunk.rethrowFailure();
+                continue;
+            }
+            for (int index = chunk.from; index < chunk.to; index++) {
+                try {
+                    this.parser.feed(state, index, index + 1);
+                } catch (IllegalGSTException exception) {
+                    owner.emitFrom(output, 0);
+                    throw exception;
+                }
+                if (state.filling == SimpleGSTParser.FillState.FILLING_TEXT && !state.escapeNext && chunk.speculativelyInText(index + 1)) {
+                    state.text.flush();
+                    owner.emitFrom(output, 0);
+                    state = chunk.state;
+                    owner = chunk;
+                    chunk.emitFrom(output, index + 1);
+                    chunk.rethrowFailure();
+                    break;
+                }
+            }
+        }
+        this.parser.finish(state, length);
+        owner.emitFrom(output, 0);
+        output.text.flush();
+    }
+    
+    private List<Chunk> split(CharSequence template) {
+        int length = template.length();
+        char escaping = this.parser.specialCharacterSet().escapingCharacter();
+        int chunkLength = Math.max(this.minChunkLength, length / (this.pool.getParallelism() * 4));
+        
+        List<Chunk> chunks = new ArrayList<>();
+        int from = 0;
+        while (from < length) {
+            int to = Math.min(from + chunkLength, length);
+            while (to < length && template.charAt(to - 1) == escaping) to++;
+            chunks.add(new Chunk(this.parser, template, from, to));
+            from = to;
+        }
+        return chunks;
+    }
+    
+    private static class Chunk {
+        
+        public final SimpleGSTParser parser;
+        public final int from;
+        public final int to;
+        
+        public final List<Part> parts = new ArrayList<>();
+        public final SimpleGSTParser.ParseState state;
+        
+        /**
+         * Speculative parse is not valid after this index.
+         */
+        public @Nullable IllegalGSTException failure;
+        public int failureIndex = Integer.MAX_VALUE;
+        
+        /**
+         * First part that can contain not yet checked position.
+         */
+        private int checkedPart;
+        
+        public Chunk(SimpleGSTParser parser, CharSequence template, int from, int to) {
+            this.parser = parser;
+            this.from = from;
+            this.to = to;
+            this.state = new SimpleGSTParser.ParseState(template, new Recorder(this.parts));
+        }
+        
+        public void parseSpeculatively() {
+            try {
+                this.parser.feed(this.state, this.from, this.to);
+            } catch (IllegalGSTException exception) {
+                this.failure = exception;
+                this.failureIndex = switch (exception) {
+                    case RegularCharacterEscapedException regular -> regular.index();
+                    case UnexpectedSpecialCharacterException unexpected -> unexpected.index();
+                    default -> this.from;
+                };
+            }
+            if (this.failure == null && this.state.filling == SimpleGSTParser.FillState.FILLING_TEXT) this.state.text.flush();
+        }
+        
+        /**
+         * Positions must be checked in ascending order.
+         *
+         * @return true if speculative parse is in text and is not escaping next character at position
+         */
+        public boolean speculativelyInText(int position) {
+            if (position > this.failureIndex) return false;
+            while (this.checkedPart < this.parts.size() && this.parts.get(this.checkedPart).end() <= position) this.checkedPart++;
+            if (this.checkedPart < this.parts.size()) {
+                Part part = this.parts.get(this.checkedPart);
+                return part.key() == null || part.start() >= position;
+            }
+            return this.state.filling == SimpleGSTParser.FillState.FILLING_TEXT || this.state.partStartIndex >= position;
+        }
+        
+        /**
+         * Passes recorded parts after position to output, text that contains position is cut, and forgets all
+         * recorded parts.
+         */
+        public void emitFrom(Output output, int position) {
+            for (Part part : this.parts) {
+                if (part.end() <= position) continue;
+                if (part.key() == null) output.text.take(Math.max(part.start(), position), part.end());
+                else {
+                    output.text.flush();
+                    output.sink.onPlaceholder(output.template, part.start(), part.end(), part.key(), part.argument(), part.exclusion(), part.endExpected());
+                }
+            }
+            this.parts.clear();
+            this.checkedPart = 0;
+        }
+        
+        public void rethrowFailure() {
+            if (this.failure != null) throw this.failure;
+        }
+        
+    }
+    
+    /**
+     * @param key null for text
+     */
+    private record Part(int start, int end, @Nullable String key, @Nullable String argument, boolean exclusion, boolean endExpected) {}
+    
+    @RequiredArgsConstructor
+    private static class Recorder implements GSTSink {
+        
+        private final List<Part> parts;
+        
+        @Override
+        public void onText(CharSequence source, int start, int end) {
+            this.parts.add(new Part(start, end, null, null, false, false));
+        }
+        
+        @Override
+        public void onPlaceholder(CharSequence source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected) {
+            this.parts.add(new Part(start, end, key, argument, exclusion, endExpected));
+        }
+        
+        @Override
+        public boolean keepsSource() {
+            return false;
+        }
+        
+    }
+    
+    /**
+     * Joins text split at chunk boundaries, so sink gets exactly the same calls as from sequential parse.
+     */
+    private static class Output {
+        
+        public final CharSequence template;
+        public final GSTSink sink;
+        public final SourceRun text;
+        
+        public Output(CharSequence template, GSTSink sink) {
+            this.template = template;
+            this.sink = sink;
+            this.text = new SourceRun(template, sink);
+        }
+        
+    }
+    
+}
\ No newline at end of file
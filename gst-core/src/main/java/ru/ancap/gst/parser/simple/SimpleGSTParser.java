@@ -2,20 +2,21 @@ package ru.ancap.gst.parser.simple;
 
 import lombok.*;
 import lombok.experimental.Accessors;
-import ru.ancap.commons.parse.EscapingBuffer;
+import org.jetbrains.annotations.Nullable;
 import ru.ancap.gst.parser.EscapingMode;
 import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.GSTSink;
+import ru.ancap.gst.parser.PartsCollector;
 import ru.ancap.gst.parser.SpecialCharacterSet;
-import ru.ancap.gst.parser.gst_structure.DirectPlaceholderData;
-import ru.ancap.gst.parser.gst_structure.GSTPart;
-import ru.ancap.gst.parser.gst_structure.Placeholder;
-import ru.ancap.gst.parser.gst_structure.Text;
+import ru.ancap.gst.parser.diagnostic.Diagnostic;
+import ru.ancap.gst.parser.diagnostic.Diagnostics;
 import ru.ancap.gst.parser.simple.exception.RegularCharacterEscapedException;
 import ru.ancap.gst.parser.simple.exception.UnexpectedSpecialCharacterException;
+import ru.ancap.gst.parser.tree.TemplateTree;
+import ru.ancap.gst.util.CharSequences;
 import ru.ancap.gst.util.FastCharIndex;
-import ru.ancap.gst.util.LinkedObjects;
-
-import java.util.Optional;
+import ru.ancap.gst.util.SourceFragment;
+import ru.ancap.gst.util.SourceRun;
 
 /**
  * Simple implementation of GST parser with support of most basic features such as escaping and charset configuration.<br>
@@ -24,8 +25,8 @@ import java.util.Optional;
 @ToString @EqualsAndHashCode
 public class SimpleGSTParser implements GSTParser {
     
-    private final SpecialCharacterSet specialCharacterSet;
-    private final EscapingMode escapingMode;
+    @Accessors(fluent = true) @Getter private final SpecialCharacterSet specialCharacterSet;
+    @Accessors(fluent = true) @Getter private final EscapingMode escapingMode;
     private final FastCharIndex specialCharactersIndex;
     
     public static Builder builder() {
@@ -52,106 +53,185 @@ public class SimpleGSTParser implements GSTParser {
         return SimpleGSTParser.builder().build();
     }
     
+    /**
+     * Does not copy template, text is passed as offsets into it and keys with arguments are copied in bulk.
+     * <p>
+     * Only special and escaped characters are handled one by one, runs of regular characters are found
+     * with bulk scan and taken at once (see {@link #textRunEnd(ParseState, int, int)}).
+     */
     @Override
-    public LinkedObjects<GSTPart> parse(String template) {
-        char[] string = template.toCharArray();
-        
-        EscapingBuffer escapingBuffer = new EscapingBuffer();
-        
-        ParseState state = new ParseState();
-        
-        int partStartIndex = 0;
-        
-        for (int index = 0; index < string.length; index++) {
-            escapingBuffer.step();
-            char char_ = string[index];
-            if (char_ == this.specialCharacterSet.escapingCharacter() && (!escapingBuffer.currentlyEscaped())) {
-                escapingBuffer.escapeNext();
-                if (state.filling == FillState.FILLING_ID || state.filling == FillState.FILLING_ARGUMENT) state.specialPartBuilder.append(char_);
+    public void parse(CharSequence template, GSTSink sink) {
+        ParseState state = new ParseState(template, sink);
+        this.feed(state, 0, template.length());
+        this.finish(state, template.length());
+    }
+    
+    /**
+     * Lenient variant of {@link #parse(CharSequence)}, recovers from errors instead of throwing exceptions: offending
+     * characters are kept literally where they are and diagnostic is collected (see {@link Diagnostic.Kind} for
+     * recovery details).
+     */
+    public LenientParse parseLenient(CharSequence template) {
+        PartsCollector collector = new PartsCollector();
+        Diagnostics diagnostics = new Diagnostics();
+        this.parseLenient(template, collector, diagnostics);
+        return new LenientParse(collector.result(), diagnostics);
+    }
+    
+    /**
+     * Push-style variant of {@link #parseLenient(CharSequence)}.
+     */
+    public void parseLenient(CharSequence template, GSTSink sink, Diagnostics diagnostics) {
+        ParseState state = new ParseState(template, sink);
+        state.diagnostics = diagnostics;
+        this.feed(state, 0, template.length());
+        this.finish(state, template.length());
+    }
+    
+    /**
+     * Variant of {@link #parse(CharSequence)} where arguments can contain placeholders, for example "\{fmt:\{price}}"
+     * (or "{fmt:{price}}" with {@link EscapingMode#UNESCAPED_IS_PLACEHOLDER}). In argument opening starts nested
+     * placeholder by the same escaping rule as in text and unescaped closing closes the innermost placeholder, so
+     * with {@link EscapingMode#UNESCAPED_IS_SIMPLE_TEXT} "\{" in argument is no longer literal. Other rules are the same.
+     * <p>
+     * Templates without nested placeholders give the same parts as {@link #parseTemplate(CharSequence)}.
+     */
+    public TemplateTree parseTree(CharSequence template) {
+        return TreeParse.parse(this, template);
+    }
+    
+    /**
+     * Handles characters of template in range, can be called repeatedly with adjacent ranges, all parse state
+     * is kept in {@link ParseState} between calls.
+     *
+     * @param from inclusive
+     * @param to exclusive
+     */
+    void feed(ParseState state, int from, int to) {
+        CharSequence template = state.template;
+        for (int index = from; index < to; index++) {
+            boolean escaped = state.escapeNext;
+            state.escapeNext = false;
+            char char_ = template.charAt(index);
+            if (!escaped && !this.specialCharactersIndex.contains(char_)) {
+                int runEnd;
+                if (state.filling == FillState.FILLING_TEXT) {
+                    runEnd = this.textRunEnd(state, index + 1, to);
+                    state.text.take(index, runEnd);
+                } else {
+                    runEnd = this.specialCharactersIndex.indexIn(template, index + 1, to);
+                    state.filled.take(index, runEnd);
+                }
+                index = runEnd - 1;
+                continue;
+            }
+            if (char_ == this.specialCharacterSet.escapingCharacter() && !escaped) {
+                state.escapeNext = true;
+                continue;
+            }
+            boolean isSpecial = !escaped || this.specialCharactersIndex.contains(char_); // unescaped regular characters are handled above
+            if (escaped && !isSpecial) {
+                if (state.diagnostics == null) throw new RegularCharacterEscapedException(template.toString(), index, char_);
+                state.diagnostics.add(Diagnostic.Kind.REGULAR_CHARACTER_ESCAPED, index, char_);
+                if (state.filling == FillState.FILLING_TEXT) state.text.take(index - 1, index + 1);
+                else state.filled.take(index - 1, index + 1);
                 continue;
             }
-            boolean isSpecial = this.specialCharactersIndex.contains(char_);
-            if (escapingBuffer.currentlyEscaped() && !isSpecial) throw new RegularCharacterEscapedException(template, index, char_);
             
             switch (state.filling) {
                 case FILLING_TEXT -> {
                     boolean shouldEscapePh = this.escapingMode == EscapingMode.UNESCAPED_IS_SIMPLE_TEXT;
-                    boolean canBePhByEscapingRule = shouldEscapePh == escapingBuffer.currentlyEscaped();
+                    boolean canBePhByEscapingRule = shouldEscapePh == escaped;
                     if (this.specialCharacterSet.opening() == char_ && canBePhByEscapingRule) {
-                        state.filling = FillState.FILLING_ID;
-                        if (!state.textBuffer.isEmpty()) state.parsedGST.add(new Text(partStartIndex, state.textBuffer.toString()));
-                        partStartIndex = index - (this.escapingMode == EscapingMode.UNESCAPED_IS_SIMPLE_TEXT ? 1 : 0);
-                        state.specialPartBuilder = new StringBuilder(escapingBuffer.currentlyEscaped() ? "\\"+char_ : ""+char_);
-                        state.placeholderIdBuilder = new StringBuilder(16);
+                        state.text.flush();
+                        state.fill(FillState.FILLING_ID);
+                        state.partStartIndex = index - (this.escapingMode == EscapingMode.UNESCAPED_IS_SIMPLE_TEXT ? 1 : 0);
                         continue;
                     }
-                    state.textBuffer.append(char_);
+                    state.text.take(index);
                 }
                 case FILLING_ID -> {
-                    if (!escapingBuffer.currentlyEscaped()) {
+                    if (!escaped) {
                         if (char_ == this.specialCharacterSet.exclusionChar()) {
-                            state.specialPartBuilder.append(char_);
                             state.fillingExclusion = true;
                             continue;
                         }
                         if (char_ == this.specialCharacterSet.argumentDelimiter()) {
-                            state.filling = FillState.FILLING_ARGUMENT;
-                            state.specialPartBuilder.append(char_);
-                            state.argumentBuilder = new StringBuilder(20);
+                            state.fill(FillState.FILLING_ARGUMENT);
                             state.hasArgument = true;
                             continue;
                         }
                         if (char_ == this.specialCharacterSet.closing()) {
-                            state.specialPartBuilder.append(char_);
-                            this.closePlaceholder(state, partStartIndex, true);
-                            partStartIndex = index+1;
+                            this.closePlaceholder(state, index+1, true);
+                            continue;
+                        }
+                        if (isSpecial) {
+                            if (state.diagnostics == null) throw new UnexpectedSpecialCharacterException(template.toString(), index, char_);
+                            state.diagnostics.add(Diagnostic.Kind.UNEXPECTED_SPECIAL_CHARACTER, index, char_);
+                            state.nextPart(FillState.FILLING_TEXT);
+                            state.text.take(state.partStartIndex, index);
+                            index--; // character is handled again in text
                             continue;
                         }
-                        if (isSpecial) throw new UnexpectedSpecialCharacterException(template, index, char_);
                     }
-                    state.specialPartBuilder.append(char_);
-                    state.placeholderIdBuilder.append(char_);
+                    state.key.take(index);
                 }
                 case FILLING_ARGUMENT -> {
-                    if (!escapingBuffer.currentlyEscaped()) {
+                    if (!escaped) {
                         if (char_ == this.specialCharacterSet.closing()) {
-                            state.specialPartBuilder.append(char_);
-                            this.closePlaceholder(state, partStartIndex, true);
-                            partStartIndex = index+1;
+                            this.closePlaceholder(state, index+1, true);
                             continue;
                         }
                     }
-                    state.specialPartBuilder.append(char_);
-                    state.argumentBuilder.append(char_);
+                    state.argument.take(index);
                 }
             }
         }
+    }
+    
+    /**
+     * @param end template length
+     */
+    void finish(ParseState state, int end) {
         switch (state.filling) {
-            case FILLING_TEXT -> { if (!state.textBuffer.isEmpty()) state.parsedGST.add(new Text(partStartIndex, state.textBuffer.toString())); }
-            case FILLING_ID, FILLING_ARGUMENT -> this.closePlaceholder(state, partStartIndex, false);
+            case FILLING_TEXT -> state.text.flush();
+            case FILLING_ID, FILLING_ARGUMENT -> this.closePlaceholder(state, end, false);
         }
-        return state.parsedGST;
     }
     
-    private void closePlaceholder(ParseState state, int index, boolean endExpected) {
-        state.parsedGST.add(new Placeholder(
-            new DirectPlaceholderData(
-                state.placeholderIdBuilder.toString(),
-                state.hasArgument ?
-                    Optional.of(state.argumentBuilder.toString()) :
-                    Optional.empty(),
-                new Text(
-                    index,
-                    state.specialPartBuilder.toString()
-                )
-            ),
+    /**
+     * Text can be interrupted only by escaping character and, if unescaped opening is placeholder, by opening, so text
+     * runs are searched with {@link CharSequences#indexOf(CharSequence, char, int, int)} (vectorized for Strings). Found
+     * positions are remembered until passed, so each of these characters is searched through range only once.
+     * Keys and arguments are short, so they are scanned with special characters index.
+     *
+     * @param to exclusive end of handled range
+     * @return exclusive end of run of characters that can be taken to text without handling
+     */
+    private int textRunEnd(ParseState state, int from, int to) {
+        if (state.nextEscaping < from) state.nextEscaping = CharSequences.indexOf(state.template, this.specialCharacterSet.escapingCharacter(), from, to);
+        if (this.escapingMode == EscapingMode.UNESCAPED_IS_SIMPLE_TEXT) return Math.min(state.nextEscaping, to);
+        if (state.nextOpening < from) state.nextOpening = CharSequences.indexOf(state.template, this.specialCharacterSet.opening(), from, to);
+        return Math.min(Math.min(state.nextEscaping, state.nextOpening), to);
+    }
+    
+    /**
+     * @param end exclusive end of placeholder in template
+     */
+    private void closePlaceholder(ParseState state, int end, boolean endExpected) {
+        state.sink.onPlaceholder(
+            state.template,
+            state.partStartIndex,
+            end,
+            state.key.string(),
+            state.hasArgument ? state.argument.string() : null,
             state.fillingExclusion,
             endExpected
-        ));
+        );
         state.nextPart(FillState.FILLING_TEXT);
     }
     
-    private enum FillState {
+    enum FillState {
         
         FILLING_TEXT,
         FILLING_ID,
@@ -159,33 +239,59 @@ public class SimpleGSTParser implements GSTParser {
         
     }
     
-    private static class ParseState {
+    static class ParseState {
         
-        public LinkedObjects<GSTPart> parsedGST;
+        public final CharSequence template;
+        public final GSTSink sink;
+        
+        public final SourceRun text;
+        public final SourceFragment key;
+        public final SourceFragment argument;
         
         public FillState filling;
-        public StringBuilder textBuffer;
-        public StringBuilder placeholderIdBuilder;
-        public StringBuilder argumentBuilder;
-        public StringBuilder specialPartBuilder;
+        /**
+         * Key or argument, text is filled directly.
+         */
+        public @Nullable SourceFragment filled;
+        public int partStartIndex;
         public boolean fillingExclusion;
         public boolean hasArgument;
+        public boolean escapeNext;
+        
+        public int nextEscaping = -1;
+        public int nextOpening = -1;
         
-        public ParseState() {
-            this.parsedGST = new LinkedObjects<>();
+        /**
+         * Null in strict mode.
+         */
+        public @Nullable Diagnostics diagnostics;
+        
+        public ParseState(CharSequence template, GSTSink sink) {
+            this.template = template;
+            this.sink = sink;
+            this.text = new SourceRun(template, sink);
+            this.key = new SourceFragment(template);
+            this.argument = new SourceFragment(template);
             this.nextPart(FillState.FILLING_TEXT);
         }
         
         public void nextPart(FillState nextFilling) {
-            this.filling = nextFilling;
-            this.textBuffer = new StringBuilder();
-            this.placeholderIdBuilder = new StringBuilder();
-            this.argumentBuilder = new StringBuilder();
-            this.specialPartBuilder = new StringBuilder();
+            this.fill(nextFilling);
+            this.key.reset();
+            this.argument.reset();
             this.fillingExclusion = false;
             this.hasArgument = false;
         }
         
+        public void fill(FillState filling) {
+            this.filling = filling;
+            this.filled = switch (filling) {
+                case FILLING_TEXT     -> null;
+                case FILLING_ID       -> this.key;
+                case FILLING_ARGUMENT -> this.argument;
+            };
+        }
+        
     }
     
 }
\ No newline at end of file
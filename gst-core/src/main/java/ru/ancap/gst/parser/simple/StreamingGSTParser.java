@@ -0,0 +1,211 @@
+package ru.ancap.gst.parser.simple;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.GSTSink;
+import ru.ancap.gst.parser.PartsCollector;
+import ru.ancap.gst.parser.simple.exception.RegularCharacterEscapedException;
+import ru.ancap.gst.parser.simple.exception.UnexpectedSpecialCharacterException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Streaming variant of {@link SimpleGSTParser}, reads template in chunks of fixed size and passes parts to sink as
+ * soon as they are complete, so template is never held in memory as a whole. Parse state (escaping, partial key and
+ * argument) is carried between chunks, so results are the same as of {@link SimpleGSTParser#parse(CharSequence, GSTSink)}
+ * except for text being additionally split at chunk boundaries.
+ * <p>
+ * Memory use is bounded by chunk size plus length of longest placeholder: characters are kept only while they belong
+ * to unfinished placeholder, buffer grows only if placeholder does not fit into it.
+ * <p>
+ * Indices passed to sink are indices in whole template, but source contains only characters of current window, which
+ * is reused after sink call returns. Sinks that keep views into source (such as {@link PartsCollector}, see
+ * {@link GSTSink#keepsSource()}) are passed a copy of reported part instead, so they work the same as with whole
+ * template. Exceptions contain only the window content as template, and index in exception is index in it.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+@ToString @EqualsAndHashCode
+public class StreamingGSTParser {
+    
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+    
+    private final SimpleGSTParser parser;
+    private final int chunkSize;
+    
+    public static StreamingGSTParser of(SimpleGSTParser parser, int chunkSize) {
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive, got "+chunkSize);
+        return new StreamingGSTParser(parser, chunkSize);
+    }
+    
+    public static StreamingGSTParser of(SimpleGSTParser parser) {
+        return StreamingGSTParser.of(parser, DEFAULT_CHUNK_SIZE);
+    }
+    
+    public static StreamingGSTParser inst() {
+        return StreamingGSTParser.of(SimpleGSTParser.inst());
+    }
+    
+    /**
+     * Does not close reader.
+     */
+    public void parse(Reader reader, GSTSink sink) throws IOException {
+        Window window = new Window(this.chunkSize);
+        SimpleGSTParser.ParseState state = new SimpleGSTParser.ParseState(window, sink.keepsSource() ? new MaterializingSink(sink) : sink);
+        try {
+            while (true) {
+                window.compact(this.retainedFrom(state, window.end()));
+                int read = window.fill(reader);
+                if (read == -1) break;
+                this.parser.feed(state, window.end() - read, window.end());
+            }
+            this.parser.finish(state, window.end());
+        } catch (RegularCharacterEscapedException exception) {
+            throw new RegularCharacterEscapedException(exception.gst(), exception.index() - window.offset, exception.escapedCharacter());
+        } catch (UnexpectedSpecialCharacterException exception) {
+            throw new UnexpectedSpecialCharacterException(exception.gst(), exception.index() - window.offset, exception.illegalSpecialCharacter());
+        }
+    }
+    
+    /**
+     * Decodes channel content with charset on the fly, does not close channel.
+     */
+    public void parse(ReadableByteChannel channel, Charset charset, GSTSink sink) throws IOException {
+        this.parse(Channels.newReader(channel, charset.newDecoder(), this.chunkSize), sink);
+    }
+    
+    /**
+     * Passes pending text to sink, so only characters of unfinished part have to be kept.
+     *
+     * @return first template index that still can be needed
+     */
+    private int retainedFrom(SimpleGSTParser.ParseState state, int end) {
+        if (state.filling != SimpleGSTParser.FillState.FILLING_TEXT) return state.partStartIndex;
+        state.text.flush();
+        return state.escapeNext ? end - 1 : end; // escaping character can become start of placeholder
+    }
+    
+    /**
+     * Passes copies of reported window ranges instead of window itself, which is reused after callback returns.
+     */
+    @RequiredArgsConstructor
+    private static class MaterializingSink implements GSTSink {
+        
+        private final GSTSink sink;
+        
+        @Override
+        public void onText(CharSequence source, int start, int end) {
+            this.sink.onText(new Materialized(source, start, end), start, end);
+        }
+        
+        @Override
+        public void onPlaceholder(CharSequence source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected) {
+            this.sink.onPlaceholder(new Materialized(source, start, end), start, end, key, argument, exclusion, endExpected);
+        }
+        
+    }
+    
+    /**
+     * Copy of template range, indexed with template indices. Only characters from {@link #offset} to {@link #length()}
+     * are available.
+     */
+    private static class Materialized implements CharSequence {
+        
+        private final String string;
+        private final int offset;
+        
+        public Materialized(CharSequence source, int start, int end) {
+            this.string = source.subSequence(start, end).toString();
+            this.offset = start;
+        }
+        
+        @Override
+        public int length() {
+            return this.offset + this.string.length();
+        }
+        
+        @Override
+        public char charAt(int index) {
+            return this.string.charAt(index - this.offset);
+        }
+        
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return this.string.substring(start - this.offset, end - this.offset);
+        }
+        
+        @Override
+        public String toString() {
+            return this.string;
+        }
+        
+    }
+    
+    /**
+     * Sliding window over template, indexed with template indices. Only characters from {@link #offset} to
+     * {@link #length()} are available.
+     */
+    private static class Window implements CharSequence {
+        
+        private char[] buffer;
+        private int offset;
+        private int count;
+        
+        public Window(int chunkSize) {
+            this.buffer = new char[chunkSize];
+        }
+        
+        public int end() {
+            return this.offset + this.count;
+        }
+        
+        /**
+         * Drops characters before index, grows buffer if rest does not leave space for new characters.
+         */
+        public void compact(int from) {
+            int retained = this.end() - from;
+            char[] target = retained == this.buffer.length ? new char[this.buffer.length * 2] : this.buffer;
+            System.arraycopy(this.buffer, from - this.offset, target, 0, retained);
+            this.buffer = target;
+            this.offset = from;
+            this.count = retained;
+        }
+        
+        /**
+         * @return amount of read characters or -1 if reader is exhausted
+         */
+        public int fill(Reader reader) throws IOException {
+            int read = reader.read(this.buffer, this.count, this.buffer.length - this.count);
+            if (read > 0) this.count += read;
+            return read;
+        }
+        
+        @Override
+        public int length() {
+            return this.end();
+        }
+        
+        @Override
+        public char charAt(int index) {
+            return this.buffer[index - this.offset];
+        }
+        
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(this.buffer, start - this.offset, end - start);
+        }
+        
+        @Override
+        public String toString() {
+            return new String(this.buffer, 0, this.count);
+        }
+        
+    }
+    
+}
\ No newline at end of file
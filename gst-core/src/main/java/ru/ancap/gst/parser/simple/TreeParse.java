@@ -0,0 +1,189 @@
+package ru.ancap.gst.parser.simple;
+
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.EscapingMode;
+import ru.ancap.gst.parser.SpecialCharacterSet;
+import ru.ancap.gst.parser.gst_structure.DirectPlaceholderData;
+import ru.ancap.gst.parser.gst_structure.Placeholder;
+import ru.ancap.gst.parser.gst_structure.Text;
+import ru.ancap.gst.parser.simple.exception.RegularCharacterEscapedException;
+import ru.ancap.gst.parser.simple.exception.UnexpectedSpecialCharacterException;
+import ru.ancap.gst.parser.tree.PlaceholderNode;
+import ru.ancap.gst.parser.tree.TemplateTree;
+import ru.ancap.gst.parser.tree.TextNode;
+import ru.ancap.gst.parser.tree.TreeNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Builds {@link TemplateTree} for {@link SimpleGSTParser#parseTree(CharSequence)}. Rules are the same as in
+ * {@link SimpleGSTParser#parse(CharSequence, ru.ancap.gst.parser.GSTSink)}, except that in argument opening starts
+ * nested placeholder by the same escaping rule as in text, and closing closes the innermost placeholder. Template is
+ * handled character by character, nested arguments are rare and short.
+ */
+final class TreeParse {
+    
+    private final SpecialCharacterSet set;
+    private final EscapingMode mode;
+    private final String template;
+    
+    /**
+     * Open placeholders, the innermost is first.
+     */
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+    private final Level root = new Level();
+    
+    private TreeParse(SimpleGSTParser parser, String template) {
+        this.set = parser.specialCharacterSet();
+        this.mode = parser.escapingMode();
+        this.template = template;
+    }
+    
+    static TemplateTree parse(SimpleGSTParser parser, CharSequence template) {
+        TreeParse parse = new TreeParse(parser, template.toString());
+        parse.feed();
+        return parse.root.nodes.isEmpty() ? TemplateTree.EMPTY : new TemplateTree(parse.root.nodes);
+    }
+    
+    private void feed() {
+        String template = this.template;
+        boolean escapeNext = false;
+        for (int index = 0; index < template.length(); index++) {
+            char char_ = template.charAt(index);
+            boolean escaped = escapeNext;
+            escapeNext = false;
+            if (!escaped && char_ == this.set.escapingCharacter()) {
+                escapeNext = true;
+                continue;
+            }
+            boolean special = this.isSpecial(char_);
+            if (escaped && !special) throw new RegularCharacterEscapedException(template, index, char_);
+            
+            Frame frame = this.frames.peek();
+            if (frame != null && frame.inKey) {
+                if (!escaped) {
+                    if (char_ == this.set.exclusionChar()) {
+                        frame.exclusion = true;
+                        continue;
+                    }
+                    if (char_ == this.set.argumentDelimiter()) {
+                        frame.inKey = false;
+                        frame.argument = new Level();
+                        frame.argumentStart = index + 1;
+                        continue;
+                    }
+                    if (char_ == this.set.closing()) {
+                        this.close(index + 1, true);
+                        continue;
+                    }
+                    if (special) throw new UnexpectedSpecialCharacterException(template, index, char_);
+                }
+                frame.key.append(char_);
+                continue;
+            }
+            
+            //noinspection DataFlowIssue because argument is set when key is finished
+            Level level = frame == null ? this.root : frame.argument;
+            boolean canBePhByEscapingRule = (this.mode == EscapingMode.UNESCAPED_IS_SIMPLE_TEXT) == escaped;
+            if (char_ == this.set.opening() && canBePhByEscapingRule) {
+                level.flush();
+                this.frames.push(new Frame(index - (this.mode == EscapingMode.UNESCAPED_IS_SIMPLE_TEXT ? 1 : 0)));
+                continue;
+            }
+            if (frame != null && !escaped && char_ == this.set.closing()) {
+                this.close(index + 1, true);
+                continue;
+            }
+            level.take(escaped ? index - 1 : index, char_);
+        }
+        while (!this.frames.isEmpty()) this.close(template.length(), false);
+        this.root.flush();
+    }
+    
+    private boolean isSpecial(char char_) {
+        return char_ == this.set.opening()
+            || char_ == this.set.closing()
+            || char_ == this.set.argumentDelimiter()
+            || char_ == this.set.exclusionChar()
+            || char_ == this.set.escapingCharacter();
+    }
+    
+    /**
+     * @param end exclusive end of placeholder in template
+     */
+    private void close(int end, boolean endExpected) {
+        Frame frame = this.frames.pop();
+        Level parent = this.frames.isEmpty() ? this.root : this.frames.peek().argument;
+        
+        String argument = null;
+        TemplateTree argumentTree = null;
+        if (frame.argument != null) {
+            if (frame.argument.nested) {
+                frame.argument.flush();
+                argument = this.template.substring(frame.argumentStart, endExpected ? end - 1 : end);
+                argumentTree = new TemplateTree(frame.argument.nodes);
+            } else argument = frame.argument.text.toString();
+        }
+        Placeholder placeholder = new Placeholder(
+            new DirectPlaceholderData(frame.key.toString(), Optional.ofNullable(argument), new Text(frame.start, this.template.substring(frame.start, end))),
+            frame.exclusion,
+            endExpected
+        );
+        //noinspection DataFlowIssue because parent of nested placeholder is in argument
+        parent.nested = true;
+        parent.nodes.add(new PlaceholderNode(placeholder, argumentTree));
+    }
+    
+    /**
+     * Nodes of template or of argument.
+     */
+    private static class Level {
+        
+        public final List<TreeNode> nodes = new ArrayList<>();
+        public final StringBuilder text = new StringBuilder();
+        public int textStart = -1;
+        
+        /**
+         * Level has placeholder.
+         */
+        public boolean nested;
+        
+        /**
+         * @param start index of character, or of escaping character before it, text starts there if it is empty
+         */
+        public void take(int start, char char_) {
+            if (this.text.isEmpty()) this.textStart = start;
+            this.text.append(char_);
+        }
+        
+        public void flush() {
+            if (this.text.isEmpty()) return;
+            this.nodes.add(new TextNode(new Text(this.textStart, this.text.toString())));
+            this.text.setLength(0);
+        }
+        
+    }
+    
+    private static class Frame {
+        
+        public final int start;
+        public final StringBuilder key = new StringBuilder();
+        public boolean inKey = true;
+        public boolean exclusion;
+        
+        /**
+         * Null if placeholder has no argument.
+         */
+        public @Nullable Level argument;
+        public int argumentStart;
+        
+        public Frame(int start) {
+            this.start = start;
+        }
+        
+    }
+    
+}
\ No newline at end of file
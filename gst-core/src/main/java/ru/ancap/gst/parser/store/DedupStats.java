@@ -0,0 +1,25 @@
+package ru.ancap.gst.parser.store;
+
+/**
+ * Snapshot of {@link TemplateStore} state, counts only templates that are not released yet. Bytes are rough estimate
+ * of segments with their strings for 64-bit JVM with compressed oops.
+ *
+ * @param segmentReferences parts of all templates
+ * @param distinctSegments segments in pool
+ * @param bytesWithoutDedup estimated bytes of segments if every template had its own copies
+ * @param bytesWithDedup estimated bytes of segments in pool
+ */
+public record DedupStats(long templates, long segmentReferences, long distinctSegments, long bytesWithoutDedup, long bytesWithDedup) {
+    
+    /**
+     * @return how many parts share one segment on average
+     */
+    public double dedupRatio() {
+        return this.distinctSegments == 0 ? 1 : (double) this.segmentReferences / this.distinctSegments;
+    }
+    
+    public long bytesSaved() {
+        return this.bytesWithoutDedup - this.bytesWithDedup;
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,26 @@
+package ru.ancap.gst.parser.store;
+
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.gst_structure.DirectPlaceholderData;
+import ru.ancap.gst.parser.gst_structure.Placeholder;
+import ru.ancap.gst.parser.gst_structure.Text;
+
+import java.util.Optional;
+
+/**
+ * @param originalPart original representation of placeholder in template
+ */
+public record PlaceholderSegment(String key, @Nullable String argument, boolean exclusion, boolean endExpected, String originalPart) implements Segment {
+    
+    /**
+     * @param index index of placeholder in template
+     */
+    public Placeholder toPlaceholder(int index) {
+        return new Placeholder(
+            new DirectPlaceholderData(this.key, Optional.ofNullable(this.argument), new Text(index, this.originalPart)),
+            this.exclusion,
+            this.endExpected
+        );
+    }
+    
+}
\ No newline at end of file
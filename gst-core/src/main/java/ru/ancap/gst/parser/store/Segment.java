@@ -0,0 +1,7 @@
+package ru.ancap.gst.parser.store;
+
+/**
+ * Part of stored template without its position, equal segments of all templates in {@link TemplateStore} are the
+ * same instance.
+ */
+public sealed interface Segment permits TextSegment, PlaceholderSegment { }
\ No newline at end of file
@@ -0,0 +1,67 @@
+package ru.ancap.gst.parser.store;
+
+import ru.ancap.gst.parser.gst_structure.Template;
+import ru.ancap.gst.parser.gst_structure.Text;
+
+import java.lang.ref.Cleaner;
+
+/**
+ * Template from {@link TemplateStore}, parts are shared segments with positions of this template.
+ */
+public final class StoredTemplate {
+    
+    private final Segment[] segments;
+    private final int[] indices;
+    private final Cleaner.Cleanable cleanable;
+    
+    /**
+     * @param release action that releases segments, must not refer to template
+     */
+    StoredTemplate(Segment[] segments, int[] indices, Cleaner cleaner, Runnable release) {
+        this.segments = segments;
+        this.indices = indices;
+        this.cleanable = cleaner.register(this, release);
+    }
+    
+    public int size() {
+        return this.segments.length;
+    }
+    
+    public Segment segment(int part) {
+        return this.segments[part];
+    }
+    
+    /**
+     * @return index of part in original template
+     */
+    public int index(int part) {
+        return this.indices[part];
+    }
+    
+    /**
+     * @return false if template ended before last placeholder was closed
+     */
+    public boolean endExpected() {
+        return this.segments.length == 0 || !(this.segments[this.segments.length - 1] instanceof PlaceholderSegment placeholder) || placeholder.endExpected();
+    }
+    
+    public Template toTemplate() {
+        Template.Builder builder = Template.builder();
+        for (int part = 0; part < this.segments.length; part++) {
+            builder.add(switch (this.segments[part]) {
+                case TextSegment text -> new Text(this.indices[part], text.text());
+                case PlaceholderSegment placeholder -> placeholder.toPlaceholder(this.indices[part]);
+            });
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Releases segments of this template in store, template must not be used after that. Templates that are not
+     * released explicitly are released when they become unreachable. Repeated calls do nothing.
+     */
+    public void release() {
+        this.cleanable.clean();
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,153 @@
+package ru.ancap.gst.parser.store;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.gst_structure.GSTPart;
+import ru.ancap.gst.parser.gst_structure.Placeholder;
+import ru.ancap.gst.parser.gst_structure.Template;
+import ru.ancap.gst.parser.gst_structure.Text;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+
+import java.lang.ref.Cleaner;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps a lot of templates with repeated parts (common prefixes, suffixes, colour codes, placeholders) in shared
+ * pool of hash-consed segments: every text part and every placeholder is stored once, templates keep only references
+ * to segments and their positions. Text is deduplicated by whole text parts between placeholders.
+ * <p>
+ * Segment stays in pool while at least one template refers to it. Template is released explicitly with
+ * {@link StoredTemplate#release()} or automatically when it becomes unreachable, so store can be used both with
+ * explicit lifecycle, like reloaded message bundles, and with weak one. Store is thread-safe.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+@ToString
+public class TemplateStore {
+    
+    private static final Cleaner CLEANER = Cleaner.create();
+    
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int TEXT_SEGMENT = 16;
+    private static final int PLACEHOLDER_SEGMENT = 32;
+    
+    private final GSTParser parser;
+    
+    /**
+     * Pool and counters are guarded by this.
+     */
+    @ToString.Exclude private final Map<Segment, Pooled> pool = new HashMap<>();
+    @ToString.Exclude private long templates;
+    @ToString.Exclude private long references;
+    @ToString.Exclude private long bytesWithoutDedup;
+    @ToString.Exclude private long bytesWithDedup;
+    
+    public static TemplateStore of(GSTParser parser) {
+        return new TemplateStore(parser);
+    }
+    
+    public static TemplateStore inst() {
+        return TemplateStore.of(SimpleGSTParser.inst());
+    }
+    
+    public StoredTemplate store(CharSequence template) {
+        Template parsed = this.parser.parseTemplate(template);
+        Segment[] segments = new Segment[parsed.size()];
+        int[] indices = new int[parsed.size()];
+        for (int part = 0; part < parsed.size(); part++) {
+            GSTPart parsedPart = parsed.get(part);
+            switch (parsedPart) {
+                case Text text -> {
+                    segments[part] = new TextSegment(text.string());
+                    indices[part] = text.index();
+                }
+                case Placeholder placeholder -> {
+                    var data = placeholder.directData();
+                    segments[part] = new PlaceholderSegment(
+                        data.key(),
+                        data.argument().orElse(null),
+                        placeholder.exclusion(),
+                        placeholder.endExpected(),
+                        data.originalPart().string()
+                    );
+                    indices[part] = data.originalPart().index();
+                }
+            }
+        }
+        synchronized (this) {
+            for (int part = 0; part < segments.length; part++) segments[part] = this.acquire(segments[part]);
+            this.templates++;
+        }
+        return new StoredTemplate(segments, indices, CLEANER, () -> this.release(segments));
+    }
+    
+    public synchronized DedupStats stats() {
+        return new DedupStats(this.templates, this.references, this.pool.size(), this.bytesWithoutDedup, this.bytesWithDedup);
+    }
+    
+    /**
+     * Must be called under lock.
+     *
+     * @return pooled instance of segment
+     */
+    private Segment acquire(Segment segment) {
+        Pooled pooled = this.pool.get(segment);
+        if (pooled == null) {
+            pooled = new Pooled(segment, TemplateStore.weigh(segment));
+            this.pool.put(segment, pooled);
+            this.bytesWithDedup += pooled.weight;
+        }
+        pooled.references++;
+        this.references++;
+        this.bytesWithoutDedup += pooled.weight;
+        return pooled.segment;
+    }
+    
+    private synchronized void release(Segment[] segments) {
+        for (Segment segment : segments) {
+            Pooled pooled = this.pool.get(segment);
+            pooled.references--;
+            this.references--;
+            this.bytesWithoutDedup -= pooled.weight;
+            if (pooled.references == 0) {
+                this.pool.remove(segment);
+                this.bytesWithDedup -= pooled.weight;
+            }
+        }
+        this.templates--;
+    }
+    
+    private static long weigh(Segment segment) {
+        return switch (segment) {
+            case TextSegment text -> TEXT_SEGMENT + stringWeight(text.text());
+            case PlaceholderSegment placeholder -> PLACEHOLDER_SEGMENT
+                + stringWeight(placeholder.key())
+                + (placeholder.argument() == null ? 0 : stringWeight(placeholder.argument()))
+                + stringWeight(placeholder.originalPart());
+        };
+    }
+    
+    /**
+     * String object and its array, counted as UTF-16.
+     */
+    private static long stringWeight(String string) {
+        return OBJECT_HEADER + 12 + ARRAY_HEADER + 2L * string.length();
+    }
+    
+    private static class Pooled {
+        
+        public final Segment segment;
+        public final long weight;
+        public int references;
+        
+        public Pooled(Segment segment, long weight) {
+            this.segment = segment;
+            this.weight = weight;
+        }
+        
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,3 @@
+package ru.ancap.gst.parser.store;
+
+public record TextSegment(String text) implements Segment { }
\ No newline at end of file
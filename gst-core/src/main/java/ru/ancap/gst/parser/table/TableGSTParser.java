@@ -0,0 +1,246 @@
+package ru.ancap.gst.parser.table;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+import ru.ancap.gst.parser.EscapingMode;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.GSTSink;
+import ru.ancap.gst.parser.SpecialCharacterSet;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+import ru.ancap.gst.parser.simple.exception.RegularCharacterEscapedException;
+import ru.ancap.gst.parser.simple.exception.UnexpectedSpecialCharacterException;
+import ru.ancap.gst.util.SourceFragment;
+import ru.ancap.gst.util.SourceRun;
+
+/**
+ * Table-driven implementation of the same syntax as {@link SimpleGSTParser}, produces equal results and throws
+ * equal exceptions. Special character set and escaping mode are compiled into character class and state transition
+ * tables once at build time, so parse loop makes no decisions depending on parser settings and handles every
+ * character with one transition lookup.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+@ToString @EqualsAndHashCode
+public class TableGSTParser implements GSTParser {
+    
+    private static final int TEXT               = 0;
+    private static final int ID                 = 1;
+    private static final int ARGUMENT           = 2;
+    private static final int ESCAPED            = 3;
+    private static final int STATES             = 6;
+    
+    private static final int CLASS_BITS         = 3;
+    private static final int STATE_MASK         = 0b111;
+    private static final int ACTION_SHIFT       = 3;
+    
+    private static final int TAKE_TEXT          = 0;
+    private static final int TAKE               = 1;
+    private static final int ESCAPE             = 2;
+    private static final int OPEN               = 3;
+    private static final int EXCLUDE            = 4;
+    private static final int START_ARGUMENT     = 5;
+    private static final int CLOSE              = 6;
+    private static final int REGULAR_ESCAPED    = 7;
+    private static final int UNEXPECTED_SPECIAL = 8;
+    
+    private static final int ROLE_OPENING       = 1;
+    private static final int ROLE_CLOSING       = 1 << 1;
+    private static final int ROLE_DELIMITER     = 1 << 2;
+    private static final int ROLE_EXCLUSION     = 1 << 3;
+    private static final int ROLE_ESCAPING      = 1 << 4;
+    
+    private final SpecialCharacterSet specialCharacterSet;
+    private final EscapingMode escapingMode;
+    
+    /**
+     * Class of every character up to the greatest special one, greater characters are of regular class 0.
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final byte[] characterClasses;
+    
+    /**
+     * Indexed by {@code state << CLASS_BITS | characterClass}, contains {@code action << ACTION_SHIFT | nextState}.
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final byte[] transitions;
+    
+    /**
+     * Placeholder start offset from opening character.
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final int openingOffset;
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    @Accessors(fluent = true, chain = true) @Setter
+    public static class Builder {
+        
+        private SpecialCharacterSet specialCharacterSet = SpecialCharacterSet.DEFAULT;
+        private EscapingMode escapingMode = EscapingMode.UNESCAPED_IS_SIMPLE_TEXT;
+        
+        public TableGSTParser build() {
+            SpecialCharacterSet set = this.specialCharacterSet;
+            char[] specials = {set.opening(), set.closing(), set.argumentDelimiter(), set.exclusionChar(), set.escapingCharacter()};
+            int[] roles = {ROLE_OPENING, ROLE_CLOSING, ROLE_DELIMITER, ROLE_EXCLUSION, ROLE_ESCAPING};
+            
+            char greatest = 0;
+            for (char special : specials) greatest = (char) Math.max(greatest, special);
+            int[] charRoles = new int[greatest + 1];
+            for (int i = 0; i < specials.length; i++) charRoles[specials[i]] |= roles[i];
+            
+            // one class per distinct combination of roles, class 0 is regular character
+            int[] classRoles = new int[1 << CLASS_BITS];
+            int classes = 1;
+            byte[] characterClasses = new byte[greatest + 1];
+            for (char special : specials) {
+                int class_ = 0;
+                for (int i = 1; i < classes; i++) if (classRoles[i] == charRoles[special]) class_ = i;
+                if (class_ == 0) {
+                    class_ = classes++;
+                    classRoles[class_] = charRoles[special];
+                }
+                characterClasses[special] = (byte) class_;
+            }
+            
+            byte[] transitions = new byte[STATES << CLASS_BITS];
+            for (int state = 0; state < STATES; state++) {
+                for (int class_ = 0; class_ < classes; class_++) {
+                    transitions[state << CLASS_BITS | class_] = TableGSTParser.transition(state, classRoles[class_], this.escapingMode);
+                }
+            }
+            
+            return new TableGSTParser(
+                this.specialCharacterSet,
+                this.escapingMode,
+                characterClasses,
+                transitions,
+                this.escapingMode == EscapingMode.UNESCAPED_IS_SIMPLE_TEXT ? 1 : 0
+            );
+        }
+        
+    }
+    
+    public static TableGSTParser inst() {
+        return TableGSTParser.builder().build();
+    }
+    
+    /**
+     * Same decisions as {@link SimpleGSTParser} makes per character, made once per (state, character class) pair.
+     */
+    private static byte transition(int state, int roles, EscapingMode escapingMode) {
+        boolean escaped = state >= ESCAPED;
+        int filling = escaped ? state - ESCAPED : state;
+        boolean isSpecial = roles != 0;
+        if ((roles & ROLE_ESCAPING) != 0 && !escaped) return TableGSTParser.packed(ESCAPE, filling + ESCAPED);
+        if (escaped && !isSpecial) return TableGSTParser.packed(REGULAR_ESCAPED, filling);
+        return switch (filling) {
+            case TEXT -> {
+                boolean canBePhByEscapingRule = (escapingMode == EscapingMode.UNESCAPED_IS_SIMPLE_TEXT) == escaped;
+                if ((roles & ROLE_OPENING) != 0 && canBePhByEscapingRule) yield TableGSTParser.packed(OPEN, ID);
+                yield TableGSTParser.packed(TAKE_TEXT, TEXT);
+            }
+            case ID -> {
+                if (!escaped) {
+                    if ((roles & ROLE_EXCLUSION) != 0) yield TableGSTParser.packed(EXCLUDE, ID);
+                    if ((roles & ROLE_DELIMITER) != 0) yield TableGSTParser.packed(START_ARGUMENT, ARGUMENT);
+                    if ((roles & ROLE_CLOSING)   != 0) yield TableGSTParser.packed(CLOSE, TEXT);
+                    if (isSpecial) yield TableGSTParser.packed(UNEXPECTED_SPECIAL, ID);
+                }
+                yield TableGSTParser.packed(TAKE, ID);
+            }
+            default -> {
+                if (!escaped && (roles & ROLE_CLOSING) != 0) yield TableGSTParser.packed(CLOSE, TEXT);
+                yield TableGSTParser.packed(TAKE, ARGUMENT);
+            }
+        };
+    }
+    
+    private static byte packed(int action, int nextState) {
+        return (byte) (action << ACTION_SHIFT | nextState);
+    }
+    
+    /**
+     * Does not copy template, same as {@link SimpleGSTParser#parse(CharSequence, GSTSink)}.
+     */
+    @Override
+    public void parse(CharSequence template, GSTSink sink) {
+        byte[] characterClasses = this.characterClasses;
+        byte[] transitions = this.transitions;
+        ParseState state = new ParseState(template, sink);
+        
+        int current = TEXT;
+        int length = template.length();
+        for (int index = 0; index < length; index++) {
+            char char_ = template.charAt(index);
+            int transition = transitions[current << CLASS_BITS | (char_ < characterClasses.length ? characterClasses[char_] : 0)];
+            current = transition & STATE_MASK;
+            switch (transition >>> ACTION_SHIFT) {
+                case TAKE_TEXT -> state.text.take(index);
+                case TAKE -> state.fragments[current].take(index);
+                case ESCAPE -> {}
+                case OPEN -> {
+                    state.text.flush();
+                    state.partStartIndex = index - this.openingOffset;
+                }
+                case EXCLUDE -> state.exclusion = true;
+                case START_ARGUMENT -> state.hasArgument = true;
+                case CLOSE -> state.closePlaceholder(index+1, true);
+                case REGULAR_ESCAPED -> throw new RegularCharacterEscapedException(template.toString(), index, char_);
+                case UNEXPECTED_SPECIAL -> throw new UnexpectedSpecialCharacterException(template.toString(), index, char_);
+            }
+        }
+        switch (current % ESCAPED) {
+            case TEXT -> state.text.flush();
+            case ID, ARGUMENT -> state.closePlaceholder(length, false);
+        }
+    }
+    
+    private static class ParseState {
+        
+        public final CharSequence template;
+        public final GSTSink sink;
+        
+        public final SourceRun text;
+        public final SourceFragment key;
+        public final SourceFragment argument;
+        
+        /**
+         * Filled key or argument by state, text is filled directly.
+         */
+        public final SourceFragment[] fragments;
+        
+        public int partStartIndex;
+        public boolean exclusion;
+        public boolean hasArgument;
+        
+        public ParseState(CharSequence template, GSTSink sink) {
+            this.template = template;
+            this.sink = sink;
+            this.text = new SourceRun(template, sink);
+            this.key = new SourceFragment(template);
+            this.argument = new SourceFragment(template);
+            this.fragments = new SourceFragment[STATES];
+            this.fragments[ID]       = this.fragments[ID + ESCAPED]       = this.key;
+            this.fragments[ARGUMENT] = this.fragments[ARGUMENT + ESCAPED] = this.argument;
+        }
+        
+        /**
+         * @param end exclusive end of placeholder in template
+         */
+        public void closePlaceholder(int end, boolean endExpected) {
+            this.sink.onPlaceholder(
+                this.template,
+                this.partStartIndex,
+                end,
+                this.key.string(),
+                this.hasArgument ? this.argument.string() : null,
+                this.exclusion,
+                endExpected
+            );
+            this.key.reset();
+            this.argument.reset();
+            this.exclusion = false;
+            this.hasArgument = false;
+        }
+        
+    }
+    
+}
\ No newline at end of file
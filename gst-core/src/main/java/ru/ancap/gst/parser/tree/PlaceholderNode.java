@@ -0,0 +1,12 @@
+package ru.ancap.gst.parser.tree;
+
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.gst_structure.Placeholder;
+
+/**
+ * @param placeholder placeholder, if argument has nested placeholders, its argument is as it is written in template,
+ *                    with nested placeholders and escaping characters
+ * @param argument parsed argument if it has nested placeholders, otherwise null and argument is plain string in
+ *                 placeholder
+ */
+public record PlaceholderNode(Placeholder placeholder, @Nullable TemplateTree argument) implements TreeNode { }
\ No newline at end of file
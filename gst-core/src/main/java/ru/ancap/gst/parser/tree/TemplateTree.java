@@ -0,0 +1,40 @@
+package ru.ancap.gst.parser.tree;
+
+import ru.ancap.gst.parser.gst_structure.Template;
+
+import java.util.List;
+
+/**
+ * Parse result where arguments of placeholders can contain placeholders, for example "\{fmt:\{price}}", see
+ * {@link ru.ancap.gst.parser.simple.SimpleGSTParser#parseTree(CharSequence)}. Immutable.
+ *
+ * @param nodes nodes in template order
+ */
+public record TemplateTree(List<TreeNode> nodes) {
+    
+    public static final TemplateTree EMPTY = new TemplateTree(List.of());
+    
+    public TemplateTree {
+        nodes = List.copyOf(nodes);
+    }
+    
+    /**
+     * @return false if template ended before last placeholder was closed
+     */
+    public boolean endExpected() {
+        return this.nodes.isEmpty() || !(this.nodes.get(this.nodes.size() - 1) instanceof PlaceholderNode node) || node.placeholder().endExpected();
+    }
+    
+    /**
+     * @return top level of tree, arguments of placeholders are kept as they are written in template
+     */
+    public Template toTemplate() {
+        Template.Builder builder = Template.builder();
+        for (TreeNode node : this.nodes) builder.add(switch (node) {
+            case TextNode text -> text.text();
+            case PlaceholderNode placeholder -> placeholder.placeholder();
+        });
+        return builder.build();
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,5 @@
+package ru.ancap.gst.parser.tree;
+
+import ru.ancap.gst.parser.gst_structure.Text;
+
+public record TextNode(Text text) implements TreeNode { }
\ No newline at end of file
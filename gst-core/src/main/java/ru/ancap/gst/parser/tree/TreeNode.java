@@ -0,0 +1,6 @@
+package ru.ancap.gst.parser.tree;
+
+/**
+ * Part of {@link TemplateTree}.
+ */
+public sealed interface TreeNode permits TextNode, PlaceholderNode { }
\ No newline at end of file
@@ -0,0 +1,344 @@
+package ru.ancap.gst.parser.utf8;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.EscapingMode;
+import ru.ancap.gst.parser.SpecialCharacterSet;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+import ru.ancap.gst.parser.simple.exception.RegularCharacterEscapedException;
+import ru.ancap.gst.parser.simple.exception.UnexpectedSpecialCharacterException;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parser of UTF-8 encoded templates with the same syntax as {@link SimpleGSTParser}, works on bytes without decoding
+ * template. Bytes of multibyte UTF-8 sequences are never in ASCII range, so with ASCII special characters every
+ * special byte is a special character. Only keys and arguments are decoded, text is passed as byte ranges.
+ * <p>
+ * Indices in sink calls and in exceptions are byte indices.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+@ToString @EqualsAndHashCode
+public class Utf8GSTParser {
+    
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long ONES           = 0x0101010101010101L;
+    
+    private static final VarHandle LITTLE_ENDIAN_LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    
+    private final SpecialCharacterSet specialCharacterSet;
+    private final EscapingMode escapingMode;
+    
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final byte opening;
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final byte closing;
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final byte argumentDelimiter;
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final byte exclusion;
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final byte escaping;
+    
+    /**
+     * Escaping and opening bytes repeated in every byte of word.
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final long escapingWord;
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final long openingWord;
+    
+    /**
+     * Special bytes as bits, all of them are below 128.
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final long lowMask;
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final long highMask;
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    @Accessors(fluent = true, chain = true) @Setter
+    public static class Builder {
+        
+        private SpecialCharacterSet specialCharacterSet = SpecialCharacterSet.DEFAULT;
+        private EscapingMode escapingMode = EscapingMode.UNESCAPED_IS_SIMPLE_TEXT;
+        
+        /**
+         * @throws IllegalArgumentException if some of special characters is not ASCII
+         */
+        public Utf8GSTParser build() {
+            SpecialCharacterSet set = this.specialCharacterSet;
+            char[] specials = {set.opening(), set.closing(), set.argumentDelimiter(), set.exclusionChar(), set.escapingCharacter()};
+            long lowMask = 0;
+            long highMask = 0;
+            for (char special : specials) {
+                if (special >= 128) throw new IllegalArgumentException("Special character '"+special+"' is not ASCII");
+                if (special < 64) lowMask  |= 1L << special;
+                else              highMask |= 1L << special;
+            }
+            return new Utf8GSTParser(
+                set,
+                this.escapingMode,
+                (byte) set.opening(),
+                (byte) set.closing(),
+                (byte) set.argumentDelimiter(),
+                (byte) set.exclusionChar(),
+                (byte) set.escapingCharacter(),
+                set.escapingCharacter() * ONES,
+                set.opening() * ONES,
+                lowMask,
+                highMask
+            );
+        }
+        
+    }
+    
+    public static Utf8GSTParser inst() {
+        return Utf8GSTParser.builder().build();
+    }
+    
+    public void parse(byte[] template, Utf8GSTSink sink) {
+        this.parse(ByteBuffer.wrap(template), sink);
+    }
+    
+    /**
+     * Parses bytes from position to limit of template, does not change its position. Indices passed to sink are
+     * absolute indices in template buffer.
+     */
+    public void parse(ByteBuffer template, Utf8GSTSink sink) {
+        ParseState state = new ParseState(template, sink);
+        int limit = template.limit();
+        for (int index = template.position(); index < limit; index++) {
+            boolean escaped = state.escapeNext;
+            state.escapeNext = false;
+            byte byte_ = template.get(index);
+            if (!escaped && !this.isSpecial(byte_)) {
+                int runEnd = state.filled == state.text ? this.textRunEnd(template, index + 1, limit) : this.regularRunEnd(template, index + 1, limit);
+                state.filled.take(index, runEnd);
+                index = runEnd - 1;
+                continue;
+            }
+            if (byte_ == this.escaping && !escaped) {
+                state.escapeNext = true;
+                continue;
+            }
+            boolean isSpecial = !escaped || this.isSpecial(byte_); // unescaped regular bytes are handled above
+            if (escaped && !isSpecial) throw new RegularCharacterEscapedException(Utf8GSTParser.decode(template), index, Utf8GSTParser.charAt(template, index));
+            
+            if (state.filled == state.text) {
+                boolean canBePhByEscapingRule = (this.escapingMode == EscapingMode.UNESCAPED_IS_SIMPLE_TEXT) == escaped;
+                if (byte_ == this.opening && canBePhByEscapingRule) {
+                    state.text.flush();
+                    state.filled = state.key;
+                    state.partStartIndex = index - (this.escapingMode == EscapingMode.UNESCAPED_IS_SIMPLE_TEXT ? 1 : 0);
+                    continue;
+                }
+            } else if (!escaped) {
+                if (state.filled == state.key) {
+                    if (byte_ == this.exclusion) {
+                        state.exclusion = true;
+                        continue;
+                    }
+                    if (byte_ == this.argumentDelimiter) {
+                        state.filled = state.argument;
+                        state.hasArgument = true;
+                        continue;
+                    }
+                }
+                if (byte_ == this.closing) {
+                    state.closePlaceholder(index+1, true);
+                    continue;
+                }
+                if (state.filled == state.key) throw new UnexpectedSpecialCharacterException(Utf8GSTParser.decode(template), index, (char) byte_);
+            }
+            state.filled.take(index, index + 1);
+        }
+        if (state.filled == state.text) state.text.flush();
+        else state.closePlaceholder(limit, false);
+    }
+    
+    private boolean isSpecial(byte byte_) {
+        if (byte_ < 0)  return false; // part of multibyte sequence
+        if (byte_ < 64) return (this.lowMask  & (1L << byte_)) != 0;
+        return                 (this.highMask & (1L << byte_)) != 0;
+    }
+    
+    /**
+     * Text can be interrupted only by escaping byte and, if unescaped opening is placeholder, by opening. Array-backed
+     * templates are scanned by 8 bytes at once, matching bytes in word are found with exact SWAR zero byte test.
+     *
+     * @return exclusive end of run of bytes that can be taken to text without handling
+     */
+    private int textRunEnd(ByteBuffer template, int from, int to) {
+        boolean openingInterrupts = this.escapingMode == EscapingMode.UNESCAPED_IS_PLACEHOLDER;
+        int index = from;
+        if (template.hasArray()) {
+            byte[] array = template.array();
+            int offset = template.arrayOffset();
+            for (; index + Long.BYTES <= to; index += Long.BYTES) {
+                long word = (long) LITTLE_ENDIAN_LONG.get(array, offset + index);
+                long found = Utf8GSTParser.zeroBytes(word ^ this.escapingWord);
+                if (openingInterrupts) found |= Utf8GSTParser.zeroBytes(word ^ this.openingWord);
+                if (found != 0) return index + Long.numberOfTrailingZeros(found) / Byte.SIZE;
+            }
+        }
+        for (; index < to; index++) {
+            byte byte_ = template.get(index);
+            if (byte_ == this.escaping || openingInterrupts && byte_ == this.opening) return index;
+        }
+        return to;
+    }
+    
+    /**
+     * @return word with high bit set in every byte that is zero in given word and other bits cleared
+     */
+    private static long zeroBytes(long word) {
+        long lowBitsSum = (word & LOW_SEVEN_BITS) + LOW_SEVEN_BITS;
+        return ~(lowBitsSum | word | LOW_SEVEN_BITS);
+    }
+    
+    /**
+     * @return index of first special byte in range or {@code to} if there is no such
+     */
+    private int regularRunEnd(ByteBuffer template, int from, int to) {
+        for (int index = from; index < to; index++) if (this.isSpecial(template.get(index))) return index;
+        return to;
+    }
+    
+    /**
+     * Decodes from 0, not from position, because indices in exceptions are absolute.
+     */
+    private static String decode(ByteBuffer template) {
+        return StandardCharsets.UTF_8.decode(template.duplicate().position(0)).toString();
+    }
+    
+    /**
+     * @return first char of UTF-8 sequence starting at index
+     */
+    private static char charAt(ByteBuffer template, int index) {
+        byte[] sequence = new byte[Math.min(4, template.limit() - index)];
+        template.get(index, sequence);
+        return new String(sequence, StandardCharsets.UTF_8).charAt(0);
+    }
+    
+    private static class ParseState {
+        
+        public final ByteBuffer template;
+        public final Utf8GSTSink sink;
+        
+        public final ByteRange text;
+        public final ByteRange key;
+        public final ByteRange argument;
+        
+        /**
+         * Text, key or argument.
+         */
+        public ByteRange filled;
+        public int partStartIndex;
+        public boolean exclusion;
+        public boolean hasArgument;
+        public boolean escapeNext;
+        
+        public ParseState(ByteBuffer template, Utf8GSTSink sink) {
+            this.template = template;
+            this.sink = sink;
+            this.text = new ByteRange(template, sink);
+            this.key = new ByteRange(template, null);
+            this.argument = new ByteRange(template, null);
+            this.filled = this.text;
+        }
+        
+        /**
+         * @param end exclusive end of placeholder in template
+         */
+        public void closePlaceholder(int end, boolean endExpected) {
+            this.sink.onPlaceholder(
+                this.template,
+                this.partStartIndex,
+                end,
+                this.key.decode(),
+                this.hasArgument ? this.argument.decode() : null,
+                this.exclusion,
+                endExpected
+            );
+            this.key.reset();
+            this.argument.reset();
+            this.exclusion = false;
+            this.hasArgument = false;
+            this.filled = this.text;
+        }
+        
+    }
+    
+    /**
+     * Bytes taken in ascending order. Text range is passed to sink every time it can not be extended, key and argument
+     * ranges are collected and decoded at once.
+     */
+    private static class ByteRange {
+        
+        private final ByteBuffer source;
+        private final @Nullable Utf8GSTSink sink;
+        
+        private int start = -1;
+        private int end = -1;
+        private @Nullable byte[] gapped;
+        private int gappedLength;
+        
+        public ByteRange(ByteBuffer source, @Nullable Utf8GSTSink sink) {
+            this.source = source;
+            this.sink = sink;
+        }
+        
+        /**
+         * @param from inclusive
+         * @param to exclusive
+         */
+        public void take(int from, int to) {
+            if (this.end == from) {
+                this.end = to;
+                return;
+            }
+            if (this.sink != null) this.flush();
+            else if (this.start != -1) this.keepTaken();
+            this.start = from;
+            this.end = to;
+        }
+        
+        private void keepTaken() {
+            int length = this.end - this.start;
+            if (this.gapped == null) this.gapped = new byte[length + 16];
+            else if (this.gapped.length < this.gappedLength + length) {
+                byte[] grown = new byte[Math.max(this.gapped.length * 2, this.gappedLength + length)];
+                System.arraycopy(this.gapped, 0, grown, 0, this.gappedLength);
+                this.gapped = grown;
+            }
+            this.source.get(this.start, this.gapped, this.gappedLength, length);
+            this.gappedLength += length;
+        }
+        
+        public void flush() {
+            //noinspection DataFlowIssue
+            if (this.start != this.end) this.sink.onText(this.source, this.start, this.end);
+            this.start = -1;
+            this.end = -1;
+        }
+        
+        public String decode() {
+            if (this.start == -1 && this.gapped == null) return "";
+            if (this.gapped == null && this.source.hasArray()) {
+                return new String(this.source.array(), this.source.arrayOffset() + this.start, this.end - this.start, StandardCharsets.UTF_8);
+            }
+            if (this.start != -1) this.keepTaken();
+            //noinspection DataFlowIssue
+            return new String(this.gapped, 0, this.gappedLength, StandardCharsets.UTF_8);
+        }
+        
+        public void reset() {
+            this.start = -1;
+            this.end = -1;
+            this.gapped = null;
+            this.gappedLength = 0;
+        }
+        
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,30 @@
+package ru.ancap.gst.parser.utf8;
+
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.GSTSink;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Same as {@link GSTSink}, but for UTF-8 encoded templates (see {@link Utf8GSTParser}). All indices are byte indices
+ * in source buffer, text is passed undecoded.
+ */
+public interface Utf8GSTSink {
+    
+    /**
+     * Text can be passed in several calls in a row, because escaping characters are not part of text and split it.
+     *
+     * @param start inclusive
+     * @param end exclusive
+     */
+    void onText(ByteBuffer source, int start, int end);
+    
+    /**
+     * @param start inclusive start of original placeholder representation in source
+     * @param end exclusive end of original placeholder representation in source
+     * @param argument null if placeholder has no argument
+     * @param endExpected false if template ended before placeholder was closed
+     */
+    void onPlaceholder(ByteBuffer source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected);
+    
+}
\ No newline at end of file
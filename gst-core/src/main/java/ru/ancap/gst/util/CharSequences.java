@@ -0,0 +1,34 @@
+package ru.ancap.gst.util;
+
+public final class CharSequences {
+    
+    private CharSequences() {}
+    
+    /**
+     * For Strings delegates to String#indexOf(), which is vectorized by JIT intrinsic, other sequences are
+     * scanned char by char.
+     *
+     * @param from inclusive
+     * @param to exclusive
+     * @return index of first occurrence of character in range or {@code to} if there is no such
+     */
+    public static int indexOf(CharSequence sequence, char char_, int from, int to) {
+        if (sequence instanceof String string) {
+            int index = string.indexOf(char_, from, to);
+            return index == -1 ? to : index;
+        }
+        for (int index = from; index < to; index++) if (sequence.charAt(index) == char_) return index;
+        return to;
+    }
+    
+    /**
+     * @return true if sequence contains prefix starting from index
+     */
+    public static boolean startsWith(CharSequence sequence, int index, String prefix) {
+        if (sequence instanceof String string) return string.startsWith(prefix, index);
+        if (index + prefix.length() > sequence.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) if (sequence.charAt(index + i) != prefix.charAt(i)) return false;
+        return true;
+    }
+    
+}
\ No newline at end of file
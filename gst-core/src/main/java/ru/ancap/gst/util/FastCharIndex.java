@@ -1,20 +1,38 @@
 package ru.ancap.gst.util;
 
 import lombok.EqualsAndHashCode;
-import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 
 import java.util.Set;
 
 /**
- * Faster than hashset on small amount of elements
+ * Faster than hashset on small amount of elements. ASCII characters are checked with bit masks,
+ * only non-ASCII characters are compared one by one.
  */
-@RequiredArgsConstructor
 @ToString @EqualsAndHashCode
 public class FastCharIndex {
     
     private final char[] chars;
     
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final long lowMask;
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final long highMask;
+    @ToString.Exclude @EqualsAndHashCode.Exclude private final char[] nonAscii;
+    
+    public FastCharIndex(char[] chars) {
+        this.chars = chars;
+        long lowMask = 0;
+        long highMask = 0;
+        StringBuilder nonAscii = new StringBuilder(0);
+        for (char char_ : chars) {
+            if      (char_ < 64)  lowMask  |= 1L << char_;
+            else if (char_ < 128) highMask |= 1L << char_; // shift distance is taken modulo 64
+            else                  nonAscii.append(char_);
+        }
+        this.lowMask = lowMask;
+        this.highMask = highMask;
+        this.nonAscii = nonAscii.toString().toCharArray();
+    }
+    
     public static FastCharIndex of(char... chars) {
         //noinspection ResultOfMethodCallIgnored
         Set.of(chars); // ensure there are no duplicates
@@ -22,8 +40,18 @@ public class FastCharIndex {
     }
     
     public boolean contains(char char_) {
-        for (char compared : this.chars) if (compared == char_) return true;
+        if (char_ < 64)  return (this.lowMask  & (1L << char_)) != 0;
+        if (char_ < 128) return (this.highMask & (1L << char_)) != 0;
+        for (char compared : this.nonAscii) if (compared == char_) return true;
         return false;
     }
     
+    /**
+     * @return index of first contained character in [from, to) range of sequence or {@code to} if there is no such
+     */
+    public int indexIn(CharSequence sequence, int from, int to) {
+        for (int index = from; index < to; index++) if (this.contains(sequence.charAt(index))) return index;
+        return to;
+    }
+    
 }
\ No newline at end of file
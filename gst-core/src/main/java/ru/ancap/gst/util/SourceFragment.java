@@ -0,0 +1,86 @@
+package ru.ancap.gst.util;
+
+import org.jetbrains.annotations.Nullable;
+import ru.ancap.gst.parser.gst_structure.Text;
+
+/**
+ * Reusable accumulator of source characters that are taken in ascending order. While taken characters are contiguous
+ * it only moves offsets, copying starts only after first gap (for example, skipped escaping character).
+ */
+public class SourceFragment {
+    
+    private CharSequence source;
+    
+    private int start = -1;
+    private int end = -1;
+    private @Nullable StringBuilder gapped;
+    
+    public SourceFragment(CharSequence source) {
+        this.source = source;
+    }
+    
+    public void take(int index) {
+        if (this.end == index) this.end++;
+        else this.takeAfterGap(index, index + 1);
+    }
+    
+    /**
+     * @param from inclusive
+     * @param to exclusive
+     */
+    public void take(int from, int to) {
+        if (from == to) return;
+        if (this.end == from) this.end = to;
+        else this.takeAfterGap(from, to);
+    }
+    
+    private void takeAfterGap(int from, int to) {
+        if (this.start != -1) {
+            if (this.gapped == null) this.gapped = new StringBuilder((this.end - this.start) + 16);
+            this.gapped.append(this.source, this.start, this.end);
+        }
+        this.start = from;
+        this.end = to;
+    }
+    
+    /**
+     * Continues accumulation in other source with the same indices (for example, next window of streamed template).
+     * Characters taken from previous source are copied, because it may be not available anymore.
+     */
+    public void continueIn(CharSequence source) {
+        if (source == this.source) return;
+        if (this.start != -1) {
+            if (this.gapped == null) this.gapped = new StringBuilder((this.end - this.start) + 16);
+            this.gapped.append(this.source, this.start, this.end);
+            this.start = this.end;
+        }
+        this.source = source;
+    }
+    
+    public boolean isEmpty() {
+        return this.start == -1;
+    }
+    
+    public void reset() {
+        this.start = -1;
+        this.end = -1;
+        this.gapped = null;
+    }
+    
+    public String string() {
+        if (this.start == -1) return "";
+        if (this.gapped == null) return this.source.subSequence(this.start, this.end).toString();
+        this.gapped.append(this.source, this.start, this.end);
+        this.start = this.end;
+        return this.gapped.toString();
+    }
+    
+    /**
+     * @param index index of text in source, can differ from first taken character index if text starts with skipped characters
+     */
+    public Text text(int index) {
+        if (this.gapped == null) return Text.view(index, this.source, this.start, this.end);
+        return new Text(index, this.string());
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,48 @@
+package ru.ancap.gst.util;
+
+import ru.ancap.gst.parser.GSTSink;
+
+/**
+ * Pending contiguous run of source characters taken in ascending order, passed to sink as text as soon as
+ * it can not be extended.
+ */
+public class SourceRun {
+    
+    private final CharSequence source;
+    private final GSTSink sink;
+    
+    private int start = -1;
+    private int end = -1;
+    
+    public SourceRun(CharSequence source, GSTSink sink) {
+        this.source = source;
+        this.sink = sink;
+    }
+    
+    public void take(int index) {
+        if (this.end == index) this.end++;
+        else this.restart(index, index + 1);
+    }
+    
+    /**
+     * @param from inclusive
+     * @param to exclusive
+     */
+    public void take(int from, int to) {
+        if (this.end == from) this.end = to;
+        else this.restart(from, to);
+    }
+    
+    private void restart(int from, int to) {
+        this.flush();
+        this.start = from;
+        this.end = to;
+    }
+    
+    public void flush() {
+        if (this.start != this.end) this.sink.onText(this.source, this.start, this.end);
+        this.start = -1;
+        this.end = -1;
+    }
+    
+}
\ No newline at end of file
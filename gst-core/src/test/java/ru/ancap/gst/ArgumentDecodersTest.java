@@ -0,0 +1,94 @@
+package ru.ancap.gst;
+
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.buffer.conf.ConfGSTTerminator;
+import ru.ancap.gst.buffer.conf.exception.PlaceholderProcessingException;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.argument.ArgumentDecoder;
+import ru.ancap.gst.parser.argument.ArgumentDecoders;
+import ru.ancap.gst.parser.argument.ArgumentDecodingException;
+import ru.ancap.gst.parser.argument.DecodedArgument;
+import ru.ancap.gst.parser.gst_structure.Template;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArgumentDecodersTest {
+    
+    @Test
+    public void decoders() {
+        assertEquals(-42, (int) ArgumentDecoder.INT.decode("-42"));
+        assertEquals(1L << 40, (long) ArgumentDecoder.LONG.decode(""+(1L << 40)));
+        assertEquals(0.5, (double) ArgumentDecoder.DOUBLE.decode("0.5"));
+        assertEquals(RoundingMode.HALF_UP, ArgumentDecoder.enumOf(RoundingMode.class).decode("HALF_UP"));
+        assertEquals(List.of("a", "", "b"), ArgumentDecoder.list(",").decode("a,,b"));
+        assertEquals(List.of(1, 2, 3), ArgumentDecoder.list("::", ArgumentDecoder.INT).decode("1::2::3"));
+        assertThrows(NumberFormatException.class, () -> ArgumentDecoder.INT.decode("foo"));
+    }
+    
+    @Test
+    public void decodedOnce() {
+        AtomicInteger decodes = new AtomicInteger();
+        ArgumentDecoder<Integer> counting = argument -> {
+            decodes.incrementAndGet();
+            return Integer.parseInt(argument);
+        };
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("double", counting, (placeholder, argument) -> ""+argument * 2);
+        buffer.declare("text", "foo");
+        
+        Template template = buffer.argumentDecoders().compile(SimpleGSTParser.inst(), "\\{double:21} \\{text} \\{double:5}");
+        assertEquals(2, decodes.get());
+        for (int i = 0; i < 3; i++) assertEquals("42 foo 10", buffer.terminate(template));
+        assertEquals(2, decodes.get());
+        
+        assertEquals("42 foo 10", buffer.terminate(SimpleGSTParser.inst().parseTemplate("\\{double:21} \\{text} \\{double:5}")));
+        assertEquals(4, decodes.get());
+        
+        Template foreign = ArgumentDecoders.builder().decoder("double", ArgumentDecoder.INT).build().compile(SimpleGSTParser.inst(), "\\{double:1}");
+        assertEquals("2", buffer.terminate(foreign, Set.of("text")));
+        assertEquals(5, decodes.get());
+        assertThrows(PlaceholderProcessingException.class, () -> buffer.terminate(SimpleGSTParser.inst().parseTemplate("\\{double}"), Set.of("text")));
+    }
+    
+    @Test
+    public void failuresAtCompileTime() {
+        GSTParser parser = SimpleGSTParser.inst();
+        ArgumentDecoders decoders = ArgumentDecoders.builder().decoder("n", ArgumentDecoder.INT).build();
+        
+        var exception = assertThrows(ArgumentDecodingException.class, () -> decoders.compile(parser, "\\{n:1}\\{n:x}\\{n:y}"));
+        assertEquals(2, exception.failures().size());
+        assertEquals("x", exception.failures().get(0).argument());
+        assertEquals(6, exception.failures().get(0).index());
+        
+        Template plain = parser.parseTemplate("\\{n}\\{m:x}");
+        assertSame(plain, decoders.compile(plain));
+        Template compiled = decoders.compile(parser, "\\{n:7}");
+        assertEquals(7, compiled.decodedArgument(0).value());
+        assertSame(ArgumentDecoder.INT, compiled.decodedArgument(0).decoder());
+        assertEquals(parser.parseTemplate("\\{n:7}"), compiled);
+        assertSame(compiled.metadata(), compiled.withDecodedArguments(new DecodedArgument[1]).metadata());
+        assertNull(compiled.withDecodedArguments(new DecodedArgument[1]).decodedArgument(0));
+        assertNull(compiled.withDecodedArguments(null).decodedArgument(0));
+        assertNull(parser.parseTemplate("\\{n:7}").decodedArgument(0));
+        assertThrows(IllegalArgumentException.class, () -> compiled.withDecodedArguments(new DecodedArgument[2]));
+    }
+    
+    @Test
+    public void overriddenDeclarationLosesDecoder() {
+        var buffer = ConfGSTTerminator.newLenient().build();
+        buffer.declare("n", ArgumentDecoder.INT, (placeholder, argument) -> ""+argument);
+        assertNotNull(buffer.argumentDecoders().find("n"));
+        buffer.declare("n", "plain");
+        assertNull(buffer.argumentDecoders().find("n"));
+        
+        buffer.declare("m", ArgumentDecoder.INT, (placeholder, argument) -> ""+argument);
+        assertEquals("\\{m:x}", buffer.terminate(SimpleGSTParser.inst().parseTemplate("\\{m:x}"), Set.of("n")));
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+package ru.ancap.gst;
+
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.buffer.conf.ConfGSTTerminator;
+import ru.ancap.gst.parser.bound.BindingException;
+import ru.ancap.gst.parser.bound.BoundTemplate;
+import ru.ancap.gst.parser.bound.KeySchema;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundTemplateTest {
+    
+    @Test
+    public void render() {
+        KeySchema schema = KeySchema.of("user", "count", "unused");
+        BoundTemplate template = schema.compile(SimpleGSTParser.inst(), "hello, \\{user}! you have \\{count} messages\\{!hidden}, \\{user}");
+        assertEquals("hello, alice! you have 3 messages, alice", template.render("alice", "3", "x"));
+        assertEquals("hello, alice! you have 3 messages, alice", template.render(new Object[]{"alice", 3, null}));
+        assertEquals("hello, alice! you have 3 messages, alice", template.render(slot -> slot == 0 ? "alice" : "3"));
+        assertThrows(IllegalArgumentException.class, () -> template.render("alice", "3"));
+        
+        assertEquals("", schema.compile(SimpleGSTParser.inst(), "").render("a", "b", "c"));
+        assertEquals("text", schema.compile(SimpleGSTParser.inst(), "text").render("a", "b", "c"));
+        assertEquals("ac", schema.compile(SimpleGSTParser.inst(), "\\{user}\\{unused}").render("a", "b", "c"));
+    }
+    
+    @Test
+    public void sameAsTerminator() {
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("user", "alice");
+        buffer.declare("count", "3");
+        String template = "\\{count} \\\\ \\{user}\\{!user} \\} \\{count}";
+        assertEquals(buffer.terminate(SimpleGSTParser.inst().parse(template)), KeySchema.of("user", "count").compile(SimpleGSTParser.inst(), template).render("alice", "3"));
+    }
+    
+    @Test
+    public void failures() {
+        assertThrows(IllegalArgumentException.class, () -> KeySchema.of("user", "count", "user"));
+        
+        KeySchema schema = KeySchema.of("user");
+        var exception = assertThrows(BindingException.class, () -> schema.compile(SimpleGSTParser.inst(), "\\{user} \\{other} \\{user:argument} \\{user"));
+        assertEquals(List.of("other", "user", "user"), exception.failures().stream().map(BindingException.Failure::key).toList());
+        assertEquals(List.of(8, 17, 34), exception.failures().stream().map(BindingException.Failure::index).toList());
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,216 @@
+package ru.ancap.gst;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.GSTSink;
+import ru.ancap.gst.parser.cache.CacheStats;
+import ru.ancap.gst.parser.cache.CachingGSTParser;
+import ru.ancap.gst.parser.gst_structure.GSTPart;
+import ru.ancap.gst.parser.gst_structure.Placeholder;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+import ru.ancap.gst.parser.simple.exception.UnexpectedSpecialCharacterException;
+import ru.ancap.gst.util.LinkedObjects;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingGSTParserTest {
+    
+    @Test
+    public void sameAsSimple() {
+        GSTParser simple = SimpleGSTParser.inst();
+        GSTParser caching = CachingGSTParser.inst();
+        for (int i = 0; i < 2; i++) {
+            for (String template : TemplateCorpus.DEFAULT) {
+                assertEquals(simple.parse(template), caching.parse(template), template);
+                assertEquals(events(simple, template), events(caching, template), template);
+                assertEquals(simple.parse(template), caching.parse(new StringBuilder(template)), template);
+            }
+        }
+    }
+    
+    @Test
+    public void stats() {
+        CachingGSTParser caching = CachingGSTParser.inst();
+        caching.parse("foo\\{bar}");
+        caching.parse("foo\\{bar}");
+        caching.parse("baz");
+        
+        CacheStats stats = caching.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(2, stats.misses());
+        assertEquals(2, stats.entries());
+        assertTrue(stats.bytes() > 0);
+        
+        caching.invalidateAll();
+        assertEquals(0, caching.stats().entries());
+        assertEquals(0, caching.stats().bytes());
+    }
+    
+    @Test
+    public void resultIsIndependent() {
+        CachingGSTParser caching = CachingGSTParser.inst();
+        LinkedObjects<GSTPart> first = caching.parse("foo\\{bar}baz");
+        first.add(Placeholder.DUMMY);
+        
+        assertEquals(SimpleGSTParser.inst().parse("foo\\{bar}baz"), caching.parse("foo\\{bar}baz"));
+    }
+    
+    @Test
+    public void templateIsShared() {
+        CachingGSTParser caching = CachingGSTParser.inst();
+        
+        assertSame(caching.parseTemplate("foo\\{bar}baz"), caching.parseTemplate("foo\\{bar}baz"));
+        assertEquals(SimpleGSTParser.inst().parseTemplate("foo\\{bar}baz"), caching.parseTemplate("foo\\{bar}baz"));
+    }
+    
+    @Test
+    public void frequencyAdmission() {
+        CachingGSTParser caching = CachingGSTParser.builder().maximumEntries(1).build();
+        caching.parse("a");
+        caching.parse("a");
+        caching.parse("b");
+        caching.parse("a");
+        assertEquals(2, caching.stats().hits());
+        assertEquals(1, caching.stats().rejections());
+        
+        // "b" becomes more frequent than "a" on 4th parse
+        caching.parse("b");
+        caching.parse("b");
+        assertEquals(0, caching.stats().evictions());
+        caching.parse("b");
+        assertEquals(1, caching.stats().evictions());
+        assertEquals(3, caching.stats().rejections());
+        
+        caching.parse("b");
+        assertEquals(3, caching.stats().hits());
+    }
+    
+    @Test
+    public void admissionIsAllOrNothing() {
+        String big = "big \\{template} ".repeat(10);
+        long small = weight("a");
+        CachingGSTParser caching = CachingGSTParser.builder().maximumBytes(weight(big) + small - 1).build();
+        caching.parse("a");
+        for (int i = 0; i < 5; i++) caching.parse("b");
+        
+        // "big" has to evict both, it is more frequent than "a", but not than "b"
+        caching.parse(big);
+        caching.parse(big);
+        CacheStats stats = caching.stats();
+        assertEquals(2, stats.entries());
+        assertEquals(2 * small, stats.bytes());
+        assertEquals(0, stats.evictions());
+        assertEquals(2, stats.rejections());
+        
+        caching.parse("a");
+        assertEquals(5, caching.stats().hits());
+        
+        for (int i = 0; i < 5; i++) caching.parse(big);
+        stats = caching.stats();
+        assertEquals(1, stats.entries());
+        assertEquals(weight(big), stats.bytes());
+        assertEquals(2, stats.evictions());
+    }
+    
+    @Test
+    public void hitRate() {
+        assertEquals(1, new CacheStats(0, 0, 0, 0, 0, 0).hitRate());
+        assertEquals(0.75, new CacheStats(3, 1, 0, 0, 1, 100).hitRate());
+        
+        CachingGSTParser caching = CachingGSTParser.inst();
+        caching.parse("foo");
+        caching.parse("foo");
+        assertEquals(0.5, caching.stats().hitRate());
+    }
+    
+    @Test
+    public void invalidBounds() {
+        assertThrows(IllegalArgumentException.class, () -> CachingGSTParser.builder().maximumEntries(0).build());
+        assertThrows(IllegalArgumentException.class, () -> CachingGSTParser.builder().maximumBytes(0).build());
+        assertEquals(SimpleGSTParser.inst().parse("foo"), CachingGSTParser.builder().parser(SimpleGSTParser.inst()).maximumEntries(1).maximumBytes(1000).build().parse("foo"));
+    }
+    
+    @Test
+    public void boundedByBytes() {
+        CachingGSTParser caching = CachingGSTParser.builder().maximumBytes(2000).build();
+        for (int i = 0; i < 100; i++) {
+            String template = "template "+i+" \\{key"+i+"}";
+            caching.parse(template);
+            caching.parse(template);
+        }
+        
+        CacheStats stats = caching.stats();
+        assertTrue(stats.bytes() > 0);
+        assertTrue(stats.bytes() <= 2000, stats.toString());
+        
+        CachingGSTParser tiny = CachingGSTParser.builder().maximumBytes(1).build();
+        assertEquals(SimpleGSTParser.inst().parse("foo\\{bar}"), tiny.parse("foo\\{bar}"));
+        assertEquals(0, tiny.stats().entries());
+        assertEquals(1, tiny.stats().rejections());
+    }
+    
+    @Test
+    public void invalidTemplateIsNotCached() {
+        CachingGSTParser caching = CachingGSTParser.inst();
+        assertThrows(UnexpectedSpecialCharacterException.class, () -> caching.parse("Text \\{{var}}"));
+        assertThrows(UnexpectedSpecialCharacterException.class, () -> caching.parse("Text \\{{var}}"));
+        assertEquals(0, caching.stats().entries());
+    }
+    
+    @Test
+    public void concurrent() throws Exception {
+        GSTParser simple = SimpleGSTParser.inst();
+        CachingGSTParser caching = CachingGSTParser.builder().maximumEntries(4).build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                int seed = thread;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        String template = TemplateCorpus.DEFAULT.get((i * 7 + seed) % TemplateCorpus.DEFAULT.size());
+                        LinkedObjects<GSTPart> parts = caching.parse(template);
+                        assertEquals(simple.parse(template), parts, template);
+                        parts.add(Placeholder.DUMMY);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) future.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(caching.stats().entries() <= 4);
+    }
+    
+    private static long weight(String template) {
+        CachingGSTParser caching = CachingGSTParser.inst();
+        caching.parse(template);
+        return caching.stats().bytes();
+    }
+    
+    private static List<String> events(GSTParser parser, String template) {
+        List<String> events = new ArrayList<>();
+        parser.parse(template, new GSTSink() {
+            
+            @Override
+            public void onText(CharSequence source, int start, int end) {
+                events.add(start+"-"+end+" "+source.subSequence(start, end));
+            }
+            
+            @Override
+            public void onPlaceholder(CharSequence source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected) {
+                events.add(start+"-"+end+" "+key+" "+argument+" "+exclusion+" "+endExpected);
+            }
+            
+        });
+        return events;
+    }
+    
+}
\ No newline at end of file
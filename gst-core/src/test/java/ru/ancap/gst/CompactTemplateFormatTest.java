@@ -0,0 +1,100 @@
+package ru.ancap.gst;
+
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.parser.EscapingMode;
+import ru.ancap.gst.parser.compact.CompactTemplate;
+import ru.ancap.gst.parser.compact.CompactTemplateFormat;
+import ru.ancap.gst.parser.compact.SymbolTable;
+import ru.ancap.gst.parser.compact.TemplateFormatException;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactTemplateFormatTest {
+    
+    @Test
+    public void roundTrip() throws IOException {
+        SimpleGSTParser parser = SimpleGSTParser.inst();
+        Map<String, CompactTemplate> templates = new LinkedHashMap<>();
+        SymbolTable writeSymbols = new SymbolTable();
+        for (int i = 0; i < TemplateCorpus.DEFAULT.size(); i++) {
+            templates.put("template"+i, CompactTemplate.compile(parser, TemplateCorpus.DEFAULT.get(i), writeSymbols));
+        }
+        
+        SymbolTable readSymbols = new SymbolTable();
+        readSymbols.intern("other");
+        Map<String, CompactTemplate> read = CompactTemplateFormat.read(new ByteArrayInputStream(write(parser, templates)), parser, readSymbols);
+        
+        assertEquals(templates.keySet().stream().toList(), read.keySet().stream().toList());
+        for (var entry : templates.entrySet()) {
+            assertEquals(entry.getValue().toTemplate(), read.get(entry.getKey()).toTemplate(), entry.getKey());
+        }
+        assertSame(readSymbols, read.get("template0").symbols());
+        assertEquals(readSymbols.find("bar"), read.get("template0").keyId(1));
+    }
+    
+    @Test
+    public void otherSyntax() throws IOException {
+        SimpleGSTParser parser = SimpleGSTParser.inst();
+        byte[] written = write(parser, Map.of("foo", CompactTemplate.compile(parser, "foo\\{bar}", new SymbolTable())));
+        
+        SimpleGSTParser other = SimpleGSTParser.builder().escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER).build();
+        assertThrows(TemplateFormatException.class, () -> CompactTemplateFormat.read(new ByteArrayInputStream(written), other, new SymbolTable()));
+    }
+    
+    @Test
+    public void corrupted() throws IOException {
+        SimpleGSTParser parser = SimpleGSTParser.inst();
+        byte[] written = write(parser, Map.of("foo", CompactTemplate.compile(parser, "foo\\{bar}", new SymbolTable())));
+        
+        byte[] truncated = Arrays.copyOf(written, written.length - 3);
+        assertThrows(TemplateFormatException.class, () -> CompactTemplateFormat.read(new ByteArrayInputStream(truncated), parser, new SymbolTable()));
+        
+        byte[] otherVersion = written.clone();
+        otherVersion[5]++;
+        assertThrows(TemplateFormatException.class, () -> CompactTemplateFormat.read(new ByteArrayInputStream(otherVersion), parser, new SymbolTable()));
+        
+        assertThrows(TemplateFormatException.class, () -> CompactTemplateFormat.read(new ByteArrayInputStream(new byte[0]), parser, new SymbolTable()));
+    }
+    
+    @Test
+    public void corruptedAmountsAndOffsets() throws IOException {
+        SimpleGSTParser parser = SimpleGSTParser.inst();
+        byte[] written = write(parser, Map.of("foo", CompactTemplate.compile(parser, "foo\\{bar}", new SymbolTable())));
+        
+        // header takes 17 bytes, then symbols amount, "bar", templates amount, "foo", source, parts amount, 2 parts, arguments amount
+        for (int[] corruption : new int[][]{
+            {17, Integer.MAX_VALUE}, {17, -1}, {29, Integer.MAX_VALUE}, {41, Integer.MAX_VALUE}, {41, -5},
+            {55, Integer.MAX_VALUE / 3 + 1}, {55, -1}, {59, -1}, {63, 100}, {75, 10}, {79, 1 << 2}, {83, 1 << 30}
+        }) {
+            byte[] corrupted = written.clone();
+            ByteBuffer.wrap(corrupted).putInt(corruption[0], corruption[1]);
+            assertThrows(
+                TemplateFormatException.class,
+                () -> CompactTemplateFormat.read(new ByteArrayInputStream(corrupted), parser, new SymbolTable()),
+                Arrays.toString(corruption)
+            );
+        }
+        
+        byte[] withArgument = write(parser, Map.of("foo", CompactTemplate.compile(parser, "foo\\{bar:x}", new SymbolTable())));
+        byte[] textArgument = withArgument.clone();
+        ByteBuffer.wrap(textArgument).putInt(89, 0); // part of the only argument
+        assertThrows(TemplateFormatException.class, () -> CompactTemplateFormat.read(new ByteArrayInputStream(textArgument), parser, new SymbolTable()));
+        assertEquals("x", CompactTemplateFormat.read(new ByteArrayInputStream(withArgument), parser, new SymbolTable()).get("foo").argument(1));
+    }
+    
+    private static byte[] write(SimpleGSTParser parser, Map<String, CompactTemplate> templates) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CompactTemplateFormat.write(output, parser, templates);
+        return output.toByteArray();
+    }
+    
+}
\ No newline at end of file
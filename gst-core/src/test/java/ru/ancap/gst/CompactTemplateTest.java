@@ -0,0 +1,63 @@
+package ru.ancap.gst;
+
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.compact.CompactTemplate;
+import ru.ancap.gst.parser.compact.SymbolTable;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactTemplateTest {
+    
+    @Test
+    public void sameAsTemplate() {
+        GSTParser parser = SimpleGSTParser.inst();
+        for (String template : List.of(
+            "foo\\{bar}baz",
+            "fo\\}o\\{!bar:fizz}baz\\{bar2",
+            "foo\\{bar:!-4559{\\}6!89\\}56}baz",
+            "эава\\{ххц👲🏿👳🏿222}ззз👲🏿👳🏿зу",
+            "foo",
+            "",
+            "\\{a:1}\\{b}\\{c:3}\\{d}\\{e:5}\\{f}\\{g:7}\\{h}\\{i:9}\\{j}\\{k:11}"
+        )) {
+            assertEquals(parser.parseTemplate(template), CompactTemplate.compile(parser, template, new SymbolTable()).toTemplate(), template);
+        }
+    }
+    
+    @Test
+    public void parts() {
+        CompactTemplate template = CompactTemplate.compile(SimpleGSTParser.inst(), "fo\\}o\\{!bar:fizz}\\{baz", new SymbolTable());
+        
+        assertEquals(4, template.size());
+        assertTrue(template.isText(0));
+        assertEquals(0, template.start(0));
+        assertEquals(2, template.end(0));
+        assertEquals(3, template.start(1));
+        assertFalse(template.isText(2));
+        assertEquals("bar", template.key(2));
+        assertEquals("fizz", template.argument(2));
+        assertTrue(template.exclusion(2));
+        assertEquals("baz", template.key(3));
+        assertNull(template.argument(3));
+        assertFalse(template.exclusion(3));
+        assertFalse(template.endExpected());
+    }
+    
+    @Test
+    public void sharedKeys() {
+        SymbolTable symbols = new SymbolTable();
+        CompactTemplate first = CompactTemplate.compile(SimpleGSTParser.inst(), "\\{foo} and \\{bar}", symbols);
+        CompactTemplate second = CompactTemplate.compile(SimpleGSTParser.inst(), new StringBuilder("\\{bar} and \\{foo}"), symbols);
+        
+        assertEquals(2, symbols.size());
+        assertEquals(first.keyId(0), second.keyId(2));
+        assertSame(first.key(2), second.key(0));
+        assertEquals(first.keyId(2), symbols.find("bar"));
+        assertEquals(-1, symbols.find("baz"));
+    }
+    
+}
\ No newline at end of file
@@ -2,18 +2,33 @@ package ru.ancap.gst;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import ru.ancap.gst.buffer.PlaceholderHandler;
 import ru.ancap.gst.buffer.conf.ConfGSTTerminator;
+import ru.ancap.gst.buffer.conf.LenientOptionalHandler;
 import ru.ancap.gst.buffer.conf.OptionalHandler;
 import ru.ancap.gst.buffer.conf.exception.PlaceholderOverrideException;
 import ru.ancap.gst.buffer.conf.exception.PlaceholderProcessingException;
 import ru.ancap.gst.buffer.conf.exception.PlaceholderSetupToNowhereException;
 import ru.ancap.gst.buffer.conf.exception.UnhandledPlaceholderException;
+import ru.ancap.gst.parser.argument.ArgumentDecoder;
+import ru.ancap.gst.parser.compact.CompactTemplate;
+import ru.ancap.gst.parser.compact.SymbolTable;
 import ru.ancap.gst.parser.gst_structure.Placeholder;
+import ru.ancap.gst.parser.gst_structure.TemplateMetadata;
 import ru.ancap.gst.parser.simple.SimpleGSTParser;
 import ru.ancap.gst.parser.simple.exception.UnexpectedEndOfInputException;
+import ru.ancap.gst.parser.store.TemplateStore;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -98,6 +113,212 @@ public class ConfGSTTerminatorTest {
         assertThrows(PlaceholderSetupToNowhereException.class, () -> buffer.terminate(SimpleGSTParser.inst().parse("foobaz")));
     }
     
+    @Test
+    public void placeholderSetupToNowhereManyDeclarations() {
+        List<String> setToNowhere = new ArrayList<>();
+        var buffer = ConfGSTTerminator.newStrict()
+            .setupToNowhereHandler(OptionalHandler.checking((key, handler) -> setToNowhere.add(key)))
+            .placeholderOverrideHandler(new LenientOptionalHandler<>())
+            .build();
+        for (int i = 0; i < 200; i++) buffer.declare("key"+i, "value"+i);
+        buffer.declare("key64", "override");
+        String template = "\\{key0} \\{key63} \\{key64} \\{!key130} \\{key199}";
+        
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) if (!Set.of(0, 63, 64, 130, 199, 7).contains(i)) expected.add("key"+i);
+        assertEquals("value0 value63 override  value199", buffer.terminate(SimpleGSTParser.inst().parse(template), Set.of("key7")));
+        assertEquals(expected, setToNowhere);
+        setToNowhere.clear();
+        assertEquals("value0 value63 override  value199", buffer.terminate(SimpleGSTParser.inst().parseTemplate(template), Set.of("key7")));
+        assertEquals(expected, setToNowhere);
+        setToNowhere.clear();
+        assertEquals("value0 value63 override  value199", buffer.terminate(SimpleGSTParser.inst(), template, Set.of("key7")));
+        assertEquals(expected, setToNowhere);
+        setToNowhere.clear();
+        var fork = buffer.fork();
+        fork.declare("key200", "value200");
+        expected.add("key200");
+        assertEquals("value0 value63 override  value199", fork.terminate(SimpleGSTParser.inst().parse(template), Set.of("key7")));
+        assertEquals(Set.copyOf(expected), Set.copyOf(setToNowhere));
+        assertEquals(expected.size(), setToNowhere.size());
+    }
+    
+    @Test
+    public void freeze() {
+        var buffer = ConfGSTTerminator.newStrict().build();
+        for (int i = 0; i < 1000; i++) buffer.declare("key"+i, "value"+i);
+        buffer.declare("Aa", "collision1");
+        buffer.declare("BB", "collision2");
+        var frozen = buffer.freeze();
+        assertSame(frozen, frozen.freeze());
+        
+        StringBuilder template = new StringBuilder("\\{Aa} \\{BB}");
+        StringBuilder expected = new StringBuilder("collision1 collision2");
+        for (int i = 0; i < 1000; i++) {
+            template.append(" \\{key").append(i).append("}");
+            expected.append(" value").append(i);
+        }
+        assertEquals(expected.toString(), frozen.terminate(SimpleGSTParser.inst().parseTemplate(template)));
+        assertEquals("value7", frozen.findDeclaration("key7").handle(Placeholder.DUMMY));
+        assertNull(frozen.findDeclaration("key1000"));
+        assertThrows(UnhandledPlaceholderException.class, () -> frozen.terminate(SimpleGSTParser.inst().parse(template+"\\{key1000}")));
+        assertThrows(PlaceholderSetupToNowhereException.class, () -> frozen.terminate(SimpleGSTParser.inst().parse("\\{Aa}")));
+        
+        assertThrows(UnsupportedOperationException.class, () -> frozen.declare("key1000", "value"));
+        buffer.declare("key1000", "value1000");
+        assertNull(frozen.findDeclaration("key1000"));
+    }
+    
+    @Test
+    public void frozenConcurrently() {
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("bar", "buzz");
+        buffer.declare("argument", ph -> ph.argument().orElseThrow());
+        var frozen = buffer.freeze();
+        var template = SimpleGSTParser.inst().parseTemplate("foo \\{bar} \\{argument:x}");
+        assertTrue(IntStream.range(0, 10_000).parallel().allMatch(ignored -> frozen.terminate(template).equals("foo buzz x")));
+    }
+    
+    @Test
+    public void scope() {
+        var global = ConfGSTTerminator.newStrict().setupToNowhereHandler(new LenientOptionalHandler<>()).build();
+        global.declare("server", "main");
+        global.declare("user", "nobody");
+        global.declare("number", ArgumentDecoder.INT, (ph, number) -> ""+number * 2);
+        var frozen = global.freeze();
+        
+        var request = frozen.scope();
+        request.declare("user", "alice");
+        request.declare("number", ph -> ph.argument().orElseThrow());
+        assertEquals("alice@main 21", request.terminate(SimpleGSTParser.inst().parse("\\{user}@\\{server} \\{number:21}")));
+        assertEquals("nobody@main 42", frozen.terminate(SimpleGSTParser.inst().parse("\\{user}@\\{server} \\{number:21}")));
+        assertNull(request.argumentDecoders().find("number"));
+        assertSame(ArgumentDecoder.INT, frozen.scope().argumentDecoders().find("number"));
+        
+        var tenant = request.freeze().scope();
+        tenant.declare("tenant", "acme");
+        assertEquals("acme alice main", tenant.terminate(SimpleGSTParser.inst().parse("\\{tenant} \\{user} \\{server}")));
+        assertNull(request.findDeclaration("tenant"));
+        assertNull(frozen.findDeclaration("tenant"));
+    }
+    
+    @Test
+    public void scopeSetupToNowhere() {
+        List<String> setToNowhere = new ArrayList<>();
+        var global = ConfGSTTerminator.newStrict().setupToNowhereHandler(OptionalHandler.checking((key, handler) -> setToNowhere.add("global "+key))).build();
+        global.declare("server", "main");
+        global.declare("user", "nobody");
+        global.declare("unused", "unused");
+        
+        var request = ConfGSTTerminator.newStrict().parent(global).build();
+        request.declare("user", "alice");
+        request.declare("extra", "extra");
+        assertThrows(PlaceholderSetupToNowhereException.class, () -> request.terminate(SimpleGSTParser.inst().parse("\\{user}")));
+        setToNowhere.clear();
+        
+        assertEquals("alice main ", request.terminate(SimpleGSTParser.inst().parse("\\{user} \\{server} \\{!extra}")));
+        assertEquals(List.of("global unused"), setToNowhere);
+        setToNowhere.clear();
+        assertEquals("alice main ", request.terminate(SimpleGSTParser.inst().parseTemplate("\\{user} \\{server} \\{!extra}")));
+        assertEquals(List.of("global unused"), setToNowhere);
+        
+        var lenientRequest = ConfGSTTerminator.newStrict().setupToNowhereHandler(new LenientOptionalHandler<>()).parent(global).build();
+        lenientRequest.declare("extra", "extra");
+        setToNowhere.clear();
+        assertEquals("nobody", lenientRequest.terminate(SimpleGSTParser.inst().parse("\\{user}")));
+        assertEquals(List.of("global server", "global unused"), setToNowhere);
+    }
+    
+    @Test
+    public void fork() {
+        var base = ConfGSTTerminator.newStrict().placeholderOverrideHandler(new LenientOptionalHandler<>()).build();
+        base.declare("greeting", "hello");
+        base.declare("user", "nobody");
+        
+        var russian = base.fork();
+        russian.declare("greeting", "привет");
+        var admin = russian.fork();
+        admin.declare("user", "admin");
+        base.declare("user", "anonymous");
+        
+        var template = SimpleGSTParser.inst().parseTemplate("\\{greeting}, \\{user}");
+        assertEquals("hello, anonymous", base.terminate(template));
+        assertEquals("привет, nobody", russian.terminate(template));
+        assertEquals("привет, admin", admin.terminate(template));
+        assertThrows(PlaceholderSetupToNowhereException.class, () -> admin.terminate(SimpleGSTParser.inst().parse("\\{greeting}")));
+        
+        var frozen = base.freeze();
+        var forkOfFrozen = frozen.fork();
+        forkOfFrozen.declare("extra", "extra");
+        assertEquals("hello, anonymous extra", forkOfFrozen.terminate(SimpleGSTParser.inst().parse("\\{greeting}, \\{user} \\{extra}")));
+        assertNull(frozen.findDeclaration("extra"));
+        assertEquals("hello", forkOfFrozen.freeze().findDeclaration("greeting").handle(Placeholder.DUMMY));
+    }
+    
+    @Test
+    public void equalByDeclarations() {
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("greeting", "hello");
+        buffer.declare("user", "nobody");
+        var frozen = buffer.freeze();
+        var fork = buffer.fork();
+        
+        assertEquals(buffer, frozen);
+        assertEquals(buffer.hashCode(), frozen.hashCode());
+        assertEquals(frozen, fork);
+        assertEquals(frozen.hashCode(), fork.hashCode());
+        assertEquals(fork, frozen.fork());
+        
+        PlaceholderHandler handler = placeholder -> "extra";
+        fork.declareRaw("extra", handler);
+        assertNotEquals(buffer, fork);
+        assertNotEquals(frozen, fork);
+        buffer.declareRaw("extra", handler);
+        assertEquals(buffer, fork);
+        assertEquals(buffer.hashCode(), fork.hashCode());
+        
+        fork.declare("admin", "admin");
+        assertNotEquals(buffer, fork);
+        assertNotEquals(buffer.freeze(), buffer.scope().freeze());
+        
+        var first = ConfGSTTerminator.newStrict().build();
+        var second = ConfGSTTerminator.newStrict().build();
+        first.declareRaw("first", handler);
+        second.declareRaw("second", handler);
+        assertNotEquals(first, second);
+    }
+    
+    @Test
+    public void forkMatchesMap() {
+        // "Aa" and "BB" have equal hashes, so all their concatenations of equal length have equal hashes too
+        List<String> keys = new ArrayList<>(List.of("AaAa", "AaBB", "BBAa", "BBBB", "Aa", "BB"));
+        for (int i = 0; i < 3000; i++) keys.add("key"+i);
+        var random = new Random(42);
+        
+        var fork = ConfGSTTerminator.newLenient().build().fork();
+        var forks = new ArrayList<ConfGSTTerminator>();
+        var snapshots = new ArrayList<Map<String, String>>();
+        Map<String, String> expected = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            String key = keys.get(random.nextInt(keys.size()));
+            fork.declare(key, "value"+i);
+            expected.put(key, "value"+i);
+            if (i % 2000 == 0) {
+                forks.add(fork);
+                snapshots.add(new HashMap<>(expected));
+                fork = fork.fork();
+            }
+        }
+        forks.add(fork);
+        snapshots.add(expected);
+        for (int i = 0; i < forks.size(); i++) {
+            for (String key : keys) {
+                var declaration = forks.get(i).findDeclaration(key);
+                assertEquals(snapshots.get(i).get(key), declaration == null ? null : declaration.handle(Placeholder.DUMMY), key);
+            }
+        }
+    }
+    
     @Test
     public void placeholderSetupToNowhereLenient() {
         var buffer = ConfGSTTerminator.newLenient().build();
@@ -124,6 +345,63 @@ public class ConfGSTTerminatorTest {
         assertEquals("foobaz", buffer.terminate(SimpleGSTParser.inst().parse("foo\\{!bar}baz")));
     }
     
+    @Test
+    public void placeholderSetupToNowhereMetadata() {
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("bar", "buzz");
+        buffer.declare("bar2", "buzz2");
+        
+        var template = SimpleGSTParser.inst().parseTemplate("foo\\{bar}\\{!bar2}");
+        assertEquals("foobuzz", buffer.terminate(template));
+        buffer.checkSetupToNowhere(template.metadata(), Set.of());
+        buffer.declare("bar3", "buzz3");
+        assertThrows(PlaceholderSetupToNowhereException.class, () -> buffer.terminate(template));
+        assertThrows(PlaceholderSetupToNowhereException.class, () -> buffer.checkSetupToNowhere(template.metadata(), Set.of()));
+        buffer.checkSetupToNowhere(template.metadata(), Set.of("bar3"));
+    }
+    
+    @Test
+    public void placeholderSetupToNowhereMetadataCheckedOnce() {
+        List<String> setToNowhere = new ArrayList<>();
+        var buffer = ConfGSTTerminator.newStrict()
+            .setupToNowhereHandler(OptionalHandler.checking((key, handler) -> setToNowhere.add(key)))
+            .placeholderOverrideHandler(new LenientOptionalHandler<>())
+            .build();
+        buffer.declare("bar", "buzz");
+        int[] iterations = {0};
+        Set<String> keys = new AbstractSet<>() {
+            @Override
+            public Iterator<String> iterator() {
+                iterations[0]++;
+                return List.of("bar").iterator();
+            }
+            
+            @Override
+            public int size() {
+                return 1;
+            }
+        };
+        TemplateMetadata metadata = new TemplateMetadata(keys, Set.of(), Set.of(), true);
+        Set<String> excludedKeys = Set.of();
+        
+        buffer.checkSetupToNowhere(metadata, excludedKeys);
+        buffer.checkSetupToNowhere(metadata, excludedKeys);
+        buffer.declare("bar", "buzz2");
+        buffer.checkSetupToNowhere(metadata, excludedKeys);
+        assertEquals(1, iterations[0]);
+        
+        buffer.declare("bar2", "buzz2");
+        buffer.checkSetupToNowhere(metadata, excludedKeys);
+        buffer.checkSetupToNowhere(metadata, excludedKeys);
+        assertEquals(3, iterations[0]);
+        assertEquals(List.of("bar2", "bar2"), setToNowhere);
+        
+        var template = SimpleGSTParser.inst().parseTemplate("foo\\{bar}");
+        assertEquals("foobuzz2", buffer.terminate(template, Set.of("bar2")));
+        assertEquals("foobuzz2", buffer.terminate(template, Set.of("bar2")));
+        assertEquals(List.of("bar2", "bar2"), setToNowhere);
+    }
+    
     @Test
     public void externalExcludedKeys() {
         var buffer = ConfGSTTerminator.newStrict().build();
@@ -246,4 +524,73 @@ public class ConfGSTTerminatorTest {
         assertEquals("", buffer.terminate(SimpleGSTParser.inst().parse(""), Set.of("bar")));
     }
     
+    @Test
+    public void template() {
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("bar", ph -> ph.argument().orElseThrow());
+        buffer.declare("bar2", "buzz2");
+        
+        assertEquals("f}oofizzbaz", buffer.terminate(SimpleGSTParser.inst().parseTemplate("f\\}oo\\{bar:fizz}baz\\{!bar2}")));
+        assertEquals("", buffer.terminate(SimpleGSTParser.inst().parseTemplate(""), Set.of("bar", "bar2")));
+    }
+    
+    @Test
+    public void templateUnexpectedEndOfInput() {
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("bar", "buzz");
+        
+        assertThrows(UnexpectedEndOfInputException.class, () -> buffer.terminate(SimpleGSTParser.inst().parseTemplate("foo\\{bar:arg")));
+    }
+    
+    @Test
+    public void compactTemplate() {
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("bar", ph -> ph.argument().orElseThrow());
+        buffer.declare("bar2", "buzz2");
+        
+        assertEquals("f}oofizzbaz", buffer.terminate(CompactTemplate.compile(SimpleGSTParser.inst(), "f\\}oo\\{bar:fizz}baz\\{!bar2}", new SymbolTable())));
+        assertThrows(PlaceholderSetupToNowhereException.class, () -> buffer.terminate(CompactTemplate.compile(SimpleGSTParser.inst(), "foobaz", new SymbolTable())));
+        assertThrows(UnexpectedEndOfInputException.class, () -> buffer.terminate(CompactTemplate.compile(SimpleGSTParser.inst(), "foo\\{bar:arg", new SymbolTable())));
+    }
+    
+    @Test
+    public void storedTemplate() {
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("bar", ph -> ph.originalPart().index() + ph.argument().orElseThrow());
+        buffer.declare("bar2", "buzz2");
+        
+        assertEquals("f}oo5fizzbaz", buffer.terminate(TemplateStore.inst().store("f\\}oo\\{bar:fizz}baz\\{!bar2}")));
+        assertThrows(UnexpectedEndOfInputException.class, () -> buffer.terminate(TemplateStore.inst().store("foo\\{bar:arg")));
+    }
+    
+    @Test
+    public void oneShot() {
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("bar", ph -> ph.argument().orElseThrow());
+        buffer.declare("bar2", "buzz2");
+        
+        assertEquals("f}oofizzbaz", buffer.terminate(SimpleGSTParser.inst(), "f\\}oo\\{bar:fizz}baz\\{!bar2}"));
+    }
+    
+    @Test
+    public void oneShotSetupToNowhere() {
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("bar", "buzz");
+        
+        assertThrows(PlaceholderSetupToNowhereException.class, () -> buffer.terminate(SimpleGSTParser.inst(), "foobaz"));
+        assertEquals("foobaz", buffer.terminate(SimpleGSTParser.inst(), "foobaz", Set.of("bar")));
+    }
+    
+    @Test
+    public void oneShotUnexpectedEndOfInput() {
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("bar", "buzz");
+        
+        assertThrows(UnexpectedEndOfInputException.class, () -> buffer.terminate(SimpleGSTParser.inst(), "foo\\{bar:arg"));
+        
+        var lenientBuffer = ConfGSTTerminator.newLenient().build();
+        lenientBuffer.declare("bar", "buzz");
+        assertEquals("foobuzz", lenientBuffer.terminate(SimpleGSTParser.inst(), "foo\\{bar:arg"));
+    }
+    
 }
\ No newline at end of file
@@ -0,0 +1,224 @@
+package ru.ancap.gst;
+
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.buffer.conf.ConfGSTTerminator;
+import ru.ancap.gst.parser.EscapingMode;
+import ru.ancap.gst.parser.PartsCollector;
+import ru.ancap.gst.parser.compact.TemplateFormatException;
+import ru.ancap.gst.parser.mapped.MappedString;
+import ru.ancap.gst.parser.mapped.MappedTemplate;
+import ru.ancap.gst.parser.mapped.MappedTemplateStore;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedTemplateStoreTest {
+    
+    @Test
+    public void sameParts() throws IOException {
+        SimpleGSTParser parser = SimpleGSTParser.inst();
+        Map<String, String> templates = new LinkedHashMap<>();
+        for (int i = 0; i < TemplateCorpus.DEFAULT.size(); i++) templates.put("template"+i, TemplateCorpus.DEFAULT.get(i));
+        
+        Path file = Files.createTempFile("gst", ".gstm");
+        try {
+            MappedTemplateStore.write(file, parser, templates);
+            MappedTemplateStore store = MappedTemplateStore.open(file, parser);
+            assertEquals(templates.size(), store.size());
+            for (var entry : templates.entrySet()) {
+                MappedTemplate template = store.find(entry.getKey());
+                assertNotNull(template, entry.getKey());
+                assertEquals(entry.getKey(), template.name());
+                assertEquals(entry.getValue(), template.source().toString());
+                assertEquals(parser.parseTemplate(entry.getValue()), template.toTemplate(), entry.getKey());
+            }
+            assertNull(store.find("template"+templates.size()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+    
+    @Test
+    public void render() throws IOException {
+        SimpleGSTParser parser = SimpleGSTParser.inst();
+        Path file = Files.createTempFile("gst", ".gstm");
+        try {
+            MappedTemplateStore.write(file, parser, Map.of("greeting", "Hello, \\{name}! \\{!hidden}Ъ\\{name:arg}"));
+            MappedTemplate template = MappedTemplateStore.open(file, parser).find("greeting");
+            assertNotNull(template);
+            
+            var buffer = ConfGSTTerminator.newStrict().build();
+            buffer.declare("name", placeholder -> "world"+placeholder.argument().map(argument -> "/"+argument).orElse(""));
+            buffer.declare("hidden", "never");
+            assertEquals("Hello, world! Ъworld/arg", buffer.terminate(template));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+    
+    @Test
+    public void offHeap() throws IOException {
+        SimpleGSTParser parser = SimpleGSTParser.inst();
+        Map<String, String> templates = new LinkedHashMap<>();
+        for (int i = 0; i < TemplateCorpus.DEFAULT.size(); i++) templates.put("template"+i, TemplateCorpus.DEFAULT.get(i));
+        
+        MappedTemplateStore store = MappedTemplateStore.allocate(parser, templates);
+        for (var entry : templates.entrySet()) {
+            MappedTemplate template = store.find(entry.getKey());
+            assertNotNull(template, entry.getKey());
+            assertEquals(parser.parseTemplate(entry.getValue()), template.toTemplate(), entry.getKey());
+        }
+        
+        var buffer = ConfGSTTerminator.newLenient().build();
+        buffer.declare("bar", "fizz");
+        //noinspection DataFlowIssue
+        assertEquals("foofizzbaz", buffer.terminate(store.find("template0")));
+    }
+    
+    @Test
+    public void nonLatin1() throws IOException {
+        SimpleGSTParser parser = SimpleGSTParser.inst();
+        String source = "Привет, \\{имя:арг}! 👋";
+        MappedTemplate template = MappedTemplateStore.allocate(parser, Map.of("приветствие", source)).find("приветствие");
+        assertNotNull(template);
+        assertEquals("MappedTemplate[name=приветствие, parts=3]", template.toString());
+        assertTrue(template.endExpected());
+        
+        MappedString mapped = template.source();
+        assertEquals(source.length(), mapped.length());
+        assertEquals('П', mapped.charAt(0));
+        assertEquals(source.charAt(source.length() - 1), mapped.charAt(source.length() - 1));
+        assertTrue(mapped.contentEquals(source));
+        assertFalse(mapped.contentEquals(source.replace('П', 'п')));
+        assertFalse(mapped.contentEquals("Привет"));
+        assertEquals("вет", mapped.subSequence(3, 6).toString());
+        assertEquals('е', mapped.subSequence(3, 6).charAt(1));
+        StringBuilder builder = new StringBuilder();
+        mapped.appendTo(builder, 0, 6);
+        assertEquals("Привет", builder.toString());
+        assertThrows(IndexOutOfBoundsException.class, () -> mapped.charAt(source.length()));
+        assertThrows(IndexOutOfBoundsException.class, () -> mapped.charAt(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> mapped.subSequence(2, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> mapped.appendTo(new StringBuilder(), 0, source.length() + 1));
+        
+        PartsCollector collector = new PartsCollector();
+        template.replay(collector);
+        assertEquals(parser.parse(source), collector.result());
+        assertEquals("арг", template.argument(1));
+        
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("имя", placeholder -> "мир/"+placeholder.argument().orElseThrow());
+        assertEquals("Привет, мир/арг! 👋", buffer.terminate(template));
+    }
+    
+    @Test
+    public void biggerThanInitialBuffer() throws IOException {
+        SimpleGSTParser parser = SimpleGSTParser.inst();
+        Map<String, String> templates = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) templates.put("template"+i, "text "+i+" \\{key"+i+":argument "+i+"} more text ".repeat(3));
+        templates.put("long", "x".repeat(10_000));
+        
+        MappedTemplateStore store = MappedTemplateStore.allocate(parser, templates);
+        assertEquals(templates.size(), store.size());
+        for (var entry : templates.entrySet()) {
+            MappedTemplate template = store.find(entry.getKey());
+            assertNotNull(template, entry.getKey());
+            assertEquals(parser.parseTemplate(entry.getValue()), template.toTemplate(), entry.getKey());
+        }
+    }
+    
+    @Test
+    public void corrupted() throws IOException {
+        SimpleGSTParser parser = SimpleGSTParser.inst();
+        Path file = Files.createTempFile("gst", ".gstm");
+        try {
+            MappedTemplateStore.write(file, parser, Map.of("foo", "foo\\{bar}"));
+            byte[] written = Files.readAllBytes(file);
+            
+            // header: amount of symbols at 20, offset of symbols at 24, amount of templates at 28, capacity of templates table at 32 and its offset at 36
+            for (int[] corruption : new int[][]{{20, -1}, {20, 1 << 20}, {24, -4}, {24, written.length}, {28, 2}, {32, 0}, {32, 3}, {36, written.length - 4}}) {
+                byte[] corrupted = written.clone();
+                ByteBuffer.wrap(corrupted).putInt(corruption[0], corruption[1]);
+                Files.write(file, corrupted);
+                assertThrows(TemplateFormatException.class, () -> MappedTemplateStore.open(file, parser), Arrays.toString(corruption));
+            }
+            
+            Files.write(file, Arrays.copyOf(written, 40));
+            assertThrows(TemplateFormatException.class, () -> MappedTemplateStore.open(file, parser));
+            
+            byte[] otherVersion = written.clone();
+            otherVersion[5]++;
+            Files.write(file, otherVersion);
+            assertThrows(TemplateFormatException.class, () -> MappedTemplateStore.open(file, parser));
+            
+            // templates table: slots with offset outside of file or inside header
+            int tableOffset = ByteBuffer.wrap(written).getInt(36);
+            for (int record : new int[]{written.length, written.length - 4, 8, -2}) {
+                byte[] corrupted = written.clone();
+                ByteBuffer.wrap(corrupted).putInt(tableOffset, record);
+                Files.write(file, corrupted);
+                assertThrows(TemplateFormatException.class, () -> MappedTemplateStore.open(file, parser), Integer.toString(record));
+            }
+            
+            // template record: source at 4, amount of parts at 8, then start, end, key and argument of text part at 12 and of placeholder part at 28
+            int record = Math.max(ByteBuffer.wrap(written).getInt(tableOffset), ByteBuffer.wrap(written).getInt(tableOffset + Integer.BYTES));
+            for (int[] corruption : new int[][]{{4, written.length}, {8, 1 << 20}, {8, -1}, {16, 100}, {24, 40}, {36, 5 << 2}, {40, written.length}}) {
+                byte[] corrupted = written.clone();
+                ByteBuffer.wrap(corrupted).putInt(record + corruption[0], corruption[1]);
+                Files.write(file, corrupted);
+                MappedTemplateStore store = MappedTemplateStore.open(file, parser);
+                assertThrows(TemplateFormatException.class, () -> store.find("foo"), Arrays.toString(corruption));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+    
+    @Test
+    public void fullTable() throws IOException {
+        SimpleGSTParser parser = SimpleGSTParser.inst();
+        Path file = Files.createTempFile("gst", ".gstm");
+        try {
+            MappedTemplateStore.write(file, parser, Map.of("foo", "foo\\{bar}"));
+            byte[] full = Files.readAllBytes(file);
+            ByteBuffer buffer = ByteBuffer.wrap(full);
+            int tableCapacity = buffer.getInt(32);
+            int tableOffset = buffer.getInt(36);
+            int record = -1;
+            for (int slot = 0; slot < tableCapacity; slot++) record = Math.max(record, buffer.getInt(tableOffset + slot * Integer.BYTES));
+            for (int slot = 0; slot < tableCapacity; slot++) buffer.putInt(tableOffset + slot * Integer.BYTES, record);
+            buffer.putInt(28, tableCapacity);
+            Files.write(file, full);
+            
+            MappedTemplateStore store = MappedTemplateStore.open(file, parser);
+            assertNull(store.find("bar"));
+            assertNotNull(store.find("foo"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+    
+    @Test
+    public void otherSyntax() throws IOException {
+        Path file = Files.createTempFile("gst", ".gstm");
+        try {
+            MappedTemplateStore.write(file, SimpleGSTParser.inst(), Map.of("foo", "foo\\{bar}"));
+            SimpleGSTParser other = SimpleGSTParser.builder().escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER).build();
+            assertThrows(TemplateFormatException.class, () -> MappedTemplateStore.open(file, other));
+            
+            Files.write(file, new byte[]{1, 2, 3});
+            assertThrows(TemplateFormatException.class, () -> MappedTemplateStore.open(file, SimpleGSTParser.inst()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,74 @@
+package ru.ancap.gst;
+
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.parser.EscapingMode;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.simple.ParallelGSTParser;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+import ru.ancap.gst.parser.simple.exception.RegularCharacterEscapedException;
+import ru.ancap.gst.parser.simple.exception.UnexpectedSpecialCharacterException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ParallelGSTParserTest {
+    
+    @Test
+    public void unescapedIsPlaceholder() {
+        var simple = SimpleGSTParser.builder().escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER).build();
+        GSTParser parallel = ParallelGSTParser.builder().parser(simple).sequentialThreshold(0).minChunkLength(3).build();
+        
+        for (String template : List.of("foo{bar:fizz\\}}baz{!b}", "{a}{b}{c:{}", "\\{a}{b:c}d}")) {
+            assertEquals(simple.parse(template), parallel.parse(template), template);
+        }
+    }
+    
+    @Test
+    public void longTemplate() {
+        String template = "text with \\{placeholder:and argument} and \\} escaped \\\\ characters ".repeat(300);
+        GSTParser parallel = ParallelGSTParser.builder().sequentialThreshold(0).minChunkLength(1000).build();
+        
+        assertEquals(SimpleGSTParser.inst().parse(template), parallel.parse(template));
+    }
+    
+    @Test
+    public void speculativePlaceholderInsideArgument() {
+        GSTParser simple = SimpleGSTParser.inst();
+        for (int chunkLength = 1; chunkLength <= 8; chunkLength++) {
+            GSTParser parallel = ParallelGSTParser.builder().sequentialThreshold(0).minChunkLength(chunkLength).build();
+            for (String template : List.of("a\\{k:x \\{a{b \\{c} tail \\{d}", "\\{k:\\{!{!}text", "\\{k:\\{a:}x}y", "abc\\{k:xy}\\{d}zzzz", "\\{k:x \\{a{b} tail tail tail")) {
+                assertEquals(simple.parse(template), parallel.parse(template), template+" by "+chunkLength);
+            }
+        }
+    }
+    
+    @Test
+    public void regularCharacterEscaped() {
+        for (int chunkLength = 1; chunkLength <= 5; chunkLength++) {
+            GSTParser parallel = ParallelGSTParser.builder().sequentialThreshold(0).minChunkLength(chunkLength).build();
+            
+            var exception = assertThrows(RegularCharacterEscapedException.class, () -> parallel.parse("foo \\{bar} b\\az"));
+            assertEquals(13, exception.index());
+        }
+    }
+    
+    @Test
+    public void defaults() {
+        String template = "text with \\{placeholder:and argument} ".repeat(3000);
+        
+        assertEquals(SimpleGSTParser.inst().parse(template), ParallelGSTParser.inst().parse(template));
+        assertThrows(IllegalArgumentException.class, () -> ParallelGSTParser.builder().minChunkLength(0).build());
+    }
+    
+    @Test
+    public void illegalName() {
+        GSTParser parallel = ParallelGSTParser.builder().sequentialThreshold(0).minChunkLength(2).build();
+        
+        var exception = assertThrows(UnexpectedSpecialCharacterException.class, () -> parallel.parse("Text \\{{var}}"));
+        assertEquals(7, exception.index());
+        assertEquals('{', exception.illegalSpecialCharacter());
+    }
+    
+}
\ No newline at end of file
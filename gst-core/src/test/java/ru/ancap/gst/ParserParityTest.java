@@ -0,0 +1,36 @@
+package ru.ancap.gst;
+
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.cache.CachingGSTParser;
+import ru.ancap.gst.parser.sequence.SequenceGSTParser;
+import ru.ancap.gst.parser.simple.ParallelGSTParser;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+import ru.ancap.gst.parser.table.TableGSTParser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ParserParityTest {
+    
+    @Test
+    public void sameAsSimple() {
+        Map<String, GSTParser> parsers = new LinkedHashMap<>();
+        parsers.put("table", TableGSTParser.inst());
+        parsers.put("sequence", SequenceGSTParser.inst());
+        parsers.put("caching", CachingGSTParser.inst());
+        for (int chunkLength = 1; chunkLength <= 5; chunkLength++) {
+            parsers.put("parallel by "+chunkLength, ParallelGSTParser.builder().sequentialThreshold(0).minChunkLength(chunkLength).build());
+        }
+        
+        GSTParser simple = SimpleGSTParser.inst();
+        for (var parser : parsers.entrySet()) {
+            for (String template : TemplateCorpus.DEFAULT) {
+                assertEquals(simple.parse(template), parser.getValue().parse(template), template+" in "+parser.getKey());
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,86 @@
+package ru.ancap.gst;
+
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.buffer.conf.ConfGSTTerminator;
+import ru.ancap.gst.buffer.conf.exception.UnhandledPlaceholderException;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.gst_structure.Template;
+import ru.ancap.gst.parser.partial.PartialCycleException;
+import ru.ancap.gst.parser.partial.PartialRegistry;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartialRegistryTest {
+    
+    private static final GSTParser PARSER = SimpleGSTParser.inst();
+    
+    @Test
+    public void include() {
+        PartialRegistry registry = PartialRegistry.inst();
+        registry.register("header", PARSER, "Hello, \\{name}! ");
+        registry.register("footer", PARSER, " Bye.");
+        Template message = registry.register("message", PARSER, "\\{>header}You have \\{amount} coins.\\{>footer}\\{!>footer}");
+        
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("name", "Steve");
+        buffer.declare("amount", "5");
+        assertEquals("Hello, Steve! You have 5 coins. Bye.", buffer.terminate(message));
+        assertEquals(Set.of("name", "amount"), message.metadata().keys());
+    }
+    
+    @Test
+    public void relink() {
+        PartialRegistry registry = PartialRegistry.inst();
+        registry.register("name", PARSER, "Steve");
+        registry.register("header", PARSER, "Hello, \\{>name}!");
+        Template parsed = PARSER.parseTemplate("\\{>header} Welcome.");
+        registry.register("message", parsed);
+        
+        var buffer = ConfGSTTerminator.newStrict().build();
+        assertEquals("Hello, Steve! Welcome.", buffer.terminate(registry.find("message")));
+        registry.register("name", PARSER, "Alex");
+        assertEquals("Hello, Alex! Welcome.", buffer.terminate(registry.find("message")));
+        assertEquals("Hello, Alex!", buffer.terminate(registry.find("header")));
+        
+        registry.remove("header");
+        assertNull(registry.find("header"));
+        assertThrows(UnhandledPlaceholderException.class, () -> buffer.terminate(registry.find("message")));
+        registry.register("header", PARSER, "Hi, \\{>name}.");
+        assertEquals("Hi, Alex. Welcome.", buffer.terminate(registry.find("message")));
+    }
+    
+    @Test
+    public void missingPartial() {
+        PartialRegistry registry = PartialRegistry.inst();
+        Template message = registry.register("message", PARSER, "a\\{>later}b");
+        assertEquals("a\\{>later}b", ConfGSTTerminator.newLenient().build().terminate(message));
+        registry.register("later", PARSER, "-");
+        assertEquals("a-b", ConfGSTTerminator.newStrict().build().terminate(registry.find("message")));
+        assertEquals("x-", ConfGSTTerminator.newStrict().build().terminate(registry.link(PARSER.parseTemplate("x\\{>later}"))));
+    }
+    
+    @Test
+    public void cycle() {
+        PartialRegistry registry = PartialRegistry.inst();
+        registry.register("a", PARSER, "a\\{>b}");
+        registry.register("b", PARSER, "b");
+        assertThrows(PartialCycleException.class, () -> registry.register("b", PARSER, "b\\{>a}"));
+        assertThrows(PartialCycleException.class, () -> registry.register("c", PARSER, "\\{>c}"));
+        
+        assertNull(registry.find("c"));
+        assertEquals("ab", ConfGSTTerminator.newStrict().build().terminate(registry.find("a")));
+        registry.register("b", PARSER, "B");
+        assertEquals("aB", ConfGSTTerminator.newStrict().build().terminate(registry.find("a")));
+    }
+    
+    @Test
+    public void customPrefix() {
+        PartialRegistry registry = PartialRegistry.builder().includePrefix("@").build();
+        registry.register("part", PARSER, "P");
+        assertEquals("[P]", ConfGSTTerminator.newStrict().build().terminate(registry.register("whole", PARSER, "[\\{@part}]")));
+    }
+    
+}
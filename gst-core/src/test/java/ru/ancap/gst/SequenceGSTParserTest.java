@@ -0,0 +1,127 @@
+package ru.ancap.gst;
+
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.parser.EscapingMode;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.SpecialCharacterSet;
+import ru.ancap.gst.parser.SpecialSequenceSet;
+import ru.ancap.gst.parser.gst_structure.DirectPlaceholderData;
+import ru.ancap.gst.parser.gst_structure.GSTPart;
+import ru.ancap.gst.parser.gst_structure.Placeholder;
+import ru.ancap.gst.parser.gst_structure.Text;
+import ru.ancap.gst.parser.sequence.SequenceGSTParser;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+import ru.ancap.gst.parser.simple.exception.RegularCharacterEscapedException;
+import ru.ancap.gst.parser.simple.exception.UnexpectedSpecialCharacterException;
+import ru.ancap.gst.util.LinkedObjects;
+
+import java.nio.CharBuffer;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SequenceGSTParserTest {
+    
+    @Test
+    public void ofCharacterSet() {
+        var characters = SpecialCharacterSet.builder().closure('[', ']').argumentDelimiter('_').exclusionChar('?').escapingCharacter('+').build();
+        for (EscapingMode mode : EscapingMode.values()) {
+            for (SpecialCharacterSet set : List.of(SpecialCharacterSet.DEFAULT, characters)) {
+                GSTParser simple = SimpleGSTParser.builder().specialCharacterSet(set).escapingMode(mode).build();
+                GSTParser sequence = SequenceGSTParser.builder().specialSequenceSet(SpecialSequenceSet.of(set)).escapingMode(mode).build();
+                
+                for (String template : TemplateCorpus.DEFAULT) {
+                    String translated = template.chars()
+                        .map(char_ -> switch (char_) {
+                            case '{'  -> set.opening();
+                            case '}'  -> set.closing();
+                            case ':'  -> set.argumentDelimiter();
+                            case '!'  -> set.exclusionChar();
+                            case '\\' -> set.escapingCharacter();
+                            default   -> char_;
+                        })
+                        .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
+                        .toString();
+                    assertEquals(simple.parse(translated), sequence.parse(new StringBuilder(translated)), translated+" in "+mode);
+                }
+            }
+        }
+        assertEquals(SpecialSequenceSet.DEFAULT, SpecialSequenceSet.of(SpecialCharacterSet.DEFAULT));
+    }
+    
+    @Test
+    public void customClosureCharSequence() {
+        var set = SpecialSequenceSet.builder().closure("<%", "%>").argumentDelimiter("|").build();
+        GSTParser parser = SequenceGSTParser.builder().specialSequenceSet(set).escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER).build();
+        
+        LinkedObjects<GSTPart> expected = new LinkedObjects<>();
+        expected.add(new Text(0, "a % <b "));
+        expected.add(new Placeholder(new DirectPlaceholderData("c", Optional.of("d%"), new Text(7, "<%c|d%%>")), false, true));
+        expected.add(new Text(15, " <"));
+        
+        assertEquals(expected, parser.parse(CharBuffer.wrap("a % <b <%c|d%%> <")));
+    }
+    
+    @Test
+    public void dollarBraces() {
+        var set = SpecialSequenceSet.builder().closure("${", "}").build();
+        GSTParser parser = SequenceGSTParser.builder().specialSequenceSet(set).escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER).build();
+        
+        LinkedObjects<GSTPart> expected = new LinkedObjects<>();
+        expected.add(new Text(0, "costs $5 {or} "));
+        expected.add(new Placeholder(new DirectPlaceholderData("price", Optional.of("usd"), new Text(14, "${price:usd}")), false, true));
+        expected.add(new Text(26, " ${escaped}"));
+        
+        assertEquals(expected, parser.parse("costs $5 {or} ${price:usd} \\${escaped}"));
+    }
+    
+    @Test
+    public void doubleBraces() {
+        var set = SpecialSequenceSet.builder().closure("{{", "}}").argumentDelimiter("::").exclusionMarker("!!").build();
+        GSTParser parser = SequenceGSTParser.builder().specialSequenceSet(set).escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER).build();
+        
+        LinkedObjects<GSTPart> expected = new LinkedObjects<>();
+        expected.add(new Placeholder(new DirectPlaceholderData("a:b!c}", Optional.of("}}x"), new Text(0, "{{!!a:b!c}::\\}}x}}")), true, true));
+        expected.add(new Text(18, "{y}"));
+        expected.add(new Placeholder(new DirectPlaceholderData("z", Optional.empty(), new Text(21, "{{z")), false, false));
+        
+        assertEquals(expected, parser.parse("{{!!a:b!c}::\\}}x}}{y}{{z"));
+    }
+    
+    @Test
+    public void illegalName() {
+        var set = SpecialSequenceSet.builder().closure("${", "}").build();
+        GSTParser parser = SequenceGSTParser.builder().specialSequenceSet(set).escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER).build();
+        
+        var exception = assertThrows(UnexpectedSpecialCharacterException.class, () -> parser.parse("${a${b}}"));
+        assertEquals(3, exception.index());
+        assertEquals('$', exception.illegalSpecialCharacter());
+    }
+    
+    @Test
+    public void regularCharacterEscaped() {
+        var set = SpecialSequenceSet.builder().closure("{{", "}}").build();
+        GSTParser parser = SequenceGSTParser.builder().specialSequenceSet(set).build();
+        
+        var exception = assertThrows(RegularCharacterEscapedException.class, () -> parser.parse("\\{{a}} \\{b"));
+        assertEquals(8, exception.index());
+        assertEquals('{', exception.escapedCharacter());
+    }
+    
+    @Test
+    public void emptyDelimiter() {
+        var set = SpecialSequenceSet.builder().exclusionMarker("").build();
+        
+        assertThrows(IllegalArgumentException.class, () -> SequenceGSTParser.builder().specialSequenceSet(set).build());
+    }
+    
+    @Test
+    public void delimiterStartsWithEscapingCharacter() {
+        var set = SpecialSequenceSet.builder().closure("\\(", ")").build();
+        
+        assertThrows(IllegalArgumentException.class, () -> SequenceGSTParser.builder().specialSequenceSet(set).build());
+    }
+    
+}
\ No newline at end of file
@@ -1,22 +1,32 @@
 package ru.ancap.gst;
 
+import org.jetbrains.annotations.Nullable;
 import org.junit.jupiter.api.Test;
 import ru.ancap.gst.parser.EscapingMode;
 import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.GSTSink;
 import ru.ancap.gst.parser.SpecialCharacterSet;
+import ru.ancap.gst.parser.diagnostic.Diagnostic;
 import ru.ancap.gst.parser.gst_structure.DirectPlaceholderData;
 import ru.ancap.gst.parser.gst_structure.GSTPart;
 import ru.ancap.gst.parser.gst_structure.Placeholder;
 import ru.ancap.gst.parser.gst_structure.Text;
+import ru.ancap.gst.parser.simple.LenientParse;
 import ru.ancap.gst.parser.simple.SimpleGSTParser;
 import ru.ancap.gst.parser.simple.exception.RegularCharacterEscapedException;
 import ru.ancap.gst.parser.simple.exception.UnexpectedSpecialCharacterException;
 import ru.ancap.gst.util.LinkedObjects;
 
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SimpleGSTParserTest {
     
@@ -217,6 +227,178 @@ public class SimpleGSTParserTest {
         assertEquals(expected, parser.parse("foo\\{bar\\\\\\}baz"));
     }
     
+    @Test
+    public void escapedSpecialCharacterInText() {
+        LinkedObjects<GSTPart> expected = new LinkedObjects<>();
+        expected.add(new Text(0, "fo}o"));
+        expected.add(new Placeholder(new DirectPlaceholderData("bar", Optional.empty(), new Text(5, "\\{bar}")), false, true));
+        expected.add(new Text(11, "b:az"));
+        
+        SimpleGSTParser parser = SimpleGSTParser.inst();
+        
+        assertEquals(expected, parser.parse("fo\\}o\\{bar}b\\:az"));
+    }
+    
+    @Test
+    public void charSequenceTemplate() {
+        LinkedObjects<GSTPart> expected = new LinkedObjects<>();
+        expected.add(new Text(0, "foo"));
+        expected.add(new Placeholder(new DirectPlaceholderData("bar", Optional.of("fizz"), new Text(3, "\\{bar:fizz}")), false, true));
+        expected.add(new Text(14, "baz"));
+        
+        SimpleGSTParser parser = SimpleGSTParser.inst();
+        
+        assertEquals(expected, parser.parse(new StringBuilder("foo\\{bar:fizz}baz")));
+        assertEquals(expected, parser.parse(CharBuffer.wrap("foo\\{bar:fizz}baz")));
+    }
+    
+    @Test
+    public void textView() {
+        Text view = Text.view(3, "xxfoobar", 2, 5);
+        
+        assertEquals(3, view.length());
+        assertEquals(new Text(3, "foo"), view);
+        assertEquals(new Text(3, "foo").hashCode(), view.hashCode());
+        assertNotEquals(new Text(4, "foo"), view);
+        assertNotEquals("foo", view);
+        assertEquals("Text[index=3, string=foo]", view.toString());
+        
+        assertSame(view, view.withIndex(3));
+        assertEquals(new Text(7, "foo"), view.withIndex(7));
+        assertEquals(new Text(3, "baz"), view.withString("baz"));
+        
+        StringBuilder builder = new StringBuilder();
+        view.withIndex(0).appendTo(builder);
+        view.appendTo(builder);
+        assertEquals("foofoo", builder.toString());
+    }
+    
+    @Test
+    public void textWithSkippedCharacters() {
+        LinkedObjects<GSTPart> expected = new LinkedObjects<>();
+        expected.add(new Text(0, "fo}o"));
+        expected.add(new Placeholder(new DirectPlaceholderData("b:ar", Optional.of("x}y"), new Text(5, "\\{b\\:ar:x\\}y}")), false, true));
+        
+        SimpleGSTParser parser = SimpleGSTParser.inst();
+        
+        assertEquals(expected, parser.parse("fo\\}o\\{b\\:ar:x\\}y}"));
+    }
+    
+    @Test
+    public void charSequenceTemplateUnescapedIsPlaceholder() {
+        LinkedObjects<GSTPart> expected = new LinkedObjects<>();
+        expected.add(new Text(0, "a{b"));
+        expected.add(new Placeholder(new DirectPlaceholderData("c", Optional.empty(), new Text(4, "{c}")), false, true));
+        expected.add(new Text(7, "d"));
+        
+        SimpleGSTParser parser = SimpleGSTParser.builder().escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER).build();
+        
+        assertEquals(expected, parser.parse(CharBuffer.wrap("a\\{b{c}d")));
+    }
+    
+    @Test
+    public void nonAsciiSpecialCharacters() {
+        LinkedObjects<GSTPart> expected = new LinkedObjects<>();
+        expected.add(new Text(0, "x"));
+        expected.add(new Placeholder(new DirectPlaceholderData("k", Optional.of("v"), new Text(1, "§«k→v»")), false, true));
+        expected.add(new Text(7, "y»z"));
+        
+        SimpleGSTParser parser = SimpleGSTParser.builder()
+            .specialCharacterSet(SpecialCharacterSet.builder().closure('«', '»').argumentDelimiter('→').escapingCharacter('§').build())
+            .build();
+        
+        assertEquals(expected, parser.parse("x§«k→v»y§»z"));
+        assertEquals(expected, parser.parse(CharBuffer.wrap("x§«k→v»y§»z")));
+        assertThrows(UnexpectedSpecialCharacterException.class, () -> parser.parse("§«k«»"));
+    }
+    
+    @Test
+    public void sink() {
+        List<String> events = new ArrayList<>();
+        SimpleGSTParser.inst().parse("fo\\}o\\{!bar:fizz}baz\\{bar2", new GSTSink() {
+            
+            @Override
+            public void onText(CharSequence source, int start, int end) {
+                events.add(start+"-"+end+" "+source.subSequence(start, end));
+            }
+            
+            @Override
+            public void onPlaceholder(CharSequence source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected) {
+                events.add(start+"-"+end+" "+key+" "+argument+" "+exclusion+" "+endExpected);
+            }
+            
+        });
+        
+        assertEquals(List.of("0-2 fo", "3-5 }o", "5-17 bar fizz true true", "17-20 baz", "20-26 bar2 null false false"), events);
+    }
+    
+    @Test
+    public void lenientRegularCharacterEscaped() {
+        LinkedObjects<GSTPart> expected = new LinkedObjects<>();
+        expected.add(new Text(0, "fo\\qo"));
+        expected.add(new Placeholder(new DirectPlaceholderData("b\\ar", Optional.empty(), new Text(5, "\\{b\\ar}")), false, true));
+        
+        LenientParse parse = SimpleGSTParser.inst().parseLenient("fo\\qo\\{b\\ar}");
+        
+        assertEquals(expected, parse.parts());
+        assertEquals(List.of(
+            new Diagnostic(Diagnostic.Kind.REGULAR_CHARACTER_ESCAPED, 3, 'q'),
+            new Diagnostic(Diagnostic.Kind.REGULAR_CHARACTER_ESCAPED, 9, 'a')
+        ), parse.diagnostics().asList());
+    }
+    
+    @Test
+    public void lenientRegularCharacterEscapedInPlaceholder() {
+        LinkedObjects<GSTPart> expected = new LinkedObjects<>();
+        expected.add(new Placeholder(new DirectPlaceholderData("fo\\o", Optional.of("a\\rg"), new Text(0, "\\{fo\\o:a\\rg}")), false, true));
+        expected.add(new Text(12, "x"));
+        
+        LenientParse parse = SimpleGSTParser.inst().parseLenient("\\{fo\\o:a\\rg}x");
+        
+        assertEquals(expected, parse.parts());
+        assertEquals(List.of(
+            new Diagnostic(Diagnostic.Kind.REGULAR_CHARACTER_ESCAPED, 5, 'o'),
+            new Diagnostic(Diagnostic.Kind.REGULAR_CHARACTER_ESCAPED, 9, 'r')
+        ), parse.diagnostics().asList());
+    }
+    
+    @Test
+    public void lenientUnexpectedSpecialCharacter() {
+        LinkedObjects<GSTPart> expected = new LinkedObjects<>();
+        expected.add(new Text(0, "a\\{b{c}d"));
+        
+        LenientParse parse = SimpleGSTParser.inst().parseLenient("a\\{b{c}d");
+        
+        assertEquals(expected, parse.parts());
+        assertEquals(List.of(new Diagnostic(Diagnostic.Kind.UNEXPECTED_SPECIAL_CHARACTER, 4, '{')), parse.diagnostics().asList());
+    }
+    
+    @Test
+    public void lenientUnexpectedOpeningIsPlaceholder() {
+        LinkedObjects<GSTPart> expected = new LinkedObjects<>();
+        expected.add(new Text(0, "{a"));
+        expected.add(new Placeholder(new DirectPlaceholderData("b", Optional.empty(), new Text(2, "{b}")), false, true));
+        
+        SimpleGSTParser parser = SimpleGSTParser.builder()
+            .escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER)
+            .build();
+        LenientParse parse = parser.parseLenient("{a{b}");
+        
+        assertEquals(expected, parse.parts());
+        assertEquals(List.of(new Diagnostic(Diagnostic.Kind.UNEXPECTED_SPECIAL_CHARACTER, 2, '{')), parse.diagnostics().asList());
+    }
+    
+    @Test
+    public void lenientValidSameAsStrict() {
+        String template = "fo\\}o\\{!bar:fizz}baz\\{bar2";
+        SimpleGSTParser parser = SimpleGSTParser.inst();
+        
+        LenientParse parse = parser.parseLenient(template);
+        
+        assertEquals(parser.parse(template), parse.parts());
+        assertTrue(parse.diagnostics().isEmpty());
+    }
+    
     /////
     
     @Test
@@ -0,0 +1,143 @@
+package ru.ancap.gst;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.parser.GSTSink;
+import ru.ancap.gst.parser.PartsCollector;
+import ru.ancap.gst.parser.TemplateCollector;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+import ru.ancap.gst.parser.simple.StreamingGSTParser;
+import ru.ancap.gst.parser.simple.exception.RegularCharacterEscapedException;
+import ru.ancap.gst.parser.simple.exception.UnexpectedSpecialCharacterException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StreamingGSTParserTest {
+    
+    @Test
+    public void sameAsSimple() throws IOException {
+        for (int chunkSize : new int[]{1, 2, 3, 5, StreamingGSTParser.DEFAULT_CHUNK_SIZE}) {
+            StreamingGSTParser streaming = StreamingGSTParser.of(SimpleGSTParser.inst(), chunkSize);
+            for (String template : TemplateCorpus.DEFAULT) {
+                Events expected = new Events();
+                SimpleGSTParser.inst().parse(template, expected);
+                Events actual = new Events();
+                streaming.parse(new StringReader(template), actual);
+                
+                assertEquals(expected.list(), actual.list(), template+" by "+chunkSize);
+            }
+        }
+    }
+    
+    @Test
+    public void collectors() throws IOException {
+        for (int chunkSize : new int[]{1, 2, 3, 5, StreamingGSTParser.DEFAULT_CHUNK_SIZE}) {
+            StreamingGSTParser streaming = StreamingGSTParser.of(SimpleGSTParser.inst(), chunkSize);
+            for (String template : TemplateCorpus.DEFAULT) {
+                PartsCollector parts = new PartsCollector();
+                streaming.parse(new StringReader(template), parts);
+                TemplateCollector collected = new TemplateCollector();
+                streaming.parse(new StringReader(template), collected);
+                
+                assertEquals(SimpleGSTParser.inst().parse(template), parts.result(), template+" by "+chunkSize);
+                assertEquals(SimpleGSTParser.inst().parseTemplate(template), collected.result(), template+" by "+chunkSize);
+            }
+        }
+    }
+    
+    @Test
+    public void channel() throws IOException {
+        String template = "эава\\{ххц:👲🏿👳🏿}ззз".repeat(100);
+        Events expected = new Events();
+        SimpleGSTParser.inst().parse(template, expected);
+        Events actual = new Events();
+        var channel = Channels.newChannel(new ByteArrayInputStream(template.getBytes(StandardCharsets.UTF_8)));
+        StreamingGSTParser.of(SimpleGSTParser.inst(), 7).parse(channel, StandardCharsets.UTF_8, actual);
+        
+        assertEquals(expected.list(), actual.list());
+    }
+    
+    @Test
+    public void placeholderLongerThanChunk() throws IOException {
+        String key = "k".repeat(100);
+        Events events = new Events();
+        StreamingGSTParser.of(SimpleGSTParser.inst(), 4).parse(new StringReader("foo\\{"+key+":a\\}rg}baz"), events);
+        
+        assertEquals(List.of("0-3 foo", "3-112 "+key+" a}rg false true", "112-115 baz"), events.list());
+    }
+    
+    @Test
+    public void illegalName() {
+        var exception = assertThrows(
+            UnexpectedSpecialCharacterException.class,
+            () -> StreamingGSTParser.of(SimpleGSTParser.inst(), 2).parse(new StringReader("Text \\{{var}}"), new Events())
+        );
+        assertEquals('{', exception.illegalSpecialCharacter());
+        assertEquals('{', exception.gst().charAt(exception.index()));
+        assertEquals("\\{{", exception.gst().substring(0, exception.index() + 1));
+    }
+    
+    @Test
+    public void regularCharacterEscaped() {
+        var exception = assertThrows(
+            RegularCharacterEscapedException.class,
+            () -> StreamingGSTParser.of(SimpleGSTParser.inst(), 3).parse(new StringReader("foo bar \\baz"), new Events())
+        );
+        assertEquals('b', exception.escapedCharacter());
+        assertEquals('b', exception.gst().charAt(exception.index()));
+    }
+    
+    /**
+     * Joins contiguous text, because streaming parser additionally splits it at chunk boundaries.
+     */
+    private static class Events implements GSTSink {
+        
+        private final List<String> list = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+        private int textStart = -1;
+        private int textEnd = -1;
+        
+        @Override
+        public void onText(CharSequence source, int start, int end) {
+            if (start != this.textEnd) this.flush();
+            if (this.textStart == -1) this.textStart = start;
+            this.textEnd = end;
+            this.text.append(source, start, end);
+        }
+        
+        @Override
+        public void onPlaceholder(CharSequence source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected) {
+            this.flush();
+            this.list.add(start+"-"+end+" "+key+" "+argument+" "+exclusion+" "+endExpected);
+        }
+        
+        @Override
+        public boolean keepsSource() {
+            return false;
+        }
+        
+        public List<String> list() {
+            this.flush();
+            return this.list;
+        }
+        
+        private void flush() {
+            if (this.textStart == -1) return;
+            this.list.add(this.textStart+"-"+this.textEnd+" "+this.text);
+            this.textStart = -1;
+            this.textEnd = -1;
+            this.text.setLength(0);
+        }
+        
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,88 @@
+package ru.ancap.gst;
+
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.parser.EscapingMode;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.SpecialCharacterSet;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+import ru.ancap.gst.parser.simple.exception.IllegalGSTException;
+import ru.ancap.gst.parser.simple.exception.RegularCharacterEscapedException;
+import ru.ancap.gst.parser.simple.exception.UnexpectedSpecialCharacterException;
+import ru.ancap.gst.parser.table.TableGSTParser;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TableGSTParserTest {
+    
+    @Test
+    public void alternateSettings() {
+        var set = SpecialCharacterSet.builder()
+            .closure('[', ']')
+            .argumentDelimiter('_')
+            .exclusionChar('!')
+            .escapingCharacter('+').build();
+        GSTParser simple = SimpleGSTParser.builder().specialCharacterSet(set).escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER).build();
+        GSTParser table = TableGSTParser.builder().specialCharacterSet(set).escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER).build();
+        
+        for (String template : List.of("foo[bar_fizz+]]baz", "foo+[bar]baz", "[!bar_a[b]", "foo[bar")) {
+            assertEquals(simple.parse(template), table.parse(template), template);
+        }
+    }
+    
+    @Test
+    public void alternateSettingsSameOpeningAndClosing() {
+        var set = SpecialCharacterSet.builder()
+            .closure('%', '%')
+            .argumentDelimiter('_')
+            .escapingCharacter('+').build();
+        GSTParser simple = SimpleGSTParser.builder().specialCharacterSet(set).escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER).build();
+        GSTParser table = TableGSTParser.builder().specialCharacterSet(set).escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER).build();
+        
+        for (String template : List.of("foo%bar_fizz+%%baz", "%a%%b%+%", "%%%")) {
+            assertEquals(simple.parse(template), table.parse(template), template);
+        }
+    }
+    
+    @Test
+    public void illegalName() {
+        var exception = assertThrows(UnexpectedSpecialCharacterException.class, () -> TableGSTParser.inst().parse("Text \\{{var}}"));
+        assertEquals(7, exception.index());
+        assertEquals('{', exception.illegalSpecialCharacter());
+    }
+    
+    @Test
+    public void regularCharacterEscaped() {
+        var exception = assertThrows(RegularCharacterEscapedException.class, () -> TableGSTParser.inst().parse("\\Text"));
+        assertEquals(1, exception.index());
+        assertEquals('T', exception.escapedCharacter());
+    }
+    
+    @Test
+    public void sameExceptions() {
+        var placeholderException = assertThrows(UnexpectedSpecialCharacterException.class, () -> TableGSTParser.builder().escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER).build().parse("Text {{var}}"));
+        assertEquals(6, placeholderException.index());
+        
+        for (EscapingMode mode : EscapingMode.values()) {
+            GSTParser simple = SimpleGSTParser.builder().escapingMode(mode).build();
+            GSTParser table = TableGSTParser.builder().escapingMode(mode).build();
+            for (String template : List.of("Text \\{{var}}", "Text {{var}}", "\\Text", "{a\\x}", "\\{a\\x}", "{a}{b{c}", "\\{a}\\{b\\{c}", "{a!b:c}", "\\{!a!b}")) {
+                assertEquals(TableGSTParserTest.outcome(simple, template), TableGSTParserTest.outcome(table, template), template+" in "+mode);
+            }
+        }
+    }
+    
+    /**
+     * @return parts or exception as string, exceptions are not comparable with equals
+     */
+    private static Object outcome(GSTParser parser, String template) {
+        try {
+            return parser.parse(template);
+        } catch (IllegalGSTException exception) {
+            return exception.toString();
+        }
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,34 @@
+package ru.ancap.gst;
+
+import java.util.List;
+
+/**
+ * Templates in default syntax that every parser must parse the same way as {@link ru.ancap.gst.parser.simple.SimpleGSTParser}.
+ */
+final class TemplateCorpus {
+    
+    static final List<String> DEFAULT = List.of(
+        "foo\\{bar}baz",
+        "эава\\{ххц👲🏿👳🏿222}ззз👲🏿👳🏿зу",
+        "эава\\{ххц👲🏿👳🏿222:арг}ззз👲🏿👳🏿зу",
+        "foo\\{!bar}baz",
+        "foo\\{bar:fizz}baz",
+        "foo\\{bar:!-4559{\\}6!89\\}56}baz",
+        "foo\\{bar",
+        "foo\\{bar:arg",
+        "foo\\{bar}",
+        "foo",
+        "",
+        "foo{bar}baz",
+        "foo\\{ba\\}r}baz",
+        "foo\\{bar\\\\}baz",
+        "foo\\{bar\\\\\\}baz",
+        "foo\\{!bar:arg}",
+        "fo\\}o\\{bar}b\\:az",
+        "fo\\}o\\{!bar:fizz}baz\\{bar2",
+        "\\{bar1:arg}\\{bar2:arg}\\{!bar5:arg}\\{bar20:arg"
+    );
+    
+    private TemplateCorpus() { }
+    
+}
@@ -0,0 +1,70 @@
+package ru.ancap.gst;
+
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+import ru.ancap.gst.parser.store.DedupStats;
+import ru.ancap.gst.parser.store.StoredTemplate;
+import ru.ancap.gst.parser.store.TemplateStore;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TemplateStoreTest {
+    
+    @Test
+    public void sameAsTemplate() {
+        TemplateStore store = TemplateStore.inst();
+        for (String template : List.of("foo\\{bar}baz", "fo\\}o\\{!bar:fizz}baz\\{bar2", "эава\\{ххц👲🏿👳🏿222}ззз", "foo", "")) {
+            assertEquals(SimpleGSTParser.inst().parseTemplate(template), store.store(template).toTemplate(), template);
+        }
+    }
+    
+    @Test
+    public void sharedSegments() {
+        TemplateStore store = TemplateStore.inst();
+        StoredTemplate first = store.store("[Shop] \\{player} bought \\{item}");
+        StoredTemplate second = store.store("[Shop] \\{player} sold \\{item}");
+        
+        assertSame(first.segment(0), second.segment(0));
+        assertSame(first.segment(1), second.segment(1));
+        assertNotSame(first.segment(2), second.segment(2));
+        assertSame(first.segment(3), second.segment(3));
+        assertEquals(16, second.index(2));
+        
+        DedupStats stats = store.stats();
+        assertEquals(2, stats.templates());
+        assertEquals(8, stats.segmentReferences());
+        assertEquals(5, stats.distinctSegments());
+        assertEquals(1.6, stats.dedupRatio());
+        assertTrue(stats.bytesSaved() > 0);
+    }
+    
+    @Test
+    public void explicitRelease() {
+        TemplateStore store = TemplateStore.inst();
+        StoredTemplate first = store.store("[Shop] \\{player}");
+        StoredTemplate second = store.store("[Shop] \\{item}");
+        
+        first.release();
+        first.release();
+        assertEquals(1, store.stats().templates());
+        assertEquals(2, store.stats().distinctSegments());
+        
+        second.release();
+        assertEquals(new DedupStats(0, 0, 0, 0, 0), store.stats());
+    }
+    
+    @Test
+    public void releasedWhenUnreachable() throws InterruptedException {
+        TemplateStore store = TemplateStore.inst();
+        for (int i = 0; i < 100; i++) store.store("unreachable \\{key"+i+"}");
+        
+        for (int attempt = 0; attempt < 100 && store.stats().templates() > 0; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, store.stats().distinctSegments());
+    }
+    
+}
\ No newline at end of file
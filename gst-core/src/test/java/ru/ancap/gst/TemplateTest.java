@@ -0,0 +1,68 @@
+package ru.ancap.gst;
+
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.parser.GSTParser;
+import ru.ancap.gst.parser.gst_structure.Placeholder;
+import ru.ancap.gst.parser.compact.CompactTemplate;
+import ru.ancap.gst.parser.compact.SymbolTable;
+import ru.ancap.gst.parser.gst_structure.Template;
+import ru.ancap.gst.parser.gst_structure.TemplateMetadata;
+import ru.ancap.gst.parser.gst_structure.Text;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TemplateTest {
+    
+    @Test
+    public void sameAsLinked() {
+        GSTParser parser = SimpleGSTParser.inst();
+        for (String template : List.of("foo\\{bar}baz", "fo\\}o\\{!bar:fizz}baz\\{bar2", "foo", "")) {
+            assertEquals(parser.parse(template), parser.parseTemplate(template).toLinkedObjects(), template);
+            assertEquals(parser.parseTemplate(template), Template.of(parser.parse(template)), template);
+        }
+    }
+    
+    @Test
+    public void indexed() {
+        Template template = SimpleGSTParser.inst().parseTemplate("foo\\{bar}baz");
+        
+        assertEquals(3, template.size());
+        assertEquals(new Text(0, "foo"), template.get(0));
+        assertEquals("bar", ((Placeholder) template.get(1)).directData().key());
+        assertEquals(new Text(9, "baz"), template.get(2));
+        assertTrue(template.endExpected());
+        assertFalse(SimpleGSTParser.inst().parseTemplate("foo\\{bar").endExpected());
+        assertSame(Template.EMPTY, SimpleGSTParser.inst().parseTemplate(""));
+    }
+    
+    @Test
+    public void immutable() {
+        Template template = SimpleGSTParser.inst().parseTemplate("foo\\{bar}baz");
+        
+        assertThrows(UnsupportedOperationException.class, () -> template.asList().set(0, Placeholder.DUMMY));
+        template.toLinkedObjects().add(Placeholder.DUMMY);
+        assertEquals(3, template.size());
+    }
+    
+    @Test
+    public void metadata() {
+        TemplateMetadata metadata = SimpleGSTParser.inst().parseTemplate("\\{foo}\\{bar:arg}\\{!baz}\\{foo:x}text\\{!bar}").metadata();
+        
+        assertEquals(List.of("foo", "bar", "baz"), List.copyOf(metadata.keys()));
+        assertEquals(Set.of("foo", "bar"), metadata.keysWithArguments());
+        assertEquals(Set.of("baz", "bar"), metadata.exclusions());
+        assertTrue(metadata.endExpected());
+        assertFalse(SimpleGSTParser.inst().parseTemplate("foo\\{bar").metadata().endExpected());
+        assertTrue(SimpleGSTParser.inst().parseTemplate("foo\\{bar").metadata().keys().contains("bar"));
+        assertSame(TemplateMetadata.EMPTY, SimpleGSTParser.inst().parseTemplate("foo").metadata());
+        
+        Template template = SimpleGSTParser.inst().parseTemplate("\\{foo}");
+        assertSame(template.metadata(), template.metadata());
+        assertEquals(template.metadata(), CompactTemplate.compile(SimpleGSTParser.inst(), "\\{foo}", new SymbolTable()).metadata());
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,129 @@
+package ru.ancap.gst;
+
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.buffer.conf.ConfGSTTerminator;
+import ru.ancap.gst.parser.EscapingMode;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+import ru.ancap.gst.parser.simple.exception.IllegalGSTException;
+import ru.ancap.gst.parser.simple.exception.UnexpectedSpecialCharacterException;
+import ru.ancap.gst.parser.tree.PlaceholderNode;
+import ru.ancap.gst.parser.tree.TemplateTree;
+import ru.ancap.gst.parser.tree.TreeNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TemplateTreeTest {
+    
+    @Test
+    public void flatIsSameAsTemplate() {
+        for (EscapingMode mode : EscapingMode.values()) {
+            SimpleGSTParser parser = SimpleGSTParser.builder().escapingMode(mode).build();
+            for (String template : TemplateCorpus.DEFAULT) TemplateTreeTest.assertFlatSame(parser, template);
+            for (String template : List.of(
+                "\\}",
+                "\\\\b",
+                "{:}\\:a",
+                "\\{bar:argument} \\\\ \\} \\: \\!",
+                "\\{bar:x\\}y!z} {} text",
+                "{foo} \\{bar} {baz:argument\\}}"
+            )) TemplateTreeTest.assertFlatSame(parser, template);
+        }
+        
+        SimpleGSTParser placeholderMode = SimpleGSTParser.builder().escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER).build();
+        assertEquals(placeholderMode.parseTemplate("{:}\\:a"), placeholderMode.parseTree("{:}\\:a").toTemplate());
+        assertEquals(SimpleGSTParser.inst().parseTemplate("\\}"), SimpleGSTParser.inst().parseTree("\\}").toTemplate());
+    }
+    
+    /**
+     * Templates with nested placeholders and templates that are illegal for tree parse are skipped.
+     */
+    private static void assertFlatSame(SimpleGSTParser parser, String template) {
+        TemplateTree tree;
+        try {
+            tree = parser.parseTree(template);
+        } catch (IllegalGSTException exception) {
+            return;
+        }
+        for (TreeNode node : tree.nodes()) if (node instanceof PlaceholderNode placeholder && placeholder.argument() != null) return;
+        assertEquals(parser.parseTemplate(template), tree.toTemplate(), template+" in "+parser.escapingMode());
+    }
+    
+    @Test
+    public void nested() {
+        TemplateTree tree = SimpleGSTParser.inst().parseTree("cost: \\{fmt:\\{price} per \\{unit}}!");
+        assertEquals(3, tree.nodes().size());
+        PlaceholderNode fmt = (PlaceholderNode) tree.nodes().get(1);
+        assertEquals("fmt", fmt.placeholder().directData().key());
+        assertEquals("\\{price} per \\{unit}", fmt.placeholder().directData().argument().orElseThrow());
+        assertEquals("\\{fmt:\\{price} per \\{unit}}", fmt.placeholder().directData().originalPart().string());
+        assertEquals(6, fmt.placeholder().directData().originalPart().index());
+        assertNotNull(fmt.argument());
+        assertEquals(3, fmt.argument().nodes().size());
+        assertNull(((PlaceholderNode) fmt.argument().nodes().get(0)).argument());
+    }
+    
+    @Test
+    public void insideOut() {
+        List<String> calls = new ArrayList<>();
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("price", ph -> {
+            calls.add("price");
+            return "42";
+        });
+        buffer.declare("fmt", ph -> {
+            calls.add("fmt");
+            return "$"+ph.argument().orElseThrow();
+        });
+        buffer.declare("upper", ph -> ph.argument().orElseThrow().toUpperCase());
+        
+        TemplateTree tree = SimpleGSTParser.inst().parseTree("\\{upper:cost \\{fmt:\\{price}.00}} \\{price}");
+        assertEquals("COST $42.00 42", buffer.terminate(tree));
+        assertEquals(List.of("price", "fmt", "price"), calls);
+        
+        calls.clear();
+        assertEquals("COST $42.00 42", buffer.terminate(tree));
+        assertEquals(List.of("price", "fmt", "price"), calls);
+        
+        SimpleGSTParser placeholderMode = SimpleGSTParser.builder().escapingMode(EscapingMode.UNESCAPED_IS_PLACEHOLDER).build();
+        assertEquals("$42 \\{x}", buffer.terminate(placeholderMode.parseTree("{fmt:{price}} \\\\\\{x\\}"), Set.of("upper")));
+    }
+    
+    @Test
+    public void excludedArgumentIsNotEvaluated() {
+        List<String> calls = new ArrayList<>();
+        var buffer = ConfGSTTerminator.newStrict().build();
+        buffer.declare("price", ph -> {
+            calls.add("price");
+            return "42";
+        });
+        buffer.declare("fmt", ph -> "$"+ph.argument().orElseThrow());
+        
+        assertEquals("a  b", buffer.terminate(SimpleGSTParser.inst().parseTree("a \\{!fmt:\\{price}} b")));
+        assertEquals(List.of(), calls);
+    }
+    
+    @Test
+    public void unclosed() {
+        TemplateTree tree = SimpleGSTParser.inst().parseTree("a \\{fmt:\\{price");
+        assertFalse(tree.endExpected());
+        PlaceholderNode fmt = (PlaceholderNode) tree.nodes().get(1);
+        assertFalse(fmt.placeholder().endExpected());
+        assertEquals("\\{price", fmt.placeholder().directData().argument().orElseThrow());
+        assertNotNull(fmt.argument());
+        assertFalse(((PlaceholderNode) fmt.argument().nodes().get(0)).placeholder().endExpected());
+        
+        var buffer = ConfGSTTerminator.newStrict().build();
+        assertThrows(RuntimeException.class, () -> buffer.terminate(tree));
+        assertTrue(SimpleGSTParser.inst().parseTree("\\{fmt:\\{price}}").endExpected());
+    }
+    
+    @Test
+    public void errorsInNestedKey() {
+        assertThrows(UnexpectedSpecialCharacterException.class, () -> SimpleGSTParser.inst().parseTree("\\{fmt:\\{pr{ice}}"));
+    }
+    
+}
\ No newline at end of file
@@ -0,0 +1,136 @@
+package ru.ancap.gst;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import ru.ancap.gst.parser.GSTSink;
+import ru.ancap.gst.parser.SpecialCharacterSet;
+import ru.ancap.gst.parser.simple.SimpleGSTParser;
+import ru.ancap.gst.parser.simple.exception.RegularCharacterEscapedException;
+import ru.ancap.gst.parser.simple.exception.UnexpectedSpecialCharacterException;
+import ru.ancap.gst.parser.utf8.Utf8GSTParser;
+import ru.ancap.gst.parser.utf8.Utf8GSTSink;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class Utf8GSTParserTest {
+    
+    @Test
+    public void sameAsSimple() {
+        for (String template : TemplateCorpus.DEFAULT) {
+            List<String> expected = new ArrayList<>();
+            SimpleGSTParser.inst().parse(template, new GSTSink() {
+                
+                @Override
+                public void onText(CharSequence source, int start, int end) {
+                    expected.add(source.subSequence(start, end).toString());
+                }
+                
+                @Override
+                public void onPlaceholder(CharSequence source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected) {
+                    expected.add(source.subSequence(start, end)+" "+key+" "+argument+" "+exclusion+" "+endExpected);
+                }
+                
+            });
+            
+            assertEquals(expected, Utf8GSTParserTest.events(template.getBytes(StandardCharsets.UTF_8)), template);
+        }
+    }
+    
+    @Test
+    public void byteIndices() {
+        List<String> indices = new ArrayList<>();
+        Utf8GSTParser.inst().parse("эа\\{х:ц}з".getBytes(StandardCharsets.UTF_8), new Utf8GSTSink() {
+            
+            @Override
+            public void onText(ByteBuffer source, int start, int end) {
+                indices.add(start+"-"+end);
+            }
+            
+            @Override
+            public void onPlaceholder(ByteBuffer source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected) {
+                indices.add(start+"-"+end+" "+key+" "+argument);
+            }
+            
+        });
+        
+        assertEquals(List.of("0-4", "4-12 х ц", "12-14"), indices);
+    }
+    
+    @Test
+    public void byteBufferRange() {
+        ByteBuffer buffer = ByteBuffer.wrap("xx\\{bar:arg}baz".getBytes(StandardCharsets.UTF_8), 2, 10);
+        
+        assertEquals(List.of("\\{bar:arg} bar arg false true"), Utf8GSTParserTest.events(buffer));
+    }
+    
+    @Test
+    public void directBuffer() {
+        byte[] template = "эава\\{ххц:arg}ззз👲🏿👳🏿зу long enough text to be scanned by words \\{!bar}".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(template.length).put(template).flip();
+        
+        assertEquals(Utf8GSTParserTest.events(template), Utf8GSTParserTest.events(direct));
+    }
+    
+    @Test
+    public void illegalName() {
+        var exception = assertThrows(UnexpectedSpecialCharacterException.class, () -> Utf8GSTParserTest.events("Текст \\{{var}}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(13, exception.index());
+        assertEquals('{', exception.illegalSpecialCharacter());
+    }
+    
+    @Test
+    public void exceptionFromPosition() {
+        ByteBuffer template = ByteBuffer.wrap("skipText \\{{var}}".getBytes(StandardCharsets.UTF_8)).position(4);
+        var exception = assertThrows(UnexpectedSpecialCharacterException.class, () -> Utf8GSTParserTest.events(template));
+        assertEquals(11, exception.index());
+        assertEquals('{', exception.gst().charAt(exception.index()));
+        assertEquals(4, template.position());
+    }
+    
+    @Test
+    public void regularCharacterEscaped() {
+        var exception = assertThrows(RegularCharacterEscapedException.class, () -> Utf8GSTParserTest.events("\\Текст".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(1, exception.index());
+        assertEquals('Т', exception.escapedCharacter());
+    }
+    
+    @Test
+    public void nonAsciiSpecialCharacter() {
+        var set = SpecialCharacterSet.builder().closure('«', '»').build();
+        
+        assertThrows(IllegalArgumentException.class, () -> Utf8GSTParser.builder().specialCharacterSet(set).build());
+    }
+    
+    private static List<String> events(byte[] template) {
+        return Utf8GSTParserTest.events(ByteBuffer.wrap(template));
+    }
+    
+    private static List<String> events(ByteBuffer template) {
+        List<String> events = new ArrayList<>();
+        Utf8GSTParser.inst().parse(template, new Utf8GSTSink() {
+            
+            @Override
+            public void onText(ByteBuffer source, int start, int end) {
+                events.add(Utf8GSTParserTest.decode(source, start, end));
+            }
+            
+            @Override
+            public void onPlaceholder(ByteBuffer source, int start, int end, String key, @Nullable String argument, boolean exclusion, boolean endExpected) {
+                events.add(Utf8GSTParserTest.decode(source, start, end)+" "+key+" "+argument+" "+exclusion+" "+endExpected);
+            }
+            
+        });
+        return events;
+    }
+    
+    private static String decode(ByteBuffer source, int start, int end) {
+        return StandardCharsets.UTF_8.decode(source.duplicate().position(start).limit(end)).toString();
+    }
+    
+}
\ No newline at end of file